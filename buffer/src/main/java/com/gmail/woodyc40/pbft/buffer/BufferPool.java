@@ -0,0 +1,177 @@
+package com.gmail.woodyc40.pbft.buffer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A fixed set of reference-counted direct buffers which
+ * encoders write messages into so that sending a message
+ * does not allocate a new byte array.
+ *
+ * <p>A buffer obtained from {@link #acquire(int)} starts
+ * with a single reference, which is passed on to the
+ * transport along with the message. Every send takes
+ * ownership of exactly one reference. A pool-aware
+ * transport retains one reference for each destination
+ * that it writes the buffer to and releases it once that
+ * write completes or is dropped, releasing the reference of
+ * the caller after it has queued the writes. Decorators
+ * which queue the same buffer for several destinations do
+ * the same with {@link #retain(ByteBuffer)} and {@link
+ * #release(ByteBuffer)}. The buffer is returned to the
+ * pool when its last reference is released.</p>
+ *
+ * <p>Each buffer reserves the given number of headroom
+ * bytes in front of the payload so that a transport is able
+ * to frame the message in place. When every buffer is in use, or when
+ * a message is larger than a buffer, encoders fall back to
+ * allocating a heap buffer. Transports which are not aware
+ * of the pool never release the buffers passed to them,
+ * which is safe but eventually leaves every message to be
+ * allocated in this way.</p>
+ */
+public class BufferPool {
+    private final int bufferBytes;
+    private final int headroom;
+    private final ByteBuffer[] buffers;
+    private final AtomicIntegerArray refCounts;
+    // Only read after construction, so it is safe to share
+    private final Map<ByteBuffer, Integer> indices = new IdentityHashMap<>();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    public BufferPool(int bufferCount, int bufferBytes, int headroom) {
+        if (bufferCount <= 0 || bufferBytes <= 0) {
+            throw new IllegalArgumentException("Pool must have at least one non-empty buffer");
+        }
+        if (headroom < 0) {
+            throw new IllegalArgumentException("Headroom must not be negative");
+        }
+
+        this.bufferBytes = bufferBytes;
+        this.headroom = headroom;
+        this.buffers = new ByteBuffer[bufferCount];
+        this.refCounts = new AtomicIntegerArray(bufferCount);
+
+        // Slices of a single allocation to avoid the overhead of
+        // allocating many small direct buffers
+        int slotBytes = headroom + bufferBytes;
+        ByteBuffer memory = ByteBuffer.allocateDirect(bufferCount * slotBytes);
+        for (int i = 0; i < bufferCount; i++) {
+            memory.limit((i + 1) * slotBytes).position(i * slotBytes);
+            ByteBuffer buffer = memory.slice();
+            this.buffers[i] = buffer;
+            this.indices.put(buffer, i);
+        }
+    }
+
+    /**
+     * The largest payload that fits into a pooled buffer.
+     *
+     * @return the number of payload bytes in each buffer
+     */
+    public int bufferBytes() {
+        return this.bufferBytes;
+    }
+
+    /**
+     * The number of bytes reserved in front of the payload
+     * of each buffer.
+     *
+     * @return the headroom of each buffer
+     */
+    public int headroom() {
+        return this.headroom;
+    }
+
+    /**
+     * Claims a free buffer with a single reference.
+     *
+     * <p>The returned buffer is positioned after the
+     * headroom with its limit set to fit the given number
+     * of payload bytes.</p>
+     *
+     * @param payloadBytes the size of the payload
+     * @return the claimed buffer, or {@code null} if the
+     * payload does not fit or every buffer is in use
+     */
+    public @Nullable ByteBuffer acquire(int payloadBytes) {
+        if (payloadBytes > this.bufferBytes) {
+            return null;
+        }
+
+        // Start at a different slot each time so that claims
+        // do not all contend on the first free slots
+        int count = this.buffers.length;
+        int start = Math.floorMod(this.nextIndex.getAndIncrement(), count);
+        for (int i = 0; i < count; i++) {
+            int index = (start + i) % count;
+            if (this.refCounts.get(index) == 0 && this.refCounts.compareAndSet(index, 0, 1)) {
+                ByteBuffer buffer = this.buffers[index];
+                buffer.limit(this.headroom + payloadBytes).position(this.headroom);
+                return buffer;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Determines whether the given buffer belongs to this
+     * pool.
+     *
+     * @param buffer the buffer to check
+     * @return {@code true} if the buffer was obtained from
+     * {@link #acquire(int)}
+     */
+    public boolean isPooled(ByteBuffer buffer) {
+        return this.indices.containsKey(buffer);
+    }
+
+    /**
+     * Adds a reference to the given buffer if it belongs
+     * to this pool, otherwise does nothing.
+     *
+     * @param buffer the buffer to retain
+     */
+    public void retain(ByteBuffer buffer) {
+        Integer index = this.indices.get(buffer);
+        if (index != null) {
+            this.refCounts.incrementAndGet(index);
+        }
+    }
+
+    /**
+     * Removes a reference from the given buffer if it
+     * belongs to this pool, returning it to the pool if
+     * that was the last reference.
+     *
+     * @param buffer the buffer to release
+     */
+    public void release(ByteBuffer buffer) {
+        Integer index = this.indices.get(buffer);
+        if (index != null && this.refCounts.decrementAndGet(index) < 0) {
+            throw new IllegalStateException("Buffer released more times than it was retained");
+        }
+    }
+
+    /**
+     * Counts the buffers which are not currently in use.
+     *
+     * @return the number of free buffers
+     */
+    public int available() {
+        int available = 0;
+        for (int i = 0; i < this.buffers.length; i++) {
+            if (this.refCounts.get(i) == 0) {
+                available++;
+            }
+        }
+
+        return available;
+    }
+}
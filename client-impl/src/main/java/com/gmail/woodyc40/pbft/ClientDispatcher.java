@@ -0,0 +1,23 @@
+package com.gmail.woodyc40.pbft;
+
+/**
+ * Decodes the replies received by a {@link Client} and
+ * passes them to {@link Client#recvReply}.
+ *
+ * @param <O> the operation type
+ * @param <R> the result type
+ * @param <T> the encoded message type
+ */
+public class ClientDispatcher<O, R, T> {
+    private final Client<O, R, T> client;
+    private final ClientDecoder<O, R, T> decoder;
+
+    public ClientDispatcher(Client<O, R, T> client, ClientDecoder<O, R, T> decoder) {
+        this.client = client;
+        this.decoder = decoder;
+    }
+
+    public void dispatch(T data) {
+        this.client.recvReply(this.decoder.decodeReply(this.client, data));
+    }
+}
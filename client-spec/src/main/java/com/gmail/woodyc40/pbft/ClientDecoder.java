@@ -0,0 +1,30 @@
+package com.gmail.woodyc40.pbft;
+
+import com.gmail.woodyc40.pbft.message.ClientReply;
+
+/**
+ * The counterpart to the {@link ClientEncoder} which
+ * transforms the replies received by a {@link Client} back
+ * into their message objects.
+ *
+ * <p>A {@link ClientDecoder} should verify message
+ * signatures and MACs as it sees fit, throwing an exception
+ * for messages which fail verification.</p>
+ *
+ * @param <O> the type of operation handled by the client
+ * @param <R> the type of result carried by replies
+ * @param <T> the type of transmissible format that
+ *            represents different messages
+ */
+public interface ClientDecoder<O, R, T> {
+    /**
+     * Decodes the given encoded reply message.
+     *
+     * @param client the client which received the reply
+     * @param data the encoded reply
+     * @return the reply message
+     * @throws IllegalArgumentException if the data is not
+     * an encoded reply
+     */
+    ClientReply<R> decodeReply(Client<O, R, T> client, T data);
+}
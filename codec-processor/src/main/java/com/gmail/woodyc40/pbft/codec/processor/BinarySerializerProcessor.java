@@ -0,0 +1,430 @@
+package com.gmail.woodyc40.pbft.codec.processor;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Generates a {@code BinarySerializer} for each class
+ * annotated with {@code BinarySerializable}.
+ *
+ * <p>The generated serializers write the fields of the
+ * class directly through the binary writer and reader,
+ * without reflection or any intermediate objects, so that
+ * the only allocation made when reading a value is the
+ * value itself.</p>
+ *
+ * <p>The annotation is referred to by name so that this
+ * processor does not depend on the codec module.</p>
+ */
+public class BinarySerializerProcessor extends AbstractProcessor {
+    private static final String CODEC_PACKAGE = "com.gmail.woodyc40.pbft.codec";
+    private static final String ANNOTATION = CODEC_PACKAGE + ".BinarySerializable";
+    private static final String GENERATED = "javax.annotation.processing.Generated";
+    private static final String SUFFIX = "Serializer";
+    private static final String ENUM_VALUE = "enumValue";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ANNOTATION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = this.processingEnv.getElementUtils().getTypeElement(ANNOTATION);
+        if (annotation == null) {
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                this.error(element, "@BinarySerializable may only be applied to classes");
+                continue;
+            }
+
+            TypeElement type = (TypeElement) element;
+            List<Field> fields = this.collectFields(type);
+            if (fields != null && this.checkConstructor(type, fields)) {
+                this.generate(type, fields);
+            }
+        }
+
+        return true;
+    }
+
+    private void error(Element element, String message) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static boolean isAnnotated(Element element) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (type.getQualifiedName().contentEquals(ANNOTATION)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Determines the name of the serializer generated for
+     * the given class, joining the names of any enclosing
+     * classes with underscores.
+     */
+    private static String serializerName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+            name.insert(0, '_').insert(0, enclosing.getSimpleName());
+            enclosing = enclosing.getEnclosingElement();
+        }
+
+        return name.append(SUFFIX).toString();
+    }
+
+    private static String qualifiedSerializerName(Elements elements, TypeElement type) {
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        String serializerName = serializerName(type);
+        return packageName.isEmpty() ? serializerName : packageName + '.' + serializerName;
+    }
+
+    private @Nullable List<Field> collectFields(TypeElement type) {
+        if (!type.getTypeParameters().isEmpty()) {
+            this.error(type, "@BinarySerializable classes may not be generic");
+            return null;
+        }
+
+        if (type.getModifiers().contains(Modifier.PRIVATE) ||
+                type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            this.error(type, "@BinarySerializable classes must be accessible from their package");
+            return null;
+        }
+
+        List<Field> fields = new ArrayList<>();
+        boolean valid = true;
+        for (VariableElement variable : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = variable.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+
+            Kind kind = this.kindOf(variable.asType());
+            String access = this.accessorOf(type, variable);
+            if (kind == null) {
+                this.error(variable, "Unsupported type for a @BinarySerializable field: " + variable.asType());
+                valid = false;
+            } else if (access == null) {
+                this.error(variable, "@BinarySerializable field must be readable through an accessor or be non-private");
+                valid = false;
+            } else {
+                fields.add(new Field(variable, kind, access));
+            }
+        }
+
+        return valid ? fields : null;
+    }
+
+    private @Nullable Kind kindOf(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return Kind.BOOLEAN;
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return Kind.INTEGRAL;
+            case CHAR:
+                return Kind.CHAR;
+            case FLOAT:
+                return Kind.FLOAT;
+            case DOUBLE:
+                return Kind.DOUBLE;
+            case ARRAY:
+                TypeMirror component = this.processingEnv.getTypeUtils().getArrayType(
+                        this.processingEnv.getTypeUtils().getPrimitiveType(TypeKind.BYTE));
+                return this.processingEnv.getTypeUtils().isSameType(type, component) ? Kind.BYTES : null;
+            case DECLARED:
+                Element element = this.processingEnv.getTypeUtils().asElement(type);
+                if (((TypeElement) element).getQualifiedName().contentEquals("java.lang.String")) {
+                    return Kind.STRING;
+                } else if (element.getKind() == ElementKind.ENUM) {
+                    return Kind.ENUM;
+                } else if (isAnnotated(element)) {
+                    return Kind.NESTED;
+                }
+
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private @Nullable String accessorOf(TypeElement type, VariableElement variable) {
+        String name = variable.getSimpleName().toString();
+        String capitalized = name.substring(0, 1).toUpperCase(Locale.ROOT) + name.substring(1);
+        Types types = this.processingEnv.getTypeUtils();
+
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            String methodName = method.getSimpleName().toString();
+            if (!method.getParameters().isEmpty() ||
+                    method.getModifiers().contains(Modifier.PRIVATE) ||
+                    method.getModifiers().contains(Modifier.STATIC) ||
+                    !types.isSameType(method.getReturnType(), variable.asType())) {
+                continue;
+            }
+
+            if (methodName.equals(name) || methodName.equals("get" + capitalized) ||
+                    methodName.equals("is" + capitalized)) {
+                return methodName + "()";
+            }
+        }
+
+        return variable.getModifiers().contains(Modifier.PRIVATE) ? null : name;
+    }
+
+    private boolean checkConstructor(TypeElement type, List<Field> fields) {
+        Types types = this.processingEnv.getTypeUtils();
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || parameters.size() != fields.size()) {
+                continue;
+            }
+
+            boolean matches = true;
+            for (int i = 0; i < parameters.size(); i++) {
+                if (!types.isSameType(parameters.get(i).asType(), fields.get(i).variable.asType())) {
+                    matches = false;
+                    break;
+                }
+            }
+
+            if (matches) {
+                return true;
+            }
+        }
+
+        this.error(type, "@BinarySerializable class must have a constructor taking every field in declaration order");
+        return false;
+    }
+
+    private void generate(TypeElement type, List<Field> fields) {
+        Elements elements = this.processingEnv.getElementUtils();
+        Filer filer = this.processingEnv.getFiler();
+        Messager messager = this.processingEnv.getMessager();
+
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        String serializerName = serializerName(type);
+        String typeName = type.getQualifiedName().toString();
+        String qualifiedName = qualifiedSerializerName(elements, type);
+
+        try (Writer writer = filer.createSourceFile(qualifiedName, type).openWriter();
+             PrintWriter out = new PrintWriter(writer)) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+
+            if (elements.getTypeElement(GENERATED) != null) {
+                out.println("@" + GENERATED + "(\"" + BinarySerializerProcessor.class.getName() + "\")");
+            }
+            out.println("public class " + serializerName + " implements " +
+                    CODEC_PACKAGE + ".BinarySerializer<" + typeName + "> {");
+
+            boolean hasEnum = false;
+            for (Field field : fields) {
+                String fieldType = field.variable.asType().toString();
+                if (field.kind == Kind.ENUM) {
+                    hasEnum = true;
+                    out.println("    private static final " + fieldType + "[] " + field.constant("VALUES") +
+                            " = " + fieldType + ".values();");
+                } else if (field.kind == Kind.NESTED) {
+                    TypeElement nested = (TypeElement) this.processingEnv.getTypeUtils().asElement(field.variable.asType());
+                    String nestedSerializer = qualifiedSerializerName(elements, nested);
+                    out.println("    private static final " + nestedSerializer + " " + field.constant("SERIALIZER") +
+                            " = new " + nestedSerializer + "();");
+                }
+            }
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public void write(" + typeName + " value, " + CODEC_PACKAGE + ".BinaryWriter out) {");
+            for (Field field : fields) {
+                field.writeTo(out);
+            }
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public " + typeName + " read(" + CODEC_PACKAGE + ".BinaryReader in) {");
+            List<String> locals = new ArrayList<>();
+            for (Field field : fields) {
+                locals.add(field.readFrom(out));
+            }
+            out.println("        return new " + typeName + "(" + String.join(", ", locals) + ");");
+            out.println("    }");
+
+            // The ordinal is untrusted, so reject it rather than throwing
+            // an ArrayIndexOutOfBoundsException
+            if (hasEnum) {
+                out.println();
+                out.println("    private static <E> E " + ENUM_VALUE + "(E[] values, int ordinal) {");
+                out.println("        if (ordinal < 0 || ordinal >= values.length) {");
+                out.println("            throw new IllegalArgumentException(\"Invalid ordinal \" + ordinal + \" for \" +");
+                out.println("                    values.getClass().getComponentType().getName());");
+                out.println("        }");
+                out.println();
+                out.println("        return values[ordinal];");
+                out.println("    }");
+            }
+            out.println("}");
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Failed to write " + qualifiedName + ": " + e.getMessage(), type);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private enum Kind {
+        BOOLEAN, INTEGRAL, CHAR, FLOAT, DOUBLE, STRING, BYTES, ENUM, NESTED;
+
+        boolean isReference() {
+            return this == STRING || this == BYTES || this == ENUM || this == NESTED;
+        }
+    }
+
+    private static class Field {
+        private final VariableElement variable;
+        private final Kind kind;
+        private final String access;
+
+        Field(VariableElement variable, Kind kind, String access) {
+            this.variable = variable;
+            this.kind = kind;
+            this.access = access;
+        }
+
+        String name() {
+            return this.variable.getSimpleName().toString();
+        }
+
+        String constant(String suffix) {
+            return this.name().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT) + '_' + suffix;
+        }
+
+        String type() {
+            return this.variable.asType().toString();
+        }
+
+        private String writeValue(String value) {
+            switch (this.kind) {
+                case BOOLEAN:
+                    return "out.putByte(" + value + " ? 1 : 0);";
+                case INTEGRAL:
+                    return "out.putZigZag(" + value + ");";
+                case CHAR:
+                    return "out.putVarInt(" + value + ");";
+                case FLOAT:
+                    return "out.putInt(Float.floatToRawIntBits(" + value + "));";
+                case DOUBLE:
+                    return "out.putLong(Double.doubleToRawLongBits(" + value + "));";
+                case STRING:
+                    return "out.putString(" + value + ");";
+                case BYTES:
+                    return "out.putBytes(" + value + ");";
+                case ENUM:
+                    return "out.putVarInt(" + value + ".ordinal());";
+                case NESTED:
+                    return this.constant("SERIALIZER") + ".write(" + value + ", out);";
+                default:
+                    throw new IllegalStateException("Unhandled field kind: " + this.kind);
+            }
+        }
+
+        private String readValue() {
+            switch (this.kind) {
+                case BOOLEAN:
+                    return "in.getByte() != 0";
+                case INTEGRAL:
+                    return this.variable.asType().getKind() == TypeKind.LONG ?
+                            "in.getZigZag()" : "(" + this.type() + ") in.getZigZag()";
+                case CHAR:
+                    return "(char) in.getVarInt()";
+                case FLOAT:
+                    return "Float.intBitsToFloat(in.getInt())";
+                case DOUBLE:
+                    return "Double.longBitsToDouble(in.getLong())";
+                case STRING:
+                    return "in.getString()";
+                case BYTES:
+                    return "in.getBytes()";
+                case ENUM:
+                    return ENUM_VALUE + "(" + this.constant("VALUES") + ", in.getVarInt())";
+                case NESTED:
+                    return this.constant("SERIALIZER") + ".read(in)";
+                default:
+                    throw new IllegalStateException("Unhandled field kind: " + this.kind);
+            }
+        }
+
+        void writeTo(PrintWriter out) {
+            String value = "value." + this.access;
+            if (!this.kind.isReference()) {
+                out.println("        " + this.writeValue(value));
+                return;
+            }
+
+            // References are preceded by a byte indicating whether
+            // they are present
+            String local = this.local();
+            out.println("        " + this.type() + " " + local + " = " + value + ";");
+            out.println("        if (" + local + " == null) {");
+            out.println("            out.putByte(0);");
+            out.println("        } else {");
+            out.println("            out.putByte(1);");
+            out.println("            " + this.writeValue(local));
+            out.println("        }");
+        }
+
+        String readFrom(PrintWriter out) {
+            String local = this.local();
+            String value = this.readValue();
+            if (this.kind.isReference()) {
+                value = "in.getByte() == 0 ? null : " + value;
+            }
+
+            out.println("        " + this.type() + " " + local + " = " + value + ";");
+            return local;
+        }
+
+        private String local() {
+            // Avoid shadowing the parameters of the serializer
+            String name = this.name();
+            return name.equals("in") || name.equals("out") || name.equals("value") ? name + '_' : name;
+        }
+    }
+}
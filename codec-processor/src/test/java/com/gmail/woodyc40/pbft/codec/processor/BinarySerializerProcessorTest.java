@@ -0,0 +1,157 @@
+package com.gmail.woodyc40.pbft.codec.processor;
+
+import com.gmail.woodyc40.pbft.codec.BinaryReader;
+import com.gmail.woodyc40.pbft.codec.BinarySerializer;
+import com.gmail.woodyc40.pbft.codec.BinaryWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.*;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinarySerializerProcessorTest {
+    private static final String ANNOTATION = "@com.gmail.woodyc40.pbft.codec.BinarySerializable\n";
+
+    private static JavaFileObject source(String className, String source) {
+        URI uri = URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension);
+        return new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+    }
+
+    /**
+     * Compiles the given sources with the processor into the
+     * given directory, returning the errors reported.
+     */
+    private static List<String> compile(Path output, JavaFileObject... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, null)) {
+            List<String> options = List.of(
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-d", output.toString(),
+                    "-s", output.toString());
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null, List.of(sources));
+            task.setProcessors(List.of(new BinarySerializerProcessor()));
+            task.call();
+        }
+
+        return diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                .map(diagnostic -> diagnostic.getMessage(null))
+                .collect(Collectors.toList());
+    }
+
+    private static void assertRejected(Path output, String message, String source) throws IOException {
+        List<String> errors = compile(output, source("Rejected", source));
+        assertTrue(errors.stream().anyMatch(error -> error.contains(message)), errors::toString);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BinarySerializer<Object> newSerializer(ClassLoader loader, String name) throws ReflectiveOperationException {
+        return (BinarySerializer<Object>) loader.loadClass(name).getConstructor().newInstance();
+    }
+
+    @Test
+    void rejectsGenericClass(@TempDir Path output) throws IOException {
+        assertRejected(output, "may not be generic", ANNOTATION +
+                "public class Rejected<T> {\n" +
+                "    public final int value;\n" +
+                "    public Rejected(int value) { this.value = value; }\n" +
+                "}\n");
+    }
+
+    @Test
+    void rejectsPrivateFieldWithoutAccessor(@TempDir Path output) throws IOException {
+        assertRejected(output, "must be readable through an accessor", ANNOTATION +
+                "public class Rejected {\n" +
+                "    private final int value;\n" +
+                "    public Rejected(int value) { this.value = value; }\n" +
+                "}\n");
+    }
+
+    @Test
+    void rejectsMissingConstructor(@TempDir Path output) throws IOException {
+        assertRejected(output, "must have a constructor taking every field", ANNOTATION +
+                "public class Rejected {\n" +
+                "    public final int first;\n" +
+                "    public final String second;\n" +
+                "    public Rejected(String second, int first) { this.first = first; this.second = second; }\n" +
+                "}\n");
+    }
+
+    @Test
+    void roundTripsInUnnamedPackage(@TempDir Path output) throws Exception {
+        // Nested serializers in the unnamed package are referred to
+        // without a package prefix
+        List<String> errors = compile(output,
+                source("Color", "public enum Color { RED, GREEN }\n"),
+                source("Inner", ANNOTATION +
+                        "public class Inner {\n" +
+                        "    private final long id;\n" +
+                        "    public Inner(long id) { this.id = id; }\n" +
+                        "    public long getId() { return this.id; }\n" +
+                        "    @Override public String toString() { return \"Inner\" + this.id; }\n" +
+                        "}\n"),
+                source("Outer", ANNOTATION +
+                        "public class Outer {\n" +
+                        "    private final int value;\n" +
+                        "    private final String label;\n" +
+                        "    private final Color color;\n" +
+                        "    private final Inner inner;\n" +
+                        "    public Outer(int value, String label, Color color, Inner inner) {\n" +
+                        "        this.value = value; this.label = label; this.color = color; this.inner = inner;\n" +
+                        "    }\n" +
+                        "    public int value() { return this.value; }\n" +
+                        "    public String label() { return this.label; }\n" +
+                        "    public Color color() { return this.color; }\n" +
+                        "    public Inner inner() { return this.inner; }\n" +
+                        "    @Override public String toString() {\n" +
+                        "        return this.value + \":\" + this.label + \":\" + this.color + \":\" + this.inner;\n" +
+                        "    }\n" +
+                        "}\n"));
+        assertEquals(new ArrayList<String>(), errors);
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { output.toUri().toURL() },
+                BinarySerializerProcessorTest.class.getClassLoader())) {
+            Class<?> color = loader.loadClass("Color");
+            Object inner = loader.loadClass("Inner").getConstructor(long.class).newInstance(-7L);
+            Constructor<?> constructor = loader.loadClass("Outer")
+                    .getConstructor(int.class, String.class, color, inner.getClass());
+
+            BinarySerializer<Object> serializer = newSerializer(loader, "OuterSerializer");
+            for (Object value : new Object[] {
+                    constructor.newInstance(42, "label", color.getEnumConstants()[1], inner),
+                    constructor.newInstance(-1, null, null, null) }) {
+                BinaryWriter out = new BinaryWriter();
+                serializer.write(value, out);
+
+                Object read = serializer.read(new BinaryReader(out.toByteBuffer()));
+                assertEquals(value.toString(), read.toString());
+            }
+
+            // The value of an enum field is not trusted to be a valid ordinal
+            BinaryWriter out = new BinaryWriter();
+            out.putZigZag(0);
+            out.putByte(0);
+            out.putByte(1);
+            out.putVarInt(2);
+            out.putByte(0);
+            assertThrows(IllegalArgumentException.class,
+                    () -> serializer.read(new BinaryReader(out.toByteBuffer())));
+        }
+    }
+}
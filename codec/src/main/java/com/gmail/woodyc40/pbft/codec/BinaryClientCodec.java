@@ -0,0 +1,63 @@
+package com.gmail.woodyc40.pbft.codec;
+
+import com.gmail.woodyc40.pbft.Client;
+import com.gmail.woodyc40.pbft.ClientDecoder;
+import com.gmail.woodyc40.pbft.ClientEncoder;
+import com.gmail.woodyc40.pbft.ReplicaMessageType;
+import com.gmail.woodyc40.pbft.message.ClientReply;
+import com.gmail.woodyc40.pbft.message.ClientRequest;
+import com.gmail.woodyc40.pbft.message.DefaultClientReply;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ClientEncoder} and {@link ClientDecoder} which
+ * use the same binary form as {@link BinaryReplicaCodec}.
+ *
+ * @param <O> the operation type
+ * @param <R> the result type
+ */
+public class BinaryClientCodec<O, R> implements ClientEncoder<O, ByteBuffer>, ClientDecoder<O, R, ByteBuffer> {
+    private static final ThreadLocal<BinaryWriter> WRITER = ThreadLocal.withInitial(BinaryWriter::new);
+
+    private final BinarySerializer<O> operationSerializer;
+    private final BinarySerializer<R> resultSerializer;
+
+    public BinaryClientCodec(BinarySerializer<O> operationSerializer, BinarySerializer<R> resultSerializer) {
+        this.operationSerializer = operationSerializer;
+        this.resultSerializer = resultSerializer;
+    }
+
+    @Override
+    public ByteBuffer encodeRequest(ClientRequest<O> request) {
+        BinaryWriter out = WRITER.get();
+        out.reset();
+
+        BinaryHeader.write(out, ReplicaMessageType.REQUEST, 0, -1, 0, 0);
+        out.putLong(request.timestamp());
+        out.putString(request.client().clientId());
+        this.operationSerializer.write(request.operation(), out);
+
+        return out.toByteBuffer();
+    }
+
+    @Override
+    public ClientReply<R> decodeReply(Client<O, R, ByteBuffer> client, ByteBuffer data) {
+        if (BinaryHeader.type(data) != ReplicaMessageType.REPLY) {
+            throw new IllegalArgumentException("Not a reply: " + BinaryHeader.type(data));
+        }
+
+        BinaryReader in = BinaryHeader.body(data);
+        long timestamp = in.getLong();
+        // Skip the client ID, the reply was sent to this client
+        in.getString();
+        R result = this.resultSerializer.read(in);
+
+        return new DefaultClientReply<>(
+                BinaryHeader.view(data),
+                timestamp,
+                client,
+                BinaryHeader.sender(data),
+                result);
+    }
+}
@@ -0,0 +1,174 @@
+package com.gmail.woodyc40.pbft.codec;
+
+import com.gmail.woodyc40.pbft.ReplicaMessageType;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The fixed-size header which begins every message encoded
+ * by the binary codec:
+ *
+ * <pre>
+ * [tag:1][flags:1][sender:4][view:4][seq:8]
+ * </pre>
+ *
+ * <p>The tag is that of the {@link ReplicaMessageType} of
+ * the message. Messages which do not have a sender, view or sequence
+ * number leave the corresponding field as {@code -1} or
+ * {@code 0}. Because the header has a fixed layout, its
+ * fields can be read without decoding the body.</p>
+ *
+ * <p>If {@link #FLAG_COMPRESSED} is set, the body is
+ * written as its uncompressed length followed by its
+ * deflated form. The header itself is never compressed.
+ * </p>
+ */
+public final class BinaryHeader {
+    public static final int BYTES = 18;
+
+    /**
+     * Set if the operation of a request is {@code null}.
+     */
+    public static final int FLAG_NULL_OPERATION = 1;
+
+    /**
+     * Set if the body of the message is compressed.
+     */
+    public static final int FLAG_COMPRESSED = 2;
+
+    // Bounds the buffer allocated to decompress a body so that a
+    // faulty sender cannot claim an arbitrarily large size
+    private static final int MAX_BODY_BYTES = 64 * 1024 * 1024;
+    // Deflate cannot compress by more than about 1032:1, so a body
+    // claiming more than this relative to its compressed size is
+    // malformed
+    private static final int MAX_DEFLATE_RATIO = 1032;
+    private static final int MIN_INFLATE_BYTES = 256;
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private static final int TAG_OFFSET = 0;
+    private static final int FLAGS_OFFSET = 1;
+    private static final int SENDER_OFFSET = 2;
+    private static final int VIEW_OFFSET = 6;
+    private static final int SEQ_OFFSET = 10;
+
+    private BinaryHeader() {
+    }
+
+    static void write(BinaryWriter out, ReplicaMessageType type, int flags, int sender, int view, long seq) {
+        out.putByte(type.tag());
+        out.putByte(flags);
+        out.putInt(sender);
+        out.putInt(view);
+        out.putLong(seq);
+    }
+
+    public static int tag(ByteBuffer message) {
+        return message.get(message.position() + TAG_OFFSET);
+    }
+
+    public static ReplicaMessageType type(ByteBuffer message) {
+        return ReplicaMessageType.fromTag(tag(message));
+    }
+
+    public static int flags(ByteBuffer message) {
+        return message.get(message.position() + FLAGS_OFFSET) & 0xFF;
+    }
+
+    public static int sender(ByteBuffer message) {
+        return message.getInt(message.position() + SENDER_OFFSET);
+    }
+
+    public static int view(ByteBuffer message) {
+        return message.getInt(message.position() + VIEW_OFFSET);
+    }
+
+    public static long seq(ByteBuffer message) {
+        return message.getLong(message.position() + SEQ_OFFSET);
+    }
+
+    /**
+     * Creates a reader positioned at the start of the body
+     * of the given message, leaving the position of the
+     * given buffer unchanged.
+     *
+     * @param message the encoded message
+     * @return a reader over the message body
+     */
+    static BinaryReader body(ByteBuffer message) {
+        ByteBuffer body = message.duplicate();
+        body.position(body.position() + BYTES);
+        if ((flags(message) & FLAG_COMPRESSED) == 0) {
+            return new BinaryReader(body);
+        }
+
+        return new BinaryReader(inflate(new BinaryReader(body)));
+    }
+
+    /**
+     * Compresses the body of the message written to the
+     * given writer if it becomes smaller, setting {@link
+     * #FLAG_COMPRESSED} if so.
+     *
+     * @param out the writer containing the message
+     * @param deflater the deflater used to compress
+     */
+    static void compress(BinaryWriter out, Deflater deflater) {
+        if (out.deflate(BYTES, deflater)) {
+            out.setByte(FLAGS_OFFSET, out.getByte(FLAGS_OFFSET) | FLAG_COMPRESSED);
+        }
+    }
+
+    private static ByteBuffer inflate(BinaryReader in) {
+        int length = in.getVarInt();
+        ByteBuffer compressed = in.buffer();
+        long maxLength = Math.min(MAX_BODY_BYTES, (long) compressed.remaining() * MAX_DEFLATE_RATIO);
+        if (length < 0 || length > maxLength) {
+            throw new IllegalArgumentException("Invalid body length: " + length);
+        }
+
+        /*
+         * The output grows as the body actually inflates rather than being
+         * allocated up front from the claimed length, so that a faulty
+         * sender cannot make the replica allocate memory without sending
+         * the data to fill it.
+         */
+        byte[] body = new byte[Math.min(length, Math.max(MIN_INFLATE_BYTES, compressed.remaining() * 4))];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int inflated = 0;
+            while (inflated < length) {
+                if (inflated == body.length) {
+                    body = Arrays.copyOf(body, (int) Math.min(length, 2L * body.length));
+                }
+
+                int count = inflater.inflate(body, inflated, body.length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.finished() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed body");
+                }
+                inflated += count;
+            }
+
+            // The stream must end exactly at the claimed length
+            if (!inflater.finished() && inflater.inflate(new byte[1]) > 0) {
+                throw new IllegalArgumentException("Compressed body exceeds its length");
+            }
+            if (!inflater.finished()) {
+                throw new IllegalArgumentException("Truncated compressed body");
+            }
+            if (inflater.getRemaining() > 0) {
+                throw new IllegalArgumentException("Trailing bytes after compressed body");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        return ByteBuffer.wrap(body);
+    }
+}
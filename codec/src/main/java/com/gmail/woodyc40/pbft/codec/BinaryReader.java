@@ -0,0 +1,120 @@
+package com.gmail.woodyc40.pbft.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the values written by a {@link BinaryWriter} from
+ * a {@link ByteBuffer}, advancing its position.
+ */
+public class BinaryReader {
+    private final ByteBuffer buffer;
+
+    public BinaryReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ByteBuffer buffer() {
+        return this.buffer;
+    }
+
+    public int getByte() {
+        return this.buffer.get();
+    }
+
+    public int getInt() {
+        return this.buffer.getInt();
+    }
+
+    public long getLong() {
+        return this.buffer.getLong();
+    }
+
+    public long getVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = this.buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed variable-length integer");
+    }
+
+    public int getVarInt() {
+        long value = this.getVarLong();
+        if (value > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Variable-length integer too large: " + value);
+        }
+
+        return (int) value;
+    }
+
+    public long getZigZag() {
+        long value = this.getVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads the number of elements in a collection which
+     * follows, each of which takes at least one byte.
+     *
+     * <p>The count is untrusted, so it is rejected if it
+     * exceeds the number of bytes remaining rather than
+     * being used to size the collection.</p>
+     *
+     * @return the number of elements
+     */
+    public int getCount() {
+        int count = this.getVarInt();
+        if (count < 0 || count > this.buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid element count: " + count);
+        }
+
+        return count;
+    }
+
+    private int getLength() {
+        int length = this.getVarInt();
+        if (length < 0 || length > this.buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length: " + length);
+        }
+
+        return length;
+    }
+
+    public byte[] getBytes() {
+        byte[] value = new byte[this.getLength()];
+        this.buffer.get(value);
+        return value;
+    }
+
+    /**
+     * Reads a length-prefixed sequence of bytes as a view
+     * of the underlying buffer rather than a copy.
+     *
+     * @return the bytes
+     */
+    public ByteBuffer getSlice() {
+        int length = this.getLength();
+        ByteBuffer slice = this.buffer.slice();
+        slice.limit(length);
+        this.buffer.position(this.buffer.position() + length);
+        return slice;
+    }
+
+    public String getString() {
+        int length = this.getLength();
+        if (this.buffer.hasArray()) {
+            int offset = this.buffer.arrayOffset() + this.buffer.position();
+            this.buffer.position(this.buffer.position() + length);
+            return new String(this.buffer.array(), offset, length, StandardCharsets.UTF_8);
+        }
+
+        byte[] bytes = new byte[length];
+        this.buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
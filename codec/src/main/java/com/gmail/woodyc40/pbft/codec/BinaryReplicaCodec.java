@@ -0,0 +1,804 @@
+package com.gmail.woodyc40.pbft.codec;
+
+import com.gmail.woodyc40.pbft.ReplicaDecoder;
+import com.gmail.woodyc40.pbft.ReplicaEncoder;
+import com.gmail.woodyc40.pbft.ReplicaHeaderDecoder;
+import com.gmail.woodyc40.pbft.ReplicaMessageType;
+import com.gmail.woodyc40.pbft.buffer.BufferPool;
+import com.gmail.woodyc40.pbft.message.*;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * A {@link ReplicaEncoder} and {@link ReplicaDecoder}
+ * which encode messages in a compact binary form.
+ *
+ * <p>Each message begins with a {@link BinaryHeader}. The
+ * body follows, using the following conventions:</p>
+ * <ul>
+ *     <li>Digests are written as raw bytes prefixed with
+ *     their length rather than as strings</li>
+ *     <li>Counts, replica IDs and view numbers of nested
+ *     messages are written as variable-length integers</li>
+ *     <li>Sequence numbers of nested messages and lists of
+ *     sequence numbers are written as zig-zag encoded
+ *     deltas from the previous sequence number, starting
+ *     from the sequence number in the header, so that
+ *     consecutive sequence numbers take a single byte</li>
+ *     <li>Operations and results are written by the given
+ *     {@link BinarySerializer}s</li>
+ * </ul>
+ *
+ * <p>The encoded form of every message decoded by the
+ * codec is kept for as long as the message itself, so that
+ * forwarding or retransmitting that message, and embedding
+ * it into the proofs of a VIEW-CHANGE, NEW-VIEW or
+ * COMMIT-PROOF, reuses the bytes that were received,
+ * including any signatures or MACs, rather than encoding
+ * it again. Transports must therefore not reuse the
+ * buffers they pass to the decoder. Replies are kept in
+ * the same way once encoded so that retransmitted replies
+ * are not encoded again.</p>
+ *
+ * <p>Messages whose body is at least the compression
+ * threshold are deflated, which mostly benefits the
+ * redundant proofs carried by VIEW-CHANGE and NEW-VIEW
+ * messages, and marked with {@link
+ * BinaryHeader#FLAG_COMPRESSED}. Compression is disabled
+ * unless a threshold is given, though compressed messages
+ * are always decoded.</p>
+ *
+ * <p>If a {@link BufferPool} is given, encoded messages
+ * are written into pooled buffers which are released by a
+ * pool-aware transport once sent.</p>
+ *
+ * @param <O> the operation type
+ * @param <R> the result type
+ */
+public class BinaryReplicaCodec<O, R> implements ReplicaEncoder<O, R, ByteBuffer>,
+        ReplicaDecoder<O, ByteBuffer>, ReplicaHeaderDecoder<ByteBuffer> {
+    /**
+     * The compression threshold which disables compression.
+     */
+    public static final int NO_COMPRESSION = Integer.MAX_VALUE;
+
+    private static final ThreadLocal<BinaryWriter> WRITER = ThreadLocal.withInitial(BinaryWriter::new);
+    private static final ThreadLocal<Deflater> DEFLATER =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+
+    private static final int NESTED_PRE_PREPARE = 0;
+    private static final int NESTED_PREPARE = 1;
+    private static final int NESTED_WIRE = 2;
+    private static final int NESTED_COMPACT = 3;
+
+    private final BinarySerializer<O> operationSerializer;
+    private final BinarySerializer<R> resultSerializer;
+    private final @Nullable BufferPool pool;
+    private final int compressionThreshold;
+    // Weakly keyed so that encoded forms are dropped along with their
+    // messages, which do not override equals and so are compared by
+    // identity
+    private final Map<Object, ByteBuffer> wireForms = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public BinaryReplicaCodec(BinarySerializer<O> operationSerializer, BinarySerializer<R> resultSerializer) {
+        this(operationSerializer, resultSerializer, null);
+    }
+
+    public BinaryReplicaCodec(BinarySerializer<O> operationSerializer,
+                              BinarySerializer<R> resultSerializer,
+                              @Nullable BufferPool pool) {
+        this(operationSerializer, resultSerializer, pool, NO_COMPRESSION);
+    }
+
+    /**
+     * Creates a new codec.
+     *
+     * @param operationSerializer the serializer for operations
+     * @param resultSerializer the serializer for results
+     * @param pool the pool to encode messages into, or
+     *             {@code null} to allocate a buffer for each
+     * @param compressionThreshold the size of the body at
+     *                             which messages are
+     *                             compressed
+     */
+    public BinaryReplicaCodec(BinarySerializer<O> operationSerializer,
+                              BinarySerializer<R> resultSerializer,
+                              @Nullable BufferPool pool,
+                              int compressionThreshold) {
+        this.operationSerializer = operationSerializer;
+        this.resultSerializer = resultSerializer;
+        this.pool = pool;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    private static BinaryWriter writer() {
+        BinaryWriter writer = WRITER.get();
+        writer.reset();
+        return writer;
+    }
+
+    private void compress(BinaryWriter out) {
+        if (out.position() - BinaryHeader.BYTES >= this.compressionThreshold) {
+            BinaryHeader.compress(out, DEFLATER.get());
+        }
+    }
+
+    private ByteBuffer finish(BinaryWriter out) {
+        this.compress(out);
+        return out.toByteBuffer(this.pool);
+    }
+
+    private void remember(Object message, ByteBuffer data) {
+        this.wireForms.put(message, data.asReadOnlyBuffer());
+    }
+
+    private @Nullable ByteBuffer wireForm(Object message) {
+        ByteBuffer wire = this.wireForms.get(message);
+        return wire == null ? null : wire.duplicate();
+    }
+
+    /**
+     * Obtains the size of the encoded form kept for the
+     * given message, which is held for as long as the
+     * message itself, e.g. by a message log.
+     *
+     * @param message the message
+     * @return the number of bytes kept, or {@code 0} if no
+     * encoded form is kept for the message
+     */
+    public long wireFormBytes(Object message) {
+        ByteBuffer wire = this.wireForms.get(message);
+        return wire == null ? 0 : wire.capacity();
+    }
+
+    private boolean writeWire(BinaryWriter out, Object message) {
+        ByteBuffer wire = this.wireForm(message);
+        if (wire == null) {
+            return false;
+        }
+
+        out.putByte(NESTED_WIRE);
+        out.putVarInt(wire.remaining());
+        out.putRaw(wire);
+        return true;
+    }
+
+    @Override
+    public ReplicaMessageType type(ByteBuffer data) {
+        return BinaryHeader.type(data);
+    }
+
+    @Override
+    public int viewNumber(ByteBuffer data) {
+        return BinaryHeader.view(data);
+    }
+
+    @Override
+    public long seqNumber(ByteBuffer data) {
+        return BinaryHeader.seq(data);
+    }
+
+    private static int requestFlags(ReplicaRequest<?> request) {
+        return request.operation() == null ? BinaryHeader.FLAG_NULL_OPERATION : 0;
+    }
+
+    private void writeRequestBody(BinaryWriter out, ReplicaRequest<O> request) {
+        out.putLong(request.timestamp());
+        out.putString(request.clientId());
+
+        O operation = request.operation();
+        if (operation != null) {
+            this.operationSerializer.write(operation, out);
+        }
+    }
+
+    private ReplicaRequest<O> readRequestBody(BinaryReader in, boolean nullOperation) {
+        long timestamp = in.getLong();
+        String clientId = in.getString();
+        O operation = nullOperation ? null : this.operationSerializer.read(in);
+
+        return new DefaultReplicaRequest<>(operation, timestamp, clientId);
+    }
+
+    @Override
+    public ByteBuffer encodeRequest(ReplicaRequest<O> request) {
+        ByteBuffer wire = this.wireForm(request);
+        if (wire != null) {
+            return wire;
+        }
+
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.REQUEST, requestFlags(request), -1, 0, 0);
+        this.writeRequestBody(out, request);
+
+        return this.finish(out);
+    }
+
+    @Override
+    public ReplicaRequest<O> decodeRequest(ByteBuffer data) {
+        ReplicaRequest<O> message = this.readRequest(data);
+        this.remember(message, data);
+        return message;
+    }
+
+    private ReplicaRequest<O> readRequest(ByteBuffer data) {
+        boolean nullOperation = (BinaryHeader.flags(data) & BinaryHeader.FLAG_NULL_OPERATION) != 0;
+        return this.readRequestBody(BinaryHeader.body(data), nullOperation);
+    }
+
+    @Override
+    public ByteBuffer encodePrePrepare(ReplicaPrePrepare<O> prePrepare) {
+        ByteBuffer wire = this.wireForm(prePrepare);
+        if (wire != null) {
+            return wire;
+        }
+
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.PRE_PREPARE, requestFlags(prePrepare.request()), -1,
+                prePrepare.viewNumber(), prePrepare.seqNumber());
+        out.putBytes(prePrepare.digest());
+        this.writeRequestBody(out, prePrepare.request());
+
+        return this.finish(out);
+    }
+
+    @Override
+    public ReplicaPrePrepare<O> decodePrePrepare(ByteBuffer data) {
+        ReplicaPrePrepare<O> message = this.readPrePrepare(data);
+        this.remember(message, data);
+        return message;
+    }
+
+    private ReplicaPrePrepare<O> readPrePrepare(ByteBuffer data) {
+        BinaryReader in = BinaryHeader.body(data);
+        byte[] digest = in.getBytes();
+        boolean nullOperation = (BinaryHeader.flags(data) & BinaryHeader.FLAG_NULL_OPERATION) != 0;
+        ReplicaRequest<O> request = this.readRequestBody(in, nullOperation);
+
+        return new DefaultReplicaPrePrepare<>(
+                BinaryHeader.view(data),
+                BinaryHeader.seq(data),
+                digest,
+                request);
+    }
+
+    @Override
+    public ByteBuffer encodePrepare(ReplicaPrepare prepare) {
+        ByteBuffer wire = this.wireForm(prepare);
+        if (wire != null) {
+            return wire;
+        }
+
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.PREPARE, 0, prepare.replicaId(),
+                prepare.viewNumber(), prepare.seqNumber());
+        out.putBytes(prepare.digest());
+
+        return this.finish(out);
+    }
+
+    @Override
+    public ReplicaPrepare decodePrepare(ByteBuffer data) {
+        ReplicaPrepare message = this.readPrepare(data);
+        this.remember(message, data);
+        return message;
+    }
+
+    private ReplicaPrepare readPrepare(ByteBuffer data) {
+        BinaryReader in = BinaryHeader.body(data);
+        return new DefaultReplicaPrepare(
+                BinaryHeader.view(data),
+                BinaryHeader.seq(data),
+                in.getBytes(),
+                BinaryHeader.sender(data));
+    }
+
+    @Override
+    public ByteBuffer encodeCommit(ReplicaCommit commit) {
+        ByteBuffer wire = this.wireForm(commit);
+        if (wire != null) {
+            return wire;
+        }
+
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.COMMIT, 0, commit.replicaId(),
+                commit.viewNumber(), commit.seqNumber());
+        out.putBytes(commit.digest());
+
+        return this.finish(out);
+    }
+
+    @Override
+    public ReplicaCommit decodeCommit(ByteBuffer data) {
+        ReplicaCommit message = this.readCommit(data);
+        this.remember(message, data);
+        return message;
+    }
+
+    private ReplicaCommit readCommit(ByteBuffer data) {
+        BinaryReader in = BinaryHeader.body(data);
+        return new DefaultReplicaCommit(
+                BinaryHeader.view(data),
+                BinaryHeader.seq(data),
+                in.getBytes(),
+                BinaryHeader.sender(data));
+    }
+
+    @Override
+    public ByteBuffer encodeReply(ReplicaReply<R> reply) {
+        ByteBuffer wire = this.wireForm(reply);
+        if (wire != null) {
+            return wire;
+        }
+
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.REPLY, 0, reply.replicaId(), reply.viewNumber(), 0);
+        out.putLong(reply.timestamp());
+        out.putString(reply.clientId());
+        this.resultSerializer.write(reply.result(), out);
+
+        this.compress(out);
+        ByteBuffer encoded = out.toByteBuffer();
+        this.remember(reply, encoded);
+        return encoded;
+    }
+
+    public ReplicaReply<R> decodeReply(ByteBuffer data) {
+        ReplicaReply<R> message = this.readReply(data);
+        this.remember(message, data);
+        return message;
+    }
+
+    private ReplicaReply<R> readReply(ByteBuffer data) {
+        BinaryReader in = BinaryHeader.body(data);
+        long timestamp = in.getLong();
+        String clientId = in.getString();
+        R result = this.resultSerializer.read(in);
+
+        return new DefaultReplicaReply<>(
+                BinaryHeader.view(data),
+                timestamp,
+                clientId,
+                BinaryHeader.sender(data),
+                result);
+    }
+
+    @Override
+    public ByteBuffer encodeCheckpoint(ReplicaCheckpoint checkpoint) {
+        ByteBuffer wire = this.wireForm(checkpoint);
+        if (wire != null) {
+            return wire;
+        }
+
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.CHECKPOINT, 0, checkpoint.replicaId(), 0, checkpoint.lastSeqNumber());
+        out.putBytes(checkpoint.digest());
+
+        return this.finish(out);
+    }
+
+    @Override
+    public ReplicaCheckpoint decodeCheckpoint(ByteBuffer data) {
+        ReplicaCheckpoint message = this.readCheckpoint(data);
+        this.remember(message, data);
+        return message;
+    }
+
+    private ReplicaCheckpoint readCheckpoint(ByteBuffer data) {
+        BinaryReader in = BinaryHeader.body(data);
+        return new DefaultReplicaCheckpoint(
+                BinaryHeader.seq(data),
+                in.getBytes(),
+                BinaryHeader.sender(data));
+    }
+
+    private void writeNestedPrePrepare(BinaryWriter out, ReplicaPrePrepare<O> prePrepare) {
+        out.putByte(requestFlags(prePrepare.request()));
+        out.putVarInt(prePrepare.viewNumber());
+        out.putBytes(prePrepare.digest());
+        this.writeRequestBody(out, prePrepare.request());
+    }
+
+    private ReplicaPrePrepare<O> readNestedPrePrepare(BinaryReader in, long seqNumber) {
+        boolean nullOperation = (in.getByte() & BinaryHeader.FLAG_NULL_OPERATION) != 0;
+        int viewNumber = in.getVarInt();
+        byte[] digest = in.getBytes();
+        ReplicaRequest<O> request = this.readRequestBody(in, nullOperation);
+
+        return new DefaultReplicaPrePrepare<>(viewNumber, seqNumber, digest, request);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeViewChangeBody(BinaryWriter out, ReplicaViewChange viewChange) {
+        long lastSeqNumber = viewChange.lastSeqNumber();
+
+        Collection<ReplicaCheckpoint> checkpointProofs = viewChange.checkpointProofs();
+        out.putVarInt(checkpointProofs.size());
+        for (ReplicaCheckpoint checkpoint : checkpointProofs) {
+            if (this.writeWire(out, checkpoint)) {
+                continue;
+            }
+
+            out.putByte(NESTED_COMPACT);
+            out.putVarInt(checkpoint.replicaId());
+            out.putZigZag(checkpoint.lastSeqNumber() - lastSeqNumber);
+            out.putBytes(checkpoint.digest());
+        }
+
+        // Sort the prepared proofs so that each sequence number
+        // is a small delta from the one before it
+        Map<Long, Collection<ReplicaPhaseMessage>> preparedProofs = new TreeMap<>(viewChange.preparedProofs());
+        out.putVarInt(preparedProofs.size());
+        long previous = lastSeqNumber;
+        for (Map.Entry<Long, Collection<ReplicaPhaseMessage>> entry : preparedProofs.entrySet()) {
+            long seqNumber = entry.getKey();
+            out.putZigZag(seqNumber - previous);
+            previous = seqNumber;
+
+            Collection<ReplicaPhaseMessage> messages = entry.getValue();
+            int count = 0;
+            for (ReplicaPhaseMessage message : messages) {
+                if (message instanceof ReplicaPrePrepare || message instanceof ReplicaPrepare) {
+                    count++;
+                }
+            }
+
+            out.putVarInt(count);
+            for (ReplicaPhaseMessage message : messages) {
+                if (!(message instanceof ReplicaPrePrepare || message instanceof ReplicaPrepare)) {
+                    continue;
+                }
+
+                if (this.writeWire(out, message)) {
+                    continue;
+                }
+
+                if (message instanceof ReplicaPrePrepare) {
+                    out.putByte(NESTED_PRE_PREPARE);
+                    this.writeNestedPrePrepare(out, (ReplicaPrePrepare<O>) message);
+                } else {
+                    ReplicaPrepare prepare = (ReplicaPrepare) message;
+                    out.putByte(NESTED_PREPARE);
+                    out.putVarInt(prepare.viewNumber());
+                    out.putVarInt(prepare.replicaId());
+                    out.putBytes(prepare.digest());
+                }
+            }
+        }
+    }
+
+    private ReplicaPhaseMessage decodePhaseMessage(ByteBuffer wire) {
+        ReplicaMessageType type = BinaryHeader.type(wire);
+        switch (type) {
+            case PRE_PREPARE:
+                return this.decodePrePrepare(wire);
+            case PREPARE:
+                return this.decodePrepare(wire);
+            default:
+                throw new IllegalArgumentException("Unexpected prepared proof: " + type);
+        }
+    }
+
+    private ReplicaViewChange readViewChangeBody(BinaryReader in, int newViewNumber, long lastSeqNumber, int replicaId) {
+        int checkpointCount = in.getCount();
+        Collection<ReplicaCheckpoint> checkpointProofs = new ArrayList<>(checkpointCount);
+        for (int i = 0; i < checkpointCount; i++) {
+            if (in.getByte() == NESTED_WIRE) {
+                checkpointProofs.add(this.decodeCheckpoint(in.getSlice()));
+                continue;
+            }
+
+            int checkpointReplica = in.getVarInt();
+            long checkpointSeq = lastSeqNumber + in.getZigZag();
+            byte[] digest = in.getBytes();
+            checkpointProofs.add(new DefaultReplicaCheckpoint(checkpointSeq, digest, checkpointReplica));
+        }
+
+        int proofCount = in.getCount();
+        Map<Long, Collection<ReplicaPhaseMessage>> preparedProofs = new HashMap<>();
+        long previous = lastSeqNumber;
+        for (int i = 0; i < proofCount; i++) {
+            long seqNumber = previous + in.getZigZag();
+            previous = seqNumber;
+
+            int messageCount = in.getCount();
+            Collection<ReplicaPhaseMessage> messages = new ArrayList<>(messageCount);
+            for (int j = 0; j < messageCount; j++) {
+                int kind = in.getByte();
+                if (kind == NESTED_PRE_PREPARE) {
+                    messages.add(this.readNestedPrePrepare(in, seqNumber));
+                } else if (kind == NESTED_PREPARE) {
+                    int viewNumber = in.getVarInt();
+                    int prepareReplica = in.getVarInt();
+                    byte[] digest = in.getBytes();
+                    messages.add(new DefaultReplicaPrepare(viewNumber, seqNumber, digest, prepareReplica));
+                } else if (kind == NESTED_WIRE) {
+                    messages.add(this.decodePhaseMessage(in.getSlice()));
+                } else {
+                    throw new IllegalArgumentException("Unrecognized prepared proof: " + kind);
+                }
+            }
+
+            preparedProofs.put(seqNumber, messages);
+        }
+
+        return new DefaultReplicaViewChange(
+                newViewNumber,
+                lastSeqNumber,
+                checkpointProofs,
+                preparedProofs,
+                replicaId);
+    }
+
+    @Override
+    public ByteBuffer encodeViewChange(ReplicaViewChange viewChange) {
+        ByteBuffer wire = this.wireForm(viewChange);
+        if (wire != null) {
+            return wire;
+        }
+
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.VIEW_CHANGE, 0, viewChange.replicaId(),
+                viewChange.newViewNumber(), viewChange.lastSeqNumber());
+        this.writeViewChangeBody(out, viewChange);
+
+        return this.finish(out);
+    }
+
+    @Override
+    public ReplicaViewChange decodeViewChange(ByteBuffer data) {
+        ReplicaViewChange message = this.readViewChange(data);
+        this.remember(message, data);
+        return message;
+    }
+
+    private ReplicaViewChange readViewChange(ByteBuffer data) {
+        return this.readViewChangeBody(
+                BinaryHeader.body(data),
+                BinaryHeader.view(data),
+                BinaryHeader.seq(data),
+                BinaryHeader.sender(data));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ByteBuffer encodeNewView(ReplicaNewView newView) {
+        ByteBuffer wire = this.wireForm(newView);
+        if (wire != null) {
+            return wire;
+        }
+
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.NEW_VIEW, 0, -1, newView.newViewNumber(), 0);
+
+        Collection<ReplicaViewChange> viewChangeProofs = newView.viewChangeProofs();
+        out.putVarInt(viewChangeProofs.size());
+        for (ReplicaViewChange viewChange : viewChangeProofs) {
+            if (this.writeWire(out, viewChange)) {
+                continue;
+            }
+
+            out.putByte(NESTED_COMPACT);
+            out.putVarInt(viewChange.replicaId());
+            out.putVarInt(viewChange.newViewNumber());
+            out.putVarLong(viewChange.lastSeqNumber());
+            this.writeViewChangeBody(out, viewChange);
+        }
+
+        Collection<ReplicaPrePrepare<?>> preparedProofs = newView.preparedProofs();
+        out.putVarInt(preparedProofs.size());
+        long previous = 0;
+        for (ReplicaPrePrepare<?> prePrepare : preparedProofs) {
+            out.putZigZag(prePrepare.seqNumber() - previous);
+            previous = prePrepare.seqNumber();
+            this.writeNestedPrePrepare(out, (ReplicaPrePrepare<O>) prePrepare);
+        }
+
+        return this.finish(out);
+    }
+
+    @Override
+    public ReplicaNewView decodeNewView(ByteBuffer data) {
+        ReplicaNewView message = this.readNewView(data);
+        this.remember(message, data);
+        return message;
+    }
+
+    private ReplicaNewView readNewView(ByteBuffer data) {
+        BinaryReader in = BinaryHeader.body(data);
+
+        int viewChangeCount = in.getCount();
+        Collection<ReplicaViewChange> viewChangeProofs = new ArrayList<>(viewChangeCount);
+        for (int i = 0; i < viewChangeCount; i++) {
+            if (in.getByte() == NESTED_WIRE) {
+                viewChangeProofs.add(this.decodeViewChange(in.getSlice()));
+                continue;
+            }
+
+            int replicaId = in.getVarInt();
+            int newViewNumber = in.getVarInt();
+            long lastSeqNumber = in.getVarLong();
+            viewChangeProofs.add(this.readViewChangeBody(in, newViewNumber, lastSeqNumber, replicaId));
+        }
+
+        int prePrepareCount = in.getCount();
+        Collection<ReplicaPrePrepare<?>> preparedProofs = new ArrayList<>(prePrepareCount);
+        long previous = 0;
+        for (int i = 0; i < prePrepareCount; i++) {
+            long seqNumber = previous + in.getZigZag();
+            previous = seqNumber;
+            preparedProofs.add(this.readNestedPrePrepare(in, seqNumber));
+        }
+
+        return new DefaultReplicaNewView(
+                BinaryHeader.view(data),
+                viewChangeProofs,
+                preparedProofs);
+    }
+
+    @Override
+    public ByteBuffer encodeFetch(ReplicaFetch fetch) {
+        ByteBuffer wire = this.wireForm(fetch);
+        if (wire != null) {
+            return wire;
+        }
+
+        Collection<Long> seqNumbers = fetch.seqNumbers();
+        long first = seqNumbers.isEmpty() ? 0 : seqNumbers.iterator().next();
+
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.FETCH, 0, fetch.replicaId(), 0, first);
+        out.putVarInt(seqNumbers.size());
+        long previous = first;
+        for (long seqNumber : seqNumbers) {
+            out.putZigZag(seqNumber - previous);
+            previous = seqNumber;
+        }
+
+        return this.finish(out);
+    }
+
+    @Override
+    public ReplicaFetch decodeFetch(ByteBuffer data) {
+        ReplicaFetch message = this.readFetch(data);
+        this.remember(message, data);
+        return message;
+    }
+
+    private ReplicaFetch readFetch(ByteBuffer data) {
+        BinaryReader in = BinaryHeader.body(data);
+
+        int count = in.getCount();
+        Collection<Long> seqNumbers = new ArrayList<>(count);
+        long previous = BinaryHeader.seq(data);
+        for (int i = 0; i < count; i++) {
+            long seqNumber = previous + in.getZigZag();
+            previous = seqNumber;
+            seqNumbers.add(seqNumber);
+        }
+
+        return new DefaultReplicaFetch(seqNumbers, BinaryHeader.sender(data));
+    }
+
+    @Override
+    public ByteBuffer encodeCommitProof(ReplicaCommitProof<O> proof) {
+        ByteBuffer wire = this.wireForm(proof);
+        if (wire != null) {
+            return wire;
+        }
+
+        ReplicaPrePrepare<O> prePrepare = proof.prePrepare();
+
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.COMMIT_PROOF, requestFlags(prePrepare.request()), proof.replicaId(),
+                prePrepare.viewNumber(), prePrepare.seqNumber());
+        out.putBytes(prePrepare.digest());
+        this.writeRequestBody(out, prePrepare.request());
+
+        // Commits in a certificate share the sequence number of
+        // the pre-prepare, so only the sender, view and digest
+        // are written for those without a received encoded form
+        Collection<ReplicaCommit> commits = proof.commits();
+        out.putVarInt(commits.size());
+        for (ReplicaCommit commit : commits) {
+            if (this.writeWire(out, commit)) {
+                continue;
+            }
+
+            out.putByte(NESTED_COMPACT);
+            out.putVarInt(commit.replicaId());
+            out.putVarInt(commit.viewNumber());
+            out.putBytes(commit.digest());
+        }
+
+        return this.finish(out);
+    }
+
+    @Override
+    public ReplicaCommitProof<O> decodeCommitProof(ByteBuffer data) {
+        ReplicaCommitProof<O> message = this.readCommitProof(data);
+        this.remember(message, data);
+        return message;
+    }
+
+    private ReplicaCommitProof<O> readCommitProof(ByteBuffer data) {
+        BinaryReader in = BinaryHeader.body(data);
+        int viewNumber = BinaryHeader.view(data);
+        long seqNumber = BinaryHeader.seq(data);
+
+        byte[] digest = in.getBytes();
+        boolean nullOperation = (BinaryHeader.flags(data) & BinaryHeader.FLAG_NULL_OPERATION) != 0;
+        ReplicaRequest<O> request = this.readRequestBody(in, nullOperation);
+        ReplicaPrePrepare<O> prePrepare = new DefaultReplicaPrePrepare<>(viewNumber, seqNumber, digest, request);
+
+        int count = in.getCount();
+        Collection<ReplicaCommit> commits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.getByte() == NESTED_WIRE) {
+                commits.add(this.decodeCommit(in.getSlice()));
+                continue;
+            }
+
+            int replicaId = in.getVarInt();
+            int commitView = in.getVarInt();
+            byte[] commitDigest = in.getBytes();
+            commits.add(new DefaultReplicaCommit(commitView, seqNumber, commitDigest, replicaId));
+        }
+
+        return new DefaultReplicaCommitProof<>(prePrepare, commits, BinaryHeader.sender(data));
+    }
+
+    @Override
+    public ByteBuffer encodeRetransmit(ReplicaRetransmit retransmit) {
+        ByteBuffer wire = this.wireForm(retransmit);
+        if (wire != null) {
+            return wire;
+        }
+
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.RETRANSMIT, 0, retransmit.replicaId(),
+                retransmit.viewNumber(), retransmit.seqNumber());
+        out.putVarInt(retransmit.messageType().tag());
+
+        return this.finish(out);
+    }
+
+    @Override
+    public ReplicaRetransmit decodeRetransmit(ByteBuffer data) {
+        ReplicaRetransmit message = this.readRetransmit(data);
+        this.remember(message, data);
+        return message;
+    }
+
+    private ReplicaRetransmit readRetransmit(ByteBuffer data) {
+        BinaryReader in = BinaryHeader.body(data);
+        ReplicaMessageType messageType = ReplicaMessageType.fromTag(in.getVarInt());
+
+        return new DefaultReplicaRetransmit(BinaryHeader.view(data), BinaryHeader.seq(data),
+                messageType, BinaryHeader.sender(data));
+    }
+
+    @Override
+    public ByteBuffer encodeHeartbeat(ReplicaHeartbeat heartbeat) {
+        ByteBuffer wire = this.wireForm(heartbeat);
+        if (wire != null) {
+            return wire;
+        }
+
+        // Everything fits into the header
+        BinaryWriter out = writer();
+        BinaryHeader.write(out, ReplicaMessageType.HEARTBEAT, 0, heartbeat.replicaId(), heartbeat.viewNumber(), 0);
+
+        return this.finish(out);
+    }
+
+    @Override
+    public ReplicaHeartbeat decodeHeartbeat(ByteBuffer data) {
+        ReplicaHeartbeat message = new DefaultReplicaHeartbeat(BinaryHeader.view(data), BinaryHeader.sender(data));
+        this.remember(message, data);
+        return message;
+    }
+}
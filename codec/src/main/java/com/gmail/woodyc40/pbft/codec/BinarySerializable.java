@@ -0,0 +1,34 @@
+package com.gmail.woodyc40.pbft.codec;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an operation or result class for which the
+ * {@code pbft-java-codec-processor} annotation processor
+ * generates a {@link BinarySerializer}, named after the
+ * class with a {@code Serializer} suffix and placed in the
+ * same package.
+ *
+ * <p>Every instance field of the class is serialized in
+ * declaration order. Each field must either be readable
+ * directly or through an accessor with the same name as
+ * the field, optionally prefixed by {@code get} or {@code
+ * is}, and the class must have a constructor taking every
+ * field in declaration order.</p>
+ *
+ * <p>Fields may be primitives, {@link String}s, byte
+ * arrays, enums or other classes annotated with {@link
+ * BinarySerializable}. Integral fields are written as
+ * zig-zag variable-length integers, and every field which
+ * is not a primitive is preceded by a byte indicating
+ * whether it is {@code null}.</p>
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface BinarySerializable {
+}
@@ -0,0 +1,27 @@
+package com.gmail.woodyc40.pbft.codec;
+
+/**
+ * Writes and reads the application-defined values, i.e.
+ * operations and results, carried by the messages of the
+ * binary codec.
+ *
+ * @param <V> the type of value handled by this serializer
+ */
+public interface BinarySerializer<V> {
+    /**
+     * Writes the given value.
+     *
+     * @param value the value to write
+     * @param out the writer to write the value to
+     */
+    void write(V value, BinaryWriter out);
+
+    /**
+     * Reads a value previously written by {@link
+     * #write(Object, BinaryWriter)}.
+     *
+     * @param in the reader to read the value from
+     * @return the value that was read
+     */
+    V read(BinaryReader in);
+}
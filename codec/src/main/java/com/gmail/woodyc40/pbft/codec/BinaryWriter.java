@@ -0,0 +1,220 @@
+package com.gmail.woodyc40.pbft.codec;
+
+import com.gmail.woodyc40.pbft.buffer.BufferPool;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * A growable byte array used to encode messages.
+ *
+ * <p>Writers are reused by the codecs across messages so
+ * that encoding a message only allocates the buffer which
+ * is returned to the caller, or nothing at all if the
+ * bytes are copied into a {@link BufferPool}.</p>
+ */
+public class BinaryWriter {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private byte[] spare = new byte[0];
+    private int position;
+
+    public void reset() {
+        this.position = 0;
+    }
+
+    public int position() {
+        return this.position;
+    }
+
+    private void ensure(int additional) {
+        int required = this.position + additional;
+        if (required > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(required, this.bytes.length * 2));
+        }
+    }
+
+    public void putByte(int value) {
+        this.ensure(1);
+        this.bytes[this.position++] = (byte) value;
+    }
+
+    public void setByte(int index, int value) {
+        this.bytes[index] = (byte) value;
+    }
+
+    public int getByte(int index) {
+        return this.bytes[index] & 0xFF;
+    }
+
+    public void putInt(int value) {
+        this.ensure(4);
+        this.bytes[this.position++] = (byte) (value >>> 24);
+        this.bytes[this.position++] = (byte) (value >>> 16);
+        this.bytes[this.position++] = (byte) (value >>> 8);
+        this.bytes[this.position++] = (byte) value;
+    }
+
+    public void putLong(long value) {
+        this.putInt((int) (value >>> 32));
+        this.putInt((int) value);
+    }
+
+    /**
+     * Writes an unsigned variable-length integer using 7
+     * bits per byte, least significant group first.
+     *
+     * @param value the value, treated as unsigned
+     */
+    public void putVarLong(long value) {
+        this.ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            this.bytes[this.position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.bytes[this.position++] = (byte) value;
+    }
+
+    public void putVarInt(int value) {
+        this.putVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes a signed variable-length integer, zig-zag
+     * encoded so that small negative values are short.
+     *
+     * @param value the signed value
+     */
+    public void putZigZag(long value) {
+        this.putVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void putBytes(byte[] value) {
+        this.putVarInt(value.length);
+        this.putRaw(value, 0, value.length);
+    }
+
+    public void putRaw(byte[] value, int offset, int length) {
+        this.ensure(length);
+        System.arraycopy(value, offset, this.bytes, this.position, length);
+        this.position += length;
+    }
+
+    public void putRaw(ByteBuffer value) {
+        int length = value.remaining();
+        this.ensure(length);
+        value.duplicate().get(this.bytes, this.position, length);
+        this.position += length;
+    }
+
+    private static int varIntBytes(int value) {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            bytes++;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Replaces the bytes written from the given offset with
+     * their uncompressed length followed by their deflated
+     * form, if that is smaller.
+     *
+     * @param offset the index of the first byte to compress
+     * @param deflater the deflater used to compress
+     * @return {@code true} if the bytes were compressed
+     */
+    public boolean deflate(int offset, Deflater deflater) {
+        int length = this.position - offset;
+        int limit = length - varIntBytes(length);
+        if (limit <= 0) {
+            return false;
+        }
+
+        if (this.spare.length < limit) {
+            this.spare = new byte[Math.max(limit, this.spare.length * 2)];
+        }
+
+        deflater.reset();
+        deflater.setInput(this.bytes, offset, length);
+        deflater.finish();
+
+        int compressed = 0;
+        while (!deflater.finished() && compressed < limit) {
+            compressed += deflater.deflate(this.spare, compressed, limit - compressed);
+        }
+
+        // Only replace the bytes once it is known that the
+        // compressed form is smaller
+        if (!deflater.finished()) {
+            return false;
+        }
+
+        this.position = offset;
+        this.putVarInt(length);
+        this.putRaw(this.spare, 0, compressed);
+        return true;
+    }
+
+    public void putString(String value) {
+        int length = value.length();
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 0x80) {
+                ascii = false;
+                break;
+            }
+        }
+
+        if (ascii) {
+            // Client IDs are nearly always ASCII, so skip
+            // the intermediate array used by the encoder
+            this.putVarInt(length);
+            this.ensure(length);
+            for (int i = 0; i < length; i++) {
+                this.bytes[this.position++] = (byte) value.charAt(i);
+            }
+        } else {
+            this.putBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Copies the written bytes into a new buffer sized to
+     * fit them exactly.
+     *
+     * @return the encoded bytes
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(Arrays.copyOf(this.bytes, this.position));
+    }
+
+    /**
+     * Copies the bytes written so far into a buffer claimed
+     * from the given pool, falling back to {@link
+     * #toByteBuffer()} if no pooled buffer is available.
+     *
+     * @param pool the pool to claim a buffer from
+     * @return the encoded bytes
+     */
+    public ByteBuffer toByteBuffer(@Nullable BufferPool pool) {
+        ByteBuffer buffer = pool == null ? null : pool.acquire(this.position);
+        if (buffer == null) {
+            return this.toByteBuffer();
+        }
+
+        // Messages are encoded into the reused array first since their
+        // size is only known once written and the header and compression
+        // need random access to it, leaving a single bulk copy here
+        int start = buffer.position();
+        buffer.put(this.bytes, 0, this.position);
+        buffer.position(start);
+        return buffer;
+    }
+}
@@ -0,0 +1,291 @@
+package com.gmail.woodyc40.pbft.codec;
+
+import com.gmail.woodyc40.pbft.ReplicaMessageType;
+import com.gmail.woodyc40.pbft.message.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryReplicaCodecTest {
+    private static final BinarySerializer<Integer> INT_SERIALIZER = new BinarySerializer<Integer>() {
+        @Override
+        public void write(Integer value, BinaryWriter out) {
+            out.putZigZag(value);
+        }
+
+        @Override
+        public Integer read(BinaryReader in) {
+            return (int) in.getZigZag();
+        }
+    };
+
+    private static final byte[] DIGEST = { 1, 2, 3, 4 };
+
+    private final BinaryReplicaCodec<Integer, Integer> codec = new BinaryReplicaCodec<>(INT_SERIALIZER, INT_SERIALIZER);
+
+    private static ReplicaPrePrepare<Integer> prePrepare(int viewNumber, long seqNumber, Integer operation) {
+        return new DefaultReplicaPrePrepare<>(viewNumber, seqNumber, DIGEST,
+                new DefaultReplicaRequest<>(operation, 42L, "client"));
+    }
+
+    private static void assertPrePrepare(ReplicaPrePrepare<?> expected, ReplicaPrePrepare<?> actual) {
+        assertEquals(expected.viewNumber(), actual.viewNumber());
+        assertEquals(expected.seqNumber(), actual.seqNumber());
+        assertArrayEquals(expected.digest(), actual.digest());
+        assertEquals(expected.request().operation(), actual.request().operation());
+        assertEquals(expected.request().timestamp(), actual.request().timestamp());
+        assertEquals(expected.request().clientId(), actual.request().clientId());
+    }
+
+    private static ByteBuffer header(ReplicaMessageType type, long seq) {
+        BinaryWriter out = new BinaryWriter();
+        BinaryHeader.write(out, type, 0, 1, 0, seq);
+        return out.toByteBuffer();
+    }
+
+    private static ByteBuffer withBody(ReplicaMessageType type, long seq, int... body) {
+        ByteBuffer header = header(type, seq);
+        ByteBuffer message = ByteBuffer.allocate(header.remaining() + body.length);
+        message.put(header);
+        for (int b : body) {
+            message.put((byte) b);
+        }
+        message.flip();
+        return message;
+    }
+
+    private static ByteBuffer compressed(int length, byte[] body, int trailing) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(body);
+        deflater.finish();
+        byte[] deflated = new byte[body.length + 64];
+        int deflatedLength = deflater.deflate(deflated);
+        deflater.end();
+
+        BinaryWriter out = new BinaryWriter();
+        BinaryHeader.write(out, ReplicaMessageType.FETCH, BinaryHeader.FLAG_COMPRESSED, 1, 0, 0);
+        out.putVarInt(length);
+        out.putRaw(deflated, 0, deflatedLength);
+        for (int i = 0; i < trailing; i++) {
+            out.putByte(0);
+        }
+        return out.toByteBuffer();
+    }
+
+    @Test
+    void roundTripsRequest() {
+        ReplicaRequest<Integer> request = new DefaultReplicaRequest<>(-7, 12345L, "client");
+        ReplicaRequest<Integer> decoded = this.codec.decodeRequest(this.codec.encodeRequest(request));
+
+        assertEquals(-7, decoded.operation());
+        assertEquals(12345L, decoded.timestamp());
+        assertEquals("client", decoded.clientId());
+    }
+
+    @Test
+    void roundTripsNullOperation() {
+        ReplicaPrePrepare<Integer> prePrepare = prePrepare(3, 10, null);
+        ReplicaPrePrepare<Integer> decoded = this.codec.decodePrePrepare(this.codec.encodePrePrepare(prePrepare));
+
+        assertPrePrepare(prePrepare, decoded);
+        assertNull(decoded.request().operation());
+    }
+
+    @Test
+    void roundTripsPhaseMessages() {
+        ReplicaPrePrepare<Integer> prePrepare = prePrepare(3, 10, 5);
+        assertPrePrepare(prePrepare, this.codec.decodePrePrepare(this.codec.encodePrePrepare(prePrepare)));
+
+        ReplicaPrepare prepare = this.codec.decodePrepare(
+                this.codec.encodePrepare(new DefaultReplicaPrepare(3, 10, DIGEST, 2)));
+        assertEquals(3, prepare.viewNumber());
+        assertEquals(10, prepare.seqNumber());
+        assertArrayEquals(DIGEST, prepare.digest());
+        assertEquals(2, prepare.replicaId());
+
+        ReplicaCommit commit = this.codec.decodeCommit(
+                this.codec.encodeCommit(new DefaultReplicaCommit(3, 10, DIGEST, 1)));
+        assertEquals(3, commit.viewNumber());
+        assertEquals(10, commit.seqNumber());
+        assertArrayEquals(DIGEST, commit.digest());
+        assertEquals(1, commit.replicaId());
+    }
+
+    @Test
+    void roundTripsReplyAndCheckpoint() {
+        ReplicaReply<Integer> reply = this.codec.decodeReply(
+                this.codec.encodeReply(new DefaultReplicaReply<>(2, 99L, "client", 3, 17)));
+        assertEquals(2, reply.viewNumber());
+        assertEquals(99L, reply.timestamp());
+        assertEquals("client", reply.clientId());
+        assertEquals(3, reply.replicaId());
+        assertEquals(17, reply.result());
+
+        ReplicaCheckpoint checkpoint = this.codec.decodeCheckpoint(
+                this.codec.encodeCheckpoint(new DefaultReplicaCheckpoint(200, DIGEST, 1)));
+        assertEquals(200, checkpoint.lastSeqNumber());
+        assertArrayEquals(DIGEST, checkpoint.digest());
+        assertEquals(1, checkpoint.replicaId());
+    }
+
+    @Test
+    void roundTripsViewChangeAndNewView() {
+        Map<Long, Collection<ReplicaPhaseMessage>> preparedProofs = new HashMap<>();
+        preparedProofs.put(11L, Arrays.asList(prePrepare(0, 11, 1), new DefaultReplicaPrepare(0, 11, DIGEST, 2)));
+        ReplicaViewChange viewChange = new DefaultReplicaViewChange(1, 10,
+                Collections.singletonList(new DefaultReplicaCheckpoint(10, DIGEST, 3)), preparedProofs, 3);
+
+        ReplicaViewChange decoded = this.codec.decodeViewChange(this.codec.encodeViewChange(viewChange));
+        assertEquals(1, decoded.newViewNumber());
+        assertEquals(10, decoded.lastSeqNumber());
+        assertEquals(3, decoded.replicaId());
+        assertEquals(1, decoded.checkpointProofs().size());
+        assertEquals(10, decoded.checkpointProofs().iterator().next().lastSeqNumber());
+        assertEquals(Collections.singleton(11L), decoded.preparedProofs().keySet());
+
+        Iterator<ReplicaPhaseMessage> proofs = decoded.preparedProofs().get(11L).iterator();
+        assertPrePrepare(prePrepare(0, 11, 1), (ReplicaPrePrepare<?>) proofs.next());
+        assertEquals(2, ((ReplicaPrepare) proofs.next()).replicaId());
+
+        ReplicaNewView newView = new DefaultReplicaNewView(1,
+                Arrays.asList(viewChange, decoded),
+                Arrays.asList(prePrepare(1, 11, 1), prePrepare(1, 12, null)));
+        ReplicaNewView decodedNewView = this.codec.decodeNewView(this.codec.encodeNewView(newView));
+        assertEquals(1, decodedNewView.newViewNumber());
+        assertEquals(2, decodedNewView.viewChangeProofs().size());
+        for (ReplicaViewChange proof : decodedNewView.viewChangeProofs()) {
+            assertEquals(3, proof.replicaId());
+            assertEquals(Collections.singleton(11L), proof.preparedProofs().keySet());
+        }
+
+        Iterator<ReplicaPrePrepare<?>> prePrepares = decodedNewView.preparedProofs().iterator();
+        assertPrePrepare(prePrepare(1, 11, 1), prePrepares.next());
+        assertPrePrepare(prePrepare(1, 12, null), prePrepares.next());
+    }
+
+    @Test
+    void roundTripsFetchAndCommitProof() {
+        ReplicaFetch fetch = this.codec.decodeFetch(
+                this.codec.encodeFetch(new DefaultReplicaFetch(Arrays.asList(5L, 6L, 3L), 2)));
+        assertEquals(Arrays.asList(5L, 6L, 3L), new ArrayList<>(fetch.seqNumbers()));
+        assertEquals(2, fetch.replicaId());
+
+        ReplicaCommit received = this.codec.decodeCommit(
+                this.codec.encodeCommit(new DefaultReplicaCommit(0, 5, DIGEST, 1)));
+        ReplicaCommitProof<Integer> proof = new DefaultReplicaCommitProof<>(prePrepare(0, 5, 9),
+                Arrays.asList(received, new DefaultReplicaCommit(0, 5, DIGEST, 2)), 3);
+        ReplicaCommitProof<Integer> decoded = this.codec.decodeCommitProof(this.codec.encodeCommitProof(proof));
+
+        assertPrePrepare(proof.prePrepare(), decoded.prePrepare());
+        assertEquals(3, decoded.replicaId());
+
+        List<ReplicaCommit> commits = new ArrayList<>(decoded.commits());
+        assertEquals(2, commits.size());
+        assertEquals(1, commits.get(0).replicaId());
+        assertEquals(2, commits.get(1).replicaId());
+        assertEquals(5, commits.get(1).seqNumber());
+    }
+
+    @Test
+    void roundTripsRetransmitAndHeartbeat() {
+        ReplicaRetransmit retransmit = this.codec.decodeRetransmit(
+                this.codec.encodeRetransmit(new DefaultReplicaRetransmit(4, 8, ReplicaMessageType.COMMIT, 2)));
+        assertEquals(4, retransmit.viewNumber());
+        assertEquals(8, retransmit.seqNumber());
+        assertEquals(ReplicaMessageType.COMMIT, retransmit.messageType());
+        assertEquals(2, retransmit.replicaId());
+
+        ReplicaHeartbeat heartbeat = this.codec.decodeHeartbeat(
+                this.codec.encodeHeartbeat(new DefaultReplicaHeartbeat(4, 0)));
+        assertEquals(4, heartbeat.viewNumber());
+        assertEquals(0, heartbeat.replicaId());
+    }
+
+    @Test
+    void reusesReceivedWireForm() {
+        ByteBuffer encoded = this.codec.encodePrepare(new DefaultReplicaPrepare(1, 2, DIGEST, 3));
+        ReplicaPrepare decoded = this.codec.decodePrepare(encoded.duplicate());
+
+        assertEquals(encoded, this.codec.encodePrepare(decoded));
+    }
+
+    @Test
+    void roundTripsCompressedMessages() {
+        BinaryReplicaCodec<Integer, Integer> compressing =
+                new BinaryReplicaCodec<>(INT_SERIALIZER, INT_SERIALIZER, null, 0);
+
+        List<Long> seqNumbers = new ArrayList<>();
+        for (long i = 0; i < 1000; i++) {
+            seqNumbers.add(i * 2);
+        }
+
+        ByteBuffer encoded = compressing.encodeFetch(new DefaultReplicaFetch(seqNumbers, 1));
+        assertNotEquals(0, BinaryHeader.flags(encoded) & BinaryHeader.FLAG_COMPRESSED);
+        assertEquals(seqNumbers, new ArrayList<>(this.codec.decodeFetch(encoded).seqNumbers()));
+    }
+
+    @Test
+    void rejectsMalformedCompressedBodies() {
+        byte[] body = new byte[1000];
+        assertTrue(this.codec.decodeFetch(compressed(body.length, body, 0)).seqNumbers().isEmpty());
+
+        // Claims more than the body inflates to
+        assertThrows(IllegalArgumentException.class,
+                () -> this.codec.decodeFetch(compressed(body.length + 1, body, 0)));
+        // Claims less than the body inflates to
+        assertThrows(IllegalArgumentException.class,
+                () -> this.codec.decodeFetch(compressed(body.length - 1, body, 0)));
+        // Trailing bytes after the end of the deflate stream
+        assertThrows(IllegalArgumentException.class,
+                () -> this.codec.decodeFetch(compressed(body.length, body, 1)));
+        // Claims far more than the compressed body could hold
+        assertThrows(IllegalArgumentException.class,
+                () -> this.codec.decodeFetch(compressed(32 * 1024 * 1024, body, 0)));
+    }
+
+    @Test
+    void rejectsOversizedCount() {
+        // A count of 0x7FFFFFFF must not be used to size the list
+        ByteBuffer fetch = withBody(ReplicaMessageType.FETCH, 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x07);
+        assertThrows(IllegalArgumentException.class, () -> this.codec.decodeFetch(fetch));
+
+        ByteBuffer newView = withBody(ReplicaMessageType.NEW_VIEW, 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x07);
+        assertThrows(IllegalArgumentException.class, () -> this.codec.decodeNewView(newView));
+    }
+
+    @Test
+    void rejectsOversizedLength() {
+        ByteBuffer prepare = withBody(ReplicaMessageType.PREPARE, 0, 0xFF, 0xFF, 0x03, 1, 2);
+        assertThrows(IllegalArgumentException.class, () -> this.codec.decodePrepare(prepare));
+    }
+
+    @Test
+    void rejectsMalformedVarInt() {
+        int[] body = new int[11];
+        Arrays.fill(body, 0xFF);
+        assertThrows(IllegalArgumentException.class,
+                () -> this.codec.decodeFetch(withBody(ReplicaMessageType.FETCH, 0, body)));
+    }
+
+    @Test
+    void rejectsTruncatedMessages() {
+        ByteBuffer encoded = this.codec.encodeCommitProof(new DefaultReplicaCommitProof<>(prePrepare(0, 5, 9),
+                Collections.singletonList(new DefaultReplicaCommit(0, 5, DIGEST, 2)), 3));
+        for (int length = BinaryHeader.BYTES; length < encoded.remaining(); length++) {
+            ByteBuffer truncated = encoded.duplicate();
+            truncated.limit(truncated.position() + length);
+            assertThrows(RuntimeException.class, () -> this.codec.decodeCommitProof(truncated));
+        }
+    }
+
+    @Test
+    void rejectsUnknownTag() {
+        ByteBuffer message = header(ReplicaMessageType.PREPARE, 0);
+        message.put(0, (byte) 127);
+        assertThrows(IllegalArgumentException.class, () -> this.codec.type(message));
+    }
+}
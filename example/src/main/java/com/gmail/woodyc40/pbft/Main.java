@@ -2,37 +2,59 @@ package com.gmail.woodyc40.pbft;
 
 import com.gmail.woodyc40.pbft.client.AdditionClient;
 import com.gmail.woodyc40.pbft.client.AdditionClientEncoder;
-import com.gmail.woodyc40.pbft.client.AdditionClientTransport;
-import com.gmail.woodyc40.pbft.replica.AdditionReplica;
+import com.gmail.woodyc40.pbft.client.PipelinedClientTransport;
+import com.gmail.woodyc40.pbft.redis.PipelinedPublisher;
+import com.gmail.woodyc40.pbft.redis.TraceLog;
 import com.gmail.woodyc40.pbft.replica.AdditionReplicaEncoder;
-import com.gmail.woodyc40.pbft.replica.AdditionReplicaTransport;
 import com.gmail.woodyc40.pbft.replica.NoopDigester;
+import com.gmail.woodyc40.pbft.replica.PipelinedReplicaTransport;
+import com.gmail.woodyc40.pbft.state.MappedAdditionReplica;
+import com.gmail.woodyc40.pbft.state.MappedAdditionState;
 import com.gmail.woodyc40.pbft.type.AdditionOperation;
 import com.gmail.woodyc40.pbft.type.AdditionResult;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Protocol;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Main {
     private static final int TOLERANCE = 1;
     private static final long TIMEOUT_MS = 1000;
     private static final int REPLICA_COUNT = 3 * TOLERANCE + 1;
 
+    private static final String REDIS_HOST = Protocol.DEFAULT_HOST;
+    private static final int REDIS_PORT = Protocol.DEFAULT_PORT;
+    private static final long PUBLISH_TICK_MICROS = 100;
+    private static final int TRACE_CAPACITY = 4096;
+    private static final int STATE_RECORDS = 1024;
+
     public static void main(String[] args) throws InterruptedException {
-        try (JedisPool pool = new JedisPool()) {
-            setupReplicas(pool);
+        // Tracing every message is only useful when debugging
+        TraceLog trace = Arrays.asList(args).contains("--trace") ?
+                new TraceLog(System.out, TRACE_CAPACITY) :
+                TraceLog.disabled();
+        try (JedisPool pool = new JedisPool(REDIS_HOST, REDIS_PORT);
+             PipelinedPublisher publisher = new PipelinedPublisher(REDIS_HOST, REDIS_PORT, PUBLISH_TICK_MICROS)) {
+            setupReplicas(pool, publisher, trace);
 
             // Wait for PubSub listeners to setup
             Thread.sleep(1000);
 
             Set<ClientTicket<AdditionOperation, AdditionResult>> tickets = new HashSet<>();
 
-            Client<AdditionOperation, AdditionResult, String> client = setupClient(pool);
+            Client<AdditionOperation, AdditionResult, String> client = setupClient(pool, publisher, trace);
             for (int i = 1; i <= 3; i++) {
                 AdditionOperation operation = new AdditionOperation(i, i);
                 ClientTicket<AdditionOperation, AdditionResult> ticket = client.sendRequest(operation);
@@ -94,7 +116,8 @@ public class Main {
 
     private static <O, R, T> void waitTimeouts(Replica<O, R, T> replica) {
         while (true) {
-            long minTime = TIMEOUT_MS;
+            long minTime = Math.min(replica.checkCatchUp(), replica.checkRetransmit());
+            minTime = Math.min(minTime, replica.checkHeartbeat());
             for (ReplicaRequestKey key : replica.activeTimers()) {
                 long waitTime = replica.checkTimeout(key);
                 if (waitTime > 0 && waitTime < minTime) {
@@ -110,16 +133,42 @@ public class Main {
         }
     }
 
-    private static void setupReplicas(JedisPool pool) {
+    private static ExecutorService newDaemonExecutor(String name) {
+        return Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static MappedAdditionState newState(int replicaId) {
+        try {
+            Path file = Files.createTempFile("replica-" + replicaId + "-", ".state");
+            file.toFile().deleteOnExit();
+            return new MappedAdditionState(file, STATE_RECORDS);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void setupReplicas(JedisPool pool, PipelinedPublisher publisher, TraceLog trace) {
         CountDownLatch readyLatch = new CountDownLatch(REPLICA_COUNT - 1);
 
         AdditionReplicaEncoder replicaEncoder = new AdditionReplicaEncoder();
         NoopDigester digester = new NoopDigester();
-        AdditionReplicaTransport replicaTransport = new AdditionReplicaTransport(pool, REPLICA_COUNT);
+        PipelinedReplicaTransport replicaTransport = new PipelinedReplicaTransport(publisher, trace, REPLICA_COUNT);
+
+        // Checkpoint digests are computed from the state snapshots off the
+        // threads handling the messages
+        ExecutorService checkpointExecutor = newDaemonExecutor("pbft-checkpoint");
 
         for (int i = 1; i < REPLICA_COUNT; i++) {
+            // Every message is handled on a single thread per replica, which
+            // is also handed the finished checkpoint digests
+            ExecutorService protocolExecutor = newDaemonExecutor("pbft-replica-" + i);
+
             DefaultReplicaMessageLog log = new DefaultReplicaMessageLog(100, 100, 200);
-            AdditionReplica replica = new AdditionReplica(
+            MappedAdditionReplica replica = new MappedAdditionReplica(
                     i,
                     TOLERANCE,
                     TIMEOUT_MS,
@@ -127,14 +176,16 @@ public class Main {
                     replicaEncoder,
                     digester,
                     replicaTransport,
-                    i == 0);
+                    checkpointExecutor,
+                    protocolExecutor,
+                    newState(i));
             Thread listenerThread = new Thread(() -> {
                 try (Jedis jedis = pool.getResource()) {
                     String channel = "replica-" + replica.replicaId();
                     JedisPubSub listener = new JedisPubSub() {
                         @Override
                         public void onMessage(String channel, String message) {
-                            replica.handleIncomingMessage(message);
+                            protocolExecutor.execute(() -> replica.handleIncomingMessage(message));
                         }
                     };
 
@@ -156,9 +207,9 @@ public class Main {
         }
     }
 
-    private static Client<AdditionOperation, AdditionResult, String> setupClient(JedisPool pool) {
+    private static Client<AdditionOperation, AdditionResult, String> setupClient(JedisPool pool, PipelinedPublisher publisher, TraceLog trace) {
         AdditionClientEncoder clientEncoder = new AdditionClientEncoder();
-        AdditionClientTransport clientTransport = new AdditionClientTransport(pool, REPLICA_COUNT);
+        PipelinedClientTransport clientTransport = new PipelinedClientTransport(publisher, trace, REPLICA_COUNT);
 
         AdditionClient client = new AdditionClient(
                 "client-0",
@@ -0,0 +1,37 @@
+package com.gmail.woodyc40.pbft.client;
+
+import com.gmail.woodyc40.pbft.Client;
+import com.gmail.woodyc40.pbft.ClientDecoder;
+import com.gmail.woodyc40.pbft.message.ClientReply;
+import com.gmail.woodyc40.pbft.message.DefaultClientReply;
+import com.gmail.woodyc40.pbft.type.AdditionOperation;
+import com.gmail.woodyc40.pbft.type.AdditionResult;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+public class AdditionClientDecoder implements ClientDecoder<AdditionOperation, AdditionResult, String> {
+    private static final Gson GSON = new Gson();
+
+    @Override
+    public ClientReply<AdditionResult> decodeReply(Client<AdditionOperation, AdditionResult, String> client, String data) {
+        JsonObject root = GSON.fromJson(data, JsonObject.class);
+
+        String type = root.get("type").getAsString();
+        if (!"REPLY".equals(type)) {
+            throw new IllegalArgumentException("Unrecognized type: " + type);
+        }
+
+        int viewNumber = root.get("view-number").getAsInt();
+        long timestamp = root.get("timestamp").getAsLong();
+        int replicaId = root.get("replica-id").getAsInt();
+        int result = root.get("result").getAsInt();
+
+        AdditionResult additionResult = new AdditionResult(result);
+        return new DefaultClientReply<>(
+                viewNumber,
+                timestamp,
+                client,
+                replicaId,
+                additionResult);
+    }
+}
@@ -0,0 +1,46 @@
+package com.gmail.woodyc40.pbft.client;
+
+import com.gmail.woodyc40.pbft.ClientTransport;
+import com.gmail.woodyc40.pbft.redis.PipelinedPublisher;
+import com.gmail.woodyc40.pbft.redis.TraceLog;
+
+import java.util.stream.IntStream;
+
+public class PipelinedClientTransport implements ClientTransport<String> {
+    private final PipelinedPublisher publisher;
+    private final TraceLog trace;
+    private final int replicas;
+
+    public PipelinedClientTransport(PipelinedPublisher publisher, TraceLog trace, int replicas) {
+        this.publisher = publisher;
+        this.trace = trace;
+        this.replicas = replicas;
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return IntStream.range(0, this.replicas);
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.replicas;
+    }
+
+    private static String toChannel(int replicaId) {
+        return "replica-" + replicaId;
+    }
+
+    @Override
+    public void sendRequest(int replicaId, String request) {
+        this.trace.trace("SEND: CLIENT -> %d: %s", replicaId, request);
+        this.publisher.publish(toChannel(replicaId), request);
+    }
+
+    @Override
+    public void multicastRequest(String request) {
+        for (int i = 0; i < this.replicas; i++) {
+            this.sendRequest(i, request);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.gmail.woodyc40.pbft.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes messages to Redis channels in batches.
+ *
+ * <p>Messages are queued by the caller and a single flush
+ * thread, which owns a dedicated connection, sends every
+ * message queued since the last flush in one pipeline. The
+ * flush thread sleeps for one tick when there is nothing to
+ * send, so messages published in quick succession are
+ * batched together.</p>
+ *
+ * <p>The queue is bounded so that a slow or unreachable
+ * Redis server cannot exhaust the heap. Messages published
+ * while it is full are dropped, as are messages in a batch
+ * that fails; the protocol retransmits as it would for any
+ * other lost message. The connection is re-established
+ * with an exponential backoff while Redis is unreachable,
+ * and on the next tick after any other failure.</p>
+ */
+public class PipelinedPublisher implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(PipelinedPublisher.class.getName());
+    private static final int MAX_BATCH = 4096;
+    private static final long MIN_RECONNECT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MAX_RECONNECT_NANOS = TimeUnit.MILLISECONDS.toNanos(5000);
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final String host;
+    private final int port;
+    private final long tickNanos;
+    private final BlockingQueue<String[]> queue;
+    private final Thread flusher;
+
+    private volatile boolean running = true;
+
+    public PipelinedPublisher(String host, int port, long tickMicros) {
+        this(host, port, tickMicros, DEFAULT_CAPACITY);
+    }
+
+    public PipelinedPublisher(String host, int port, long tickMicros, int capacity) {
+        this.host = host;
+        this.port = port;
+        this.tickNanos = TimeUnit.MICROSECONDS.toNanos(tickMicros);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        this.flusher = new Thread(this::run, "redis-publisher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues a message to be published.
+     *
+     * @param channel the channel to publish to
+     * @param message the message
+     * @return {@code false} if the queue is full and the
+     * message was dropped
+     */
+    public boolean publish(String channel, String message) {
+        return this.queue.offer(new String[] { channel, message });
+    }
+
+    private void run() {
+        Jedis jedis = null;
+        long reconnectDelay = MIN_RECONNECT_NANOS;
+        while (this.running || !this.queue.isEmpty()) {
+            if (this.queue.isEmpty()) {
+                LockSupport.parkNanos(this.tickNanos);
+                continue;
+            }
+
+            try {
+                if (jedis == null) {
+                    jedis = new Jedis(this.host, this.port);
+                }
+
+                Pipeline pipeline = jedis.pipelined();
+                String[] entry;
+                int batch = 0;
+                while (batch < MAX_BATCH && (entry = this.queue.poll()) != null) {
+                    pipeline.publish(entry[0], entry[1]);
+                    batch++;
+                }
+                pipeline.sync();
+                reconnectDelay = MIN_RECONNECT_NANOS;
+            } catch (JedisConnectionException e) {
+                // Avoid reconnecting on every tick while Redis is down
+                jedis = this.reset(jedis, reconnectDelay);
+                reconnectDelay = Math.min(MAX_RECONNECT_NANOS, reconnectDelay * 2);
+            } catch (RuntimeException e) {
+                // Keep publishing the messages queued after the failed batch
+                LOGGER.log(Level.WARNING, "Failed to publish batch", e);
+                jedis = this.reset(jedis, this.tickNanos);
+            }
+        }
+
+        if (jedis != null) {
+            jedis.close();
+        }
+    }
+
+    private Jedis reset(Jedis jedis, long delayNanos) {
+        if (jedis != null) {
+            try {
+                jedis.close();
+            } catch (RuntimeException ignored) {
+            }
+        }
+
+        // Do not keep retrying the remaining messages once closed
+        if (!this.running) {
+            this.queue.clear();
+        } else {
+            LockSupport.parkNanos(delayNanos);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+
+        // Wake the flush thread if it is waiting to reconnect
+        LockSupport.unpark(this.flusher);
+        try {
+            this.flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
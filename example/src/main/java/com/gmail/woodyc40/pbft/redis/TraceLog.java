@@ -0,0 +1,56 @@
+package com.gmail.woodyc40.pbft.redis;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A message trace which never blocks the thread that
+ * records an entry.
+ *
+ * <p>Entries are queued and printed by a background thread.
+ * If the queue is full, the entry is discarded rather than
+ * slowing down the transport.</p>
+ */
+public class TraceLog {
+    private static final TraceLog DISABLED = new TraceLog();
+
+    private final boolean enabled;
+    private final BlockingQueue<String> entries;
+
+    private TraceLog() {
+        this.enabled = false;
+        this.entries = new ArrayBlockingQueue<>(1);
+    }
+
+    public TraceLog(PrintStream out, int capacity) {
+        this.enabled = true;
+        this.entries = new ArrayBlockingQueue<>(capacity);
+
+        Thread printer = new Thread(() -> {
+            while (true) {
+                try {
+                    out.println(this.entries.take());
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }, "trace-log");
+        printer.setDaemon(true);
+        printer.start();
+    }
+
+    public static TraceLog disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public void trace(String format, Object... args) {
+        if (this.enabled) {
+            this.entries.offer(String.format(format, args));
+        }
+    }
+}
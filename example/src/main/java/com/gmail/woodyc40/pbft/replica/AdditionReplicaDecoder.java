@@ -0,0 +1,305 @@
+package com.gmail.woodyc40.pbft.replica;
+
+import com.gmail.woodyc40.pbft.ReplicaDecoder;
+import com.gmail.woodyc40.pbft.ReplicaHeaderDecoder;
+import com.gmail.woodyc40.pbft.ReplicaMessageType;
+import com.gmail.woodyc40.pbft.message.*;
+import com.gmail.woodyc40.pbft.type.AdditionOperation;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+public class AdditionReplicaDecoder implements ReplicaDecoder<AdditionOperation, String>, ReplicaHeaderDecoder<String> {
+    private static final Gson GSON = new Gson();
+    private static final Map<String, ReplicaMessageType> TYPES = new HashMap<>();
+
+    static {
+        TYPES.put("REQUEST", ReplicaMessageType.REQUEST);
+        TYPES.put("PRE-PREPARE", ReplicaMessageType.PRE_PREPARE);
+        TYPES.put("PREPARE", ReplicaMessageType.PREPARE);
+        TYPES.put("COMMIT", ReplicaMessageType.COMMIT);
+        TYPES.put("REPLY", ReplicaMessageType.REPLY);
+        TYPES.put("CHECKPOINT", ReplicaMessageType.CHECKPOINT);
+        TYPES.put("VIEW-CHANGE", ReplicaMessageType.VIEW_CHANGE);
+        TYPES.put("NEW-VIEW", ReplicaMessageType.NEW_VIEW);
+        TYPES.put("FETCH", ReplicaMessageType.FETCH);
+        TYPES.put("COMMIT-PROOF", ReplicaMessageType.COMMIT_PROOF);
+        TYPES.put("RETRANSMIT", ReplicaMessageType.RETRANSMIT);
+        TYPES.put("HEARTBEAT", ReplicaMessageType.HEARTBEAT);
+    }
+
+    // The type is read before the message is decoded, so keep
+    // the last message parsed by each thread to avoid parsing
+    // it twice
+    private final ThreadLocal<ParsedMessage> lastParsed = ThreadLocal.withInitial(ParsedMessage::new);
+
+    private JsonObject parse(String data) {
+        ParsedMessage parsed = this.lastParsed.get();
+        if (!data.equals(parsed.data)) {
+            parsed.data = data;
+            parsed.root = GSON.fromJson(data, JsonObject.class);
+        }
+
+        return parsed.root;
+    }
+
+    private static ReplicaRequest<AdditionOperation> readRequest(JsonObject root) {
+        JsonElement operation = root.get("operation");
+        AdditionOperation additionOperation = null;
+        if (!operation.isJsonNull()) {
+            JsonObject operationObject = operation.getAsJsonObject();
+            int first = operationObject.get("first").getAsInt();
+            int second = operationObject.get("second").getAsInt();
+            additionOperation = new AdditionOperation(first, second);
+        }
+        long timestamp = root.get("timestamp").getAsLong();
+        String clientId = root.get("client").getAsString();
+
+        return new DefaultReplicaRequest<>(additionOperation, timestamp, clientId);
+    }
+
+    private static ReplicaPrePrepare<AdditionOperation> readPrePrepare(JsonObject root) {
+        int viewNumber = root.get("view-number").getAsInt();
+        long seqNumber = root.get("seq-number").getAsLong();
+        byte[] digest = root.get("digest").getAsString().getBytes(StandardCharsets.UTF_8);
+        ReplicaRequest<AdditionOperation> request = readRequest(root);
+
+        return new DefaultReplicaPrePrepare<>(
+                viewNumber,
+                seqNumber,
+                digest,
+                request);
+    }
+
+    private static ReplicaPrepare readPrepare(JsonObject root) {
+        int viewNumber = root.get("view-number").getAsInt();
+        long seqNumber = root.get("seq-number").getAsLong();
+        byte[] digest = root.get("digest").getAsString().getBytes(StandardCharsets.UTF_8);
+        int replicaId = root.get("replica-id").getAsInt();
+
+        return new DefaultReplicaPrepare(
+                viewNumber,
+                seqNumber,
+                digest,
+                replicaId);
+    }
+
+    private static ReplicaCommit readCommit(JsonObject root) {
+        int viewNumber = root.get("view-number").getAsInt();
+        long seqNumber = root.get("seq-number").getAsLong();
+        byte[] digest = root.get("digest").getAsString().getBytes(StandardCharsets.UTF_8);
+        int replicaId = root.get("replica-id").getAsInt();
+
+        return new DefaultReplicaCommit(
+                viewNumber,
+                seqNumber,
+                digest,
+                replicaId);
+    }
+
+    private static ReplicaCheckpoint readCheckpoint(JsonObject root) {
+        long lastSeqNumber = root.get("last-seq-number").getAsLong();
+        byte[] digest = root.get("digest").getAsString().getBytes(StandardCharsets.UTF_8);
+        int replicaId = root.get("replica-id").getAsInt();
+
+        return new DefaultReplicaCheckpoint(
+                lastSeqNumber,
+                digest,
+                replicaId);
+    }
+
+    private static ReplicaViewChange readViewChange(JsonObject root) {
+        int newViewNumber = root.get("new-view-number").getAsInt();
+        long lastSeqNumber = root.get("last-seq-number").getAsLong();
+
+        Collection<ReplicaCheckpoint> checkpointProofs = new ArrayList<>();
+        JsonArray checkpointProofsArray = root.get("checkpoint-proofs").getAsJsonArray();
+        for (JsonElement checkpoint : checkpointProofsArray) {
+            checkpointProofs.add(readCheckpoint(checkpoint.getAsJsonObject()));
+        }
+
+        Map<Long, Collection<ReplicaPhaseMessage>> preparedProofs = new HashMap<>();
+        JsonArray preparedProofsArray = root.get("prepared-proofs").getAsJsonArray();
+        for (JsonElement element : preparedProofsArray) {
+            JsonObject proof = element.getAsJsonObject();
+            long seqNumber = proof.get("seq-number").getAsLong();
+
+            Collection<ReplicaPhaseMessage> messages = new ArrayList<>();
+            JsonArray messagesArray = proof.get("messages").getAsJsonArray();
+            for (JsonElement message : messagesArray) {
+                String type = message.getAsJsonObject().get("type").getAsString();
+                if ("PRE-PREPARE".equals(type)) {
+                    messages.add(readPrePrepare(message.getAsJsonObject()));
+                } else if ("PREPARE".equals(type)) {
+                    messages.add(readPrepare(message.getAsJsonObject()));
+                }
+            }
+
+            preparedProofs.put(seqNumber, messages);
+        }
+        int replicaId = root.get("replica-id").getAsInt();
+
+        return new DefaultReplicaViewChange(
+                newViewNumber,
+                lastSeqNumber,
+                checkpointProofs,
+                preparedProofs,
+                replicaId);
+    }
+
+    private static ReplicaNewView readNewView(JsonObject root) {
+        int newViewNumber = root.get("new-view-number").getAsInt();
+
+        Collection<ReplicaViewChange> viewChangeProofs = new ArrayList<>();
+        JsonArray viewChangesArray = root.get("view-change-proofs").getAsJsonArray();
+        for (JsonElement element : viewChangesArray) {
+            viewChangeProofs.add(readViewChange(element.getAsJsonObject()));
+        }
+
+        Collection<ReplicaPrePrepare<?>> preparedProofs = new ArrayList<>();
+        JsonArray preparedArray = root.get("prepared-proofs").getAsJsonArray();
+        for (JsonElement element : preparedArray) {
+            preparedProofs.add(readPrePrepare(element.getAsJsonObject()));
+        }
+
+        return new DefaultReplicaNewView(
+                newViewNumber,
+                viewChangeProofs,
+                preparedProofs);
+    }
+
+    private static ReplicaFetch readFetch(JsonObject root) {
+        Collection<Long> seqNumbers = new ArrayList<>();
+        JsonArray seqNumbersArray = root.get("seq-numbers").getAsJsonArray();
+        for (JsonElement element : seqNumbersArray) {
+            seqNumbers.add(element.getAsLong());
+        }
+        int replicaId = root.get("replica-id").getAsInt();
+
+        return new DefaultReplicaFetch(seqNumbers, replicaId);
+    }
+
+    private static ReplicaCommitProof<AdditionOperation> readCommitProof(JsonObject root) {
+        ReplicaPrePrepare<AdditionOperation> prePrepare = readPrePrepare(root.get("pre-prepare").getAsJsonObject());
+
+        Collection<ReplicaCommit> commits = new ArrayList<>();
+        JsonArray commitsArray = root.get("commits").getAsJsonArray();
+        for (JsonElement element : commitsArray) {
+            commits.add(readCommit(element.getAsJsonObject()));
+        }
+        int replicaId = root.get("replica-id").getAsInt();
+
+        return new DefaultReplicaCommitProof<>(
+                prePrepare,
+                commits,
+                replicaId);
+    }
+
+    private static ReplicaRetransmit readRetransmit(JsonObject root) {
+        int viewNumber = root.get("view-number").getAsInt();
+        long seqNumber = root.get("seq-number").getAsLong();
+        ReplicaMessageType messageType = ReplicaMessageType.valueOf(root.get("message-type").getAsString());
+        int replicaId = root.get("replica-id").getAsInt();
+
+        return new DefaultReplicaRetransmit(
+                viewNumber,
+                seqNumber,
+                messageType,
+                replicaId);
+    }
+
+    private static ReplicaHeartbeat readHeartbeat(JsonObject root) {
+        int viewNumber = root.get("view-number").getAsInt();
+        int replicaId = root.get("replica-id").getAsInt();
+
+        return new DefaultReplicaHeartbeat(viewNumber, replicaId);
+    }
+
+    @Override
+    public ReplicaMessageType type(String data) {
+        String type = this.parse(data).get("type").getAsString();
+        ReplicaMessageType messageType = TYPES.get(type);
+        if (messageType == null) {
+            throw new IllegalArgumentException("Unrecognized type: " + type);
+        }
+
+        return messageType;
+    }
+
+    @Override
+    public int viewNumber(String data) {
+        return this.parse(data).get("view-number").getAsInt();
+    }
+
+    @Override
+    public long seqNumber(String data) {
+        return this.parse(data).get("seq-number").getAsLong();
+    }
+
+    @Override
+    public ReplicaRequest<AdditionOperation> decodeRequest(String data) {
+        return readRequest(this.parse(data));
+    }
+
+    @Override
+    public ReplicaPrePrepare<AdditionOperation> decodePrePrepare(String data) {
+        return readPrePrepare(this.parse(data));
+    }
+
+    @Override
+    public ReplicaPrepare decodePrepare(String data) {
+        return readPrepare(this.parse(data));
+    }
+
+    @Override
+    public ReplicaCommit decodeCommit(String data) {
+        return readCommit(this.parse(data));
+    }
+
+    @Override
+    public ReplicaCheckpoint decodeCheckpoint(String data) {
+        return readCheckpoint(this.parse(data));
+    }
+
+    @Override
+    public ReplicaViewChange decodeViewChange(String data) {
+        return readViewChange(this.parse(data));
+    }
+
+    @Override
+    public ReplicaNewView decodeNewView(String data) {
+        return readNewView(this.parse(data));
+    }
+
+    @Override
+    public ReplicaFetch decodeFetch(String data) {
+        return readFetch(this.parse(data));
+    }
+
+    @Override
+    public ReplicaCommitProof<AdditionOperation> decodeCommitProof(String data) {
+        return readCommitProof(this.parse(data));
+    }
+
+    @Override
+    public ReplicaRetransmit decodeRetransmit(String data) {
+        return readRetransmit(this.parse(data));
+    }
+
+    @Override
+    public ReplicaHeartbeat decodeHeartbeat(String data) {
+        return readHeartbeat(this.parse(data));
+    }
+
+    private static class ParsedMessage {
+        private String data;
+        private JsonObject root;
+    }
+}
@@ -75,14 +75,18 @@ public class AdditionReplicaEncoder implements ReplicaEncoder<AdditionOperation,
         return writePrepare(prepare).toString();
     }
 
-    @Override
-    public String encodeCommit(ReplicaCommit commit) {
+    private static JsonObject writeCommit(ReplicaCommit commit) {
         JsonObject root = new JsonObject();
         root.addProperty("type", "COMMIT");
         writePhaseMessage(root, commit);
         root.addProperty("replica-id", commit.replicaId());
 
-        return root.toString();
+        return root;
+    }
+
+    @Override
+    public String encodeCommit(ReplicaCommit commit) {
+        return writeCommit(commit).toString();
     }
 
     @Override
@@ -166,4 +170,55 @@ public class AdditionReplicaEncoder implements ReplicaEncoder<AdditionOperation,
 
         return root.toString();
     }
+
+    @Override
+    public String encodeFetch(ReplicaFetch fetch) {
+        JsonObject root = new JsonObject();
+        root.addProperty("type", "FETCH");
+        JsonArray seqNumbers = new JsonArray();
+        for (long seqNumber : fetch.seqNumbers()) {
+            seqNumbers.add(seqNumber);
+        }
+        root.add("seq-numbers", seqNumbers);
+        root.addProperty("replica-id", fetch.replicaId());
+
+        return root.toString();
+    }
+
+    @Override
+    public String encodeCommitProof(ReplicaCommitProof<AdditionOperation> proof) {
+        JsonObject root = new JsonObject();
+        root.addProperty("type", "COMMIT-PROOF");
+        root.add("pre-prepare", writePrePrepare(proof.prePrepare()));
+        JsonArray commits = new JsonArray();
+        for (ReplicaCommit commit : proof.commits()) {
+            commits.add(writeCommit(commit));
+        }
+        root.add("commits", commits);
+        root.addProperty("replica-id", proof.replicaId());
+
+        return root.toString();
+    }
+
+    @Override
+    public String encodeRetransmit(ReplicaRetransmit retransmit) {
+        JsonObject root = new JsonObject();
+        root.addProperty("type", "RETRANSMIT");
+        root.addProperty("view-number", retransmit.viewNumber());
+        root.addProperty("seq-number", retransmit.seqNumber());
+        root.addProperty("message-type", retransmit.messageType().name());
+        root.addProperty("replica-id", retransmit.replicaId());
+
+        return root.toString();
+    }
+
+    @Override
+    public String encodeHeartbeat(ReplicaHeartbeat heartbeat) {
+        JsonObject root = new JsonObject();
+        root.addProperty("type", "HEARTBEAT");
+        root.addProperty("view-number", heartbeat.viewNumber());
+        root.addProperty("replica-id", heartbeat.replicaId());
+
+        return root.toString();
+    }
 }
@@ -0,0 +1,111 @@
+package com.gmail.woodyc40.pbft.replica;
+
+import com.gmail.woodyc40.pbft.codec.BinaryReplicaCodec;
+import com.gmail.woodyc40.pbft.message.*;
+import com.gmail.woodyc40.pbft.type.AdditionOperation;
+import com.gmail.woodyc40.pbft.type.AdditionOperationSerializer;
+import com.gmail.woodyc40.pbft.type.AdditionResult;
+import com.gmail.woodyc40.pbft.type.AdditionResultSerializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compares the cost and size of the JSON messages used by
+ * the example against the binary codec.
+ *
+ * <p>Each case encodes and then decodes the same message,
+ * reporting the average time of the round trip and the
+ * encoded size.</p>
+ */
+public class CodecBenchmark {
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+
+    private static final AdditionReplicaEncoder JSON = new AdditionReplicaEncoder();
+    private static final AdditionReplicaDecoder JSON_DECODER = new AdditionReplicaDecoder();
+    private static final BinaryReplicaCodec<AdditionOperation, AdditionResult> BINARY =
+            new BinaryReplicaCodec<>(new AdditionOperationSerializer(), new AdditionResultSerializer());
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        byte[] digest = new byte[32];
+        for (int i = 0; i < digest.length; i++) {
+            digest[i] = (byte) i;
+        }
+
+        ReplicaRequest<AdditionOperation> request = new DefaultReplicaRequest<>(
+                new AdditionOperation(1, 2), System.currentTimeMillis(), "client-0");
+        ReplicaPrePrepare<AdditionOperation> prePrepare = new DefaultReplicaPrePrepare<>(0, 1000, digest, request);
+        ReplicaCommit commit = new DefaultReplicaCommit(0, 1000, digest, 2);
+
+        Map<Long, Collection<ReplicaPhaseMessage>> preparedProofs = new HashMap<>();
+        for (long seq = 1001; seq <= 1010; seq++) {
+            Collection<ReplicaPhaseMessage> proof = new ArrayList<>();
+            proof.add(new DefaultReplicaPrePrepare<>(0, seq, digest, request));
+            for (int replica = 1; replica <= 2; replica++) {
+                proof.add(new DefaultReplicaPrepare(0, seq, digest, replica));
+            }
+            preparedProofs.put(seq, proof);
+        }
+        Collection<ReplicaCheckpoint> checkpoints = new ArrayList<>();
+        for (int replica = 0; replica < 3; replica++) {
+            checkpoints.add(new DefaultReplicaCheckpoint(1000, digest, replica));
+        }
+        ReplicaViewChange viewChange = new DefaultReplicaViewChange(1, 1000, checkpoints, preparedProofs, 3);
+
+        run("COMMIT", () -> {
+            String data = JSON.encodeCommit(commit);
+            return JSON_DECODER.decodeCommit(data);
+        }, () -> JSON.encodeCommit(commit).getBytes(StandardCharsets.UTF_8).length, () -> {
+            ByteBuffer data = BINARY.encodeCommit(commit);
+            return BINARY.decodeCommit(data);
+        }, () -> BINARY.encodeCommit(commit).remaining());
+
+        run("PRE-PREPARE", () -> {
+            String data = JSON.encodePrePrepare(prePrepare);
+            return JSON_DECODER.decodePrePrepare(data);
+        }, () -> JSON.encodePrePrepare(prePrepare).getBytes(StandardCharsets.UTF_8).length, () -> {
+            ByteBuffer data = BINARY.encodePrePrepare(prePrepare);
+            return BINARY.decodePrePrepare(data);
+        }, () -> BINARY.encodePrePrepare(prePrepare).remaining());
+
+        run("VIEW-CHANGE", () -> {
+            String data = JSON.encodeViewChange(viewChange);
+            return JSON_DECODER.decodeViewChange(data);
+        }, () -> JSON.encodeViewChange(viewChange).getBytes(StandardCharsets.UTF_8).length, () -> {
+            ByteBuffer data = BINARY.encodeViewChange(viewChange);
+            return BINARY.decodeViewChange(data);
+        }, () -> BINARY.encodeViewChange(viewChange).remaining());
+    }
+
+    private static double measure(Supplier<Object> roundTrip, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = roundTrip.get();
+        }
+
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    private static void run(String name,
+                            Supplier<Object> json,
+                            Supplier<Integer> jsonSize,
+                            Supplier<Object> binary,
+                            Supplier<Integer> binarySize) {
+        measure(json, WARMUP_ITERATIONS);
+        measure(binary, WARMUP_ITERATIONS);
+
+        double jsonNanos = measure(json, ITERATIONS);
+        double binaryNanos = measure(binary, ITERATIONS);
+
+        System.out.println(String.format("%-12s JSON: %8.1f ns/op %5d bytes | BINARY: %8.1f ns/op %5d bytes",
+                name, jsonNanos, jsonSize.get(), binaryNanos, binarySize.get()));
+    }
+}
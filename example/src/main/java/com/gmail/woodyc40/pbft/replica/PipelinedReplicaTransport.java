@@ -0,0 +1,59 @@
+package com.gmail.woodyc40.pbft.replica;
+
+import com.gmail.woodyc40.pbft.ReplicaTransport;
+import com.gmail.woodyc40.pbft.redis.PipelinedPublisher;
+import com.gmail.woodyc40.pbft.redis.TraceLog;
+
+import java.util.stream.IntStream;
+
+public class PipelinedReplicaTransport implements ReplicaTransport<String> {
+    private final PipelinedPublisher publisher;
+    private final TraceLog trace;
+    private final int replicas;
+
+    public PipelinedReplicaTransport(PipelinedPublisher publisher, TraceLog trace, int replicas) {
+        this.publisher = publisher;
+        this.trace = trace;
+        this.replicas = replicas;
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.replicas;
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return IntStream.range(0, this.replicas);
+    }
+
+    private static String toChannel(int replicaId) {
+        return "replica-" + replicaId;
+    }
+
+    @Override
+    public void sendMessage(int replicaId, String data) {
+        this.trace.trace("SEND: REPLICA -> %d: %s", replicaId, data);
+        this.publisher.publish(toChannel(replicaId), data);
+    }
+
+    @Override
+    public void multicast(String data, int... ignoredReplicas) {
+        outer:
+        for (int i = 0; i < this.replicas; i++) {
+            for (int ignored : ignoredReplicas) {
+                if (i == ignored) {
+                    continue outer;
+                }
+            }
+
+            this.sendMessage(i, data);
+        }
+    }
+
+    @Override
+    public void sendReply(String clientId, String reply) {
+        this.trace.trace("SEND: REPLY -> %s: %s", clientId, reply);
+        this.publisher.publish(clientId, reply);
+    }
+}
@@ -0,0 +1,49 @@
+package com.gmail.woodyc40.pbft.state;
+
+import com.gmail.woodyc40.pbft.*;
+import com.gmail.woodyc40.pbft.replica.AdditionReplica;
+import com.gmail.woodyc40.pbft.type.AdditionOperation;
+import com.gmail.woodyc40.pbft.type.AdditionResult;
+
+import java.util.concurrent.Executor;
+
+public class MappedAdditionReplica extends AdditionReplica {
+    private final MappedAdditionState state;
+
+    public MappedAdditionReplica(int replicaId,
+                                 int tolerance,
+                                 long timeout,
+                                 ReplicaMessageLog log,
+                                 ReplicaEncoder<AdditionOperation, AdditionResult, String> encoder,
+                                 ReplicaDigester<AdditionOperation> digester,
+                                 ReplicaTransport<String> transport,
+                                 Executor checkpointExecutor,
+                                 Executor protocolExecutor,
+                                 MappedAdditionState state) {
+        super(replicaId, tolerance, timeout, log, encoder, digester, transport,
+                checkpointExecutor, protocolExecutor, false);
+        this.state = state;
+    }
+
+    public MappedAdditionState state() {
+        return this.state;
+    }
+
+    @Override
+    public AdditionResult compute(AdditionOperation operation) {
+        AdditionResult result = super.compute(operation);
+        this.state.record(operation.first(), result.result());
+
+        return result;
+    }
+
+    @Override
+    public byte[] digestState() {
+        return this.state.digest();
+    }
+
+    @Override
+    public ReplicaStateSnapshot snapshotState() {
+        return this.state.snapshot();
+    }
+}
@@ -0,0 +1,166 @@
+package com.gmail.woodyc40.pbft.state;
+
+import com.gmail.woodyc40.pbft.DefaultReplicaStateTree;
+import com.gmail.woodyc40.pbft.ReplicaStateSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replicated state for the addition example which lives in
+ * a memory-mapped file.
+ *
+ * <p>The file is an array of fixed-size records, each of
+ * which holds the number of additions and the running sum
+ * of the results for the operations that hash to it:</p>
+ *
+ * <pre>
+ * | count (8 bytes) | sum (8 bytes) |
+ * </pre>
+ *
+ * <p>Pages modified since the last checkpoint are marked
+ * dirty in a {@link DefaultReplicaStateTree} built over
+ * the mapped region, so that snapshots only copy the dirty
+ * pages and the checkpoint digest only rehashes those
+ * pages.</p>
+ */
+public class MappedAdditionState implements AutoCloseable {
+    public static final int RECORD_BYTES = 16;
+    public static final int PAGE_BYTES = 4096;
+
+    private static final int COUNT_OFFSET = 0;
+    private static final int SUM_OFFSET = 8;
+
+    private final int records;
+    private final int pages;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final DefaultReplicaStateTree tree;
+
+    public MappedAdditionState(Path file, int records) {
+        this.records = records;
+        this.pages = (records * RECORD_BYTES + PAGE_BYTES - 1) / PAGE_BYTES;
+
+        try {
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) this.pages * PAGE_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.tree = new DefaultReplicaStateTree(this.pages, this::copyPage);
+
+        // Build the tree over the existing contents of the file before any
+        // requests are executed
+        this.tree.root();
+    }
+
+    private static ByteBuffer page(ByteBuffer source, int page) {
+        ByteBuffer slice = source.duplicate();
+        slice.position(page * PAGE_BYTES);
+        slice.limit((page + 1) * PAGE_BYTES);
+        return slice.slice();
+    }
+
+    private synchronized byte[] copyPage(int page) {
+        byte[] copy = new byte[PAGE_BYTES];
+        page(this.buffer, page).get(copy);
+        return copy;
+    }
+
+    private int recordOffset(int record) {
+        return record * RECORD_BYTES;
+    }
+
+    /**
+     * Records the result of an addition into the record
+     * that the operation hashes to.
+     *
+     * @param key    the key used to select the record
+     * @param result the result of the addition
+     */
+    public synchronized void record(int key, int result) {
+        int record = Math.floorMod(key, this.records);
+        int offset = this.recordOffset(record);
+
+        this.buffer.putLong(offset + COUNT_OFFSET, this.buffer.getLong(offset + COUNT_OFFSET) + 1);
+        this.buffer.putLong(offset + SUM_OFFSET, this.buffer.getLong(offset + SUM_OFFSET) + result);
+
+        this.tree.markDirty(offset / PAGE_BYTES);
+    }
+
+    /**
+     * Obtains the number of additions recorded to the
+     * record with the given key.
+     *
+     * @param key the key used to select the record
+     * @return the number of additions
+     */
+    public synchronized long count(int key) {
+        return this.buffer.getLong(this.recordOffset(Math.floorMod(key, this.records)) + COUNT_OFFSET);
+    }
+
+    /**
+     * Obtains the running sum of the results recorded to
+     * the record with the given key.
+     *
+     * @param key the key used to select the record
+     * @return the sum of the results
+     */
+    public synchronized long sum(int key) {
+        return this.buffer.getLong(this.recordOffset(Math.floorMod(key, this.records)) + SUM_OFFSET);
+    }
+
+    /**
+     * Captures a copy-on-write snapshot of the state by
+     * copying only the pages that were modified since the
+     * previous snapshot.
+     *
+     * @return the snapshot
+     */
+    public ReplicaStateSnapshot snapshot() {
+        ReplicaStateSnapshot snapshot;
+        // Pages are copied while holding the lock on this state, so take it
+        // before the tree locks its dirty pages to keep the same lock order
+        // as #record(int, int)
+        synchronized (this) {
+            snapshot = this.tree.snapshot();
+        }
+
+        return () -> {
+            byte[] digest = snapshot.digest();
+
+            // Persist the mapped region alongside the checkpoint
+            this.buffer.force();
+            return digest;
+        };
+    }
+
+    /**
+     * Synchronously computes the digest of the current
+     * state.
+     *
+     * @return the state digest
+     */
+    public byte[] digest() {
+        return this.snapshot().digest();
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.buffer.force();
+            this.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.gmail.woodyc40.pbft.type;
 
+import com.gmail.woodyc40.pbft.codec.BinarySerializable;
+
+@BinarySerializable
 public class AdditionOperation {
     private final int first;
     private final int second;
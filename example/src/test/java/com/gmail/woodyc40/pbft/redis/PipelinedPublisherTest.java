@@ -0,0 +1,108 @@
+package com.gmail.woodyc40.pbft.redis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelinedPublisherTest {
+    private static final long TICK_MICROS = 100;
+
+    private static void awaitMessages(RespServer server, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (server.messages().size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void publishesInOrder() throws Exception {
+        try (RespServer server = new RespServer(Integer.MAX_VALUE);
+             PipelinedPublisher publisher = new PipelinedPublisher("127.0.0.1", server.port(), TICK_MICROS)) {
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 10000; i++) {
+                assertTrue(publisher.publish("replica-" + i % 4, "message-" + i));
+                expected.add("replica-" + i % 4 + ":message-" + i);
+            }
+
+            awaitMessages(server, expected.size());
+            assertEquals(expected, server.messages());
+        }
+    }
+
+    @Test
+    void reconnectsAfterConnectionFailure() throws Exception {
+        try (RespServer server = new RespServer(10);
+             PipelinedPublisher publisher = new PipelinedPublisher("127.0.0.1", server.port(), TICK_MICROS)) {
+            for (int i = 0; i < 100; i++) {
+                publisher.publish("replica-0", "before-" + i);
+            }
+            awaitMessages(server, 10);
+            Thread.sleep(50);
+
+            // The rest of the failed batch is dropped, but messages
+            // published afterwards are sent on a new connection
+            publisher.publish("replica-0", "after");
+            awaitMessages(server, 11);
+            assertEquals("replica-0:after", server.messages().get(server.messages().size() - 1));
+        }
+    }
+
+    @Test
+    void backsOffWhileUnreachable() throws Exception {
+        // Every connection is closed as soon as it is accepted
+        AtomicInteger connections = new AtomicInteger();
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try (Socket ignored = server.accept()) {
+                        connections.incrementAndGet();
+                    } catch (IOException e) {
+                        // Closed by the test
+                    }
+                }
+            }, "resp-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            try (PipelinedPublisher publisher = new PipelinedPublisher("127.0.0.1", server.getLocalPort(), TICK_MICROS)) {
+                // Reconnecting on every tick would take thousands of
+                // attempts, backing off from 50ms takes about 4
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(400);
+                while (System.nanoTime() < deadline) {
+                    publisher.publish("replica-0", "message");
+                    Thread.sleep(1);
+                }
+            }
+        }
+
+        assertTrue(connections.get() >= 2, "Connections: " + connections.get());
+        assertTrue(connections.get() <= 8, "Connections: " + connections.get());
+    }
+
+    @Test
+    void dropsMessagesWhenFull() throws Exception {
+        // Nothing is listening on the port so the queue fills up
+        RespServer server = new RespServer(0);
+        int port = server.port();
+        server.close();
+
+        try (PipelinedPublisher publisher = new PipelinedPublisher("127.0.0.1", port, TICK_MICROS, 16)) {
+            int published = 0;
+            for (int i = 0; i < 1000; i++) {
+                if (publisher.publish("replica-0", "message-" + i)) {
+                    published++;
+                }
+            }
+
+            assertTrue(published < 1000);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.gmail.woodyc40.pbft.redis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-process stand-in for a Redis server which records
+ * every PUBLISH command it receives, so that the publisher
+ * can be tested without a running Redis server.
+ *
+ * <p>The connection is closed after the given number of
+ * commands in order to simulate a connection failure.</p>
+ */
+class RespServer implements AutoCloseable {
+    private final ServerSocket server;
+    private final int dropAfter;
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private final Thread acceptor;
+
+    RespServer(int dropAfter) {
+        try {
+            this.server = new ServerSocket(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.dropAfter = dropAfter;
+        this.acceptor = new Thread(this::run, "resp-server");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    int port() {
+        return this.server.getLocalPort();
+    }
+
+    List<String> messages() {
+        return this.messages;
+    }
+
+    private void run() {
+        boolean dropped = false;
+        while (!this.server.isClosed()) {
+            try (Socket socket = this.server.accept()) {
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream out = socket.getOutputStream();
+
+                int commands = 0;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!line.startsWith("*")) {
+                        continue;
+                    }
+
+                    // PUBLISH <channel> <message> as bulk strings
+                    int count = Integer.parseInt(line.substring(1));
+                    String[] args = new String[count];
+                    for (int i = 0; i < count; i++) {
+                        in.readLine();
+                        args[i] = in.readLine();
+                    }
+
+                    if (!dropped && ++commands > this.dropAfter) {
+                        dropped = true;
+                        break;
+                    }
+
+                    this.messages.add(args[1] + ":" + args[2]);
+                    out.write(":0\r\n".getBytes(StandardCharsets.UTF_8));
+                    if (!in.ready()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.server.close();
+    }
+}
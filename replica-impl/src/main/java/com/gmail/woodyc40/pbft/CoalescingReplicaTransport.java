@@ -0,0 +1,324 @@
+package com.gmail.woodyc40.pbft;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link ReplicaTransport} decorator which coalesces the
+ * messages sent to the same replica into a single frame.
+ *
+ * <p>A replica with many sequence numbers in flight sends a
+ * {@code PREPARE}, {@code COMMIT} and possibly a {@code
+ * CHECKPOINT} to every other replica for each of them.
+ * Rather than writing each of these individually, messages
+ * are queued per destination and packed into one frame
+ * once the queued bytes reach the size threshold or the
+ * oldest queued message reaches the deadline, whichever
+ * comes first.</p>
+ *
+ * <p>Every message sent to a replica is packed, even when
+ * it is flushed on its own, so receivers must always unpack
+ * the frames they receive before passing each message to
+ * {@link ReplicaDispatcher#dispatch(Object)}. Replies to
+ * clients are not coalesced.</p>
+ *
+ * <p>Every send takes ownership of one reference to the
+ * message, as is the case for pooled buffers. Given the
+ * functions which retain and release a reference, a
+ * multicast retains one reference for each destination
+ * queue and each queued message is released once it has
+ * been packed, since the packer copies it into the
+ * frame.</p>
+ *
+ * @param <T> the encoded message type
+ */
+public class CoalescingReplicaTransport<T> implements ReplicaTransport<T>, AutoCloseable {
+    private final ReplicaTransport<T> delegate;
+    private final Function<List<T>, T> packer;
+    private final ToIntFunction<T> sizer;
+    private final int maxFrameBytes;
+    private final long maxDelayNanos;
+    private final Consumer<T> retainer;
+    private final Consumer<T> releaser;
+
+    private final int[] replicaIds;
+    private final Map<Integer, PeerQueue> queues = new HashMap<>();
+    private final Thread flusher;
+    private final AtomicBoolean sleeping = new AtomicBoolean();
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new coalescing transport.
+     *
+     * @param delegate the transport used to send frames
+     * @param packer packs the queued messages into a frame
+     * @param sizer determines the size of a message in bytes
+     * @param maxFrameBytes the number of queued bytes which
+     *                      causes a frame to be sent
+     *                      immediately
+     * @param maxDelayMicros the maximum time a message is
+     *                       queued before being sent
+     */
+    public CoalescingReplicaTransport(ReplicaTransport<T> delegate,
+                                      Function<List<T>, T> packer,
+                                      ToIntFunction<T> sizer,
+                                      int maxFrameBytes,
+                                      long maxDelayMicros) {
+        this(delegate, packer, sizer, maxFrameBytes, maxDelayMicros, data -> {}, data -> {});
+    }
+
+    /**
+     * Creates a new coalescing transport for reference
+     * counted messages.
+     *
+     * @param delegate the transport used to send frames
+     * @param packer packs the queued messages into a frame
+     * @param sizer determines the size of a message in bytes
+     * @param maxFrameBytes the number of queued bytes which
+     *                      causes a frame to be sent
+     *                      immediately
+     * @param maxDelayMicros the maximum time a message is
+     *                       queued before being sent
+     * @param retainer adds a reference to a message
+     * @param releaser removes a reference from a message
+     */
+    public CoalescingReplicaTransport(ReplicaTransport<T> delegate,
+                                      Function<List<T>, T> packer,
+                                      ToIntFunction<T> sizer,
+                                      int maxFrameBytes,
+                                      long maxDelayMicros,
+                                      Consumer<T> retainer,
+                                      Consumer<T> releaser) {
+        this.delegate = delegate;
+        this.packer = packer;
+        this.sizer = sizer;
+        this.maxFrameBytes = maxFrameBytes;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.retainer = retainer;
+        this.releaser = releaser;
+
+        this.replicaIds = delegate.knownReplicaIds().toArray();
+        for (int id : this.replicaIds) {
+            this.queues.put(id, new PeerQueue(id));
+        }
+
+        this.flusher = new Thread(this::runFlusher, "pbft-coalescer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.delegate.countKnownReplicas();
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return IntStream.of(this.replicaIds);
+    }
+
+    @Override
+    public void sendMessage(int replicaId, T data) {
+        PeerQueue queue = this.queues.get(replicaId);
+        if (queue == null) {
+            this.releaser.accept(data);
+            throw new IllegalArgumentException("Unknown replica: " + replicaId);
+        }
+
+        queue.add(data);
+    }
+
+    @Override
+    public void multicast(T data, int... ignoredReplicas) {
+        // Each destination queue owns its own reference, which is
+        // released once the message has been packed
+        try {
+            outer:
+            for (int id : this.replicaIds) {
+                for (int ignored : ignoredReplicas) {
+                    if (id == ignored) {
+                        continue outer;
+                    }
+                }
+
+                this.retainer.accept(data);
+                this.queues.get(id).add(data);
+            }
+        } finally {
+            this.releaser.accept(data);
+        }
+    }
+
+    @Override
+    public void sendReply(String clientId, T reply) {
+        this.delegate.sendReply(clientId, reply);
+    }
+
+    private void runFlusher() {
+        while (this.running) {
+            long now = System.nanoTime();
+            long nextDeadline = Long.MAX_VALUE;
+            for (PeerQueue queue : this.queues.values()) {
+                long deadline = queue.flushIfDue(now);
+                nextDeadline = Math.min(nextDeadline, deadline);
+            }
+
+            if (nextDeadline == Long.MAX_VALUE) {
+                // Nothing queued, sleep until a message is added
+                this.sleeping.set(true);
+                if (this.isEmpty() && this.running) {
+                    LockSupport.park(this);
+                }
+                this.sleeping.set(false);
+            } else {
+                LockSupport.parkNanos(this, nextDeadline - now);
+            }
+        }
+    }
+
+    private boolean isEmpty() {
+        for (PeerQueue queue : this.queues.values()) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Sends all queued messages without waiting for their
+     * deadline.
+     */
+    public void flush() {
+        for (PeerQueue queue : this.queues.values()) {
+            queue.flushNow();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(this.flusher);
+
+        try {
+            this.flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.flush();
+    }
+
+    private class PeerQueue {
+        private final int replicaId;
+
+        private List<T> pending = new ArrayList<>();
+        private int pendingBytes;
+        private long firstQueuedNanos;
+
+        public PeerQueue(int replicaId) {
+            this.replicaId = replicaId;
+        }
+
+        public void add(T message) {
+            List<T> frame = null;
+            boolean wasEmpty;
+            synchronized (this) {
+                wasEmpty = this.pending.isEmpty();
+                if (wasEmpty) {
+                    this.firstQueuedNanos = System.nanoTime();
+                }
+
+                this.pending.add(message);
+                this.pendingBytes += CoalescingReplicaTransport.this.sizer.applyAsInt(message);
+                if (this.pendingBytes >= CoalescingReplicaTransport.this.maxFrameBytes) {
+                    frame = this.drain();
+                }
+            }
+
+            if (frame != null) {
+                this.send(frame);
+            } else if (wasEmpty) {
+                AtomicBoolean sleeping = CoalescingReplicaTransport.this.sleeping;
+                if (sleeping.get() && sleeping.compareAndSet(true, false)) {
+                    LockSupport.unpark(CoalescingReplicaTransport.this.flusher);
+                }
+            }
+        }
+
+        public synchronized boolean isEmpty() {
+            return this.pending.isEmpty();
+        }
+
+        /**
+         * Sends the queued messages if the oldest has reached
+         * its deadline.
+         *
+         * @return the deadline of the queued messages if they
+         * were not sent, or {@link Long#MAX_VALUE} if nothing
+         * is queued
+         */
+        public long flushIfDue(long now) {
+            List<T> frame;
+            synchronized (this) {
+                if (this.pending.isEmpty()) {
+                    return Long.MAX_VALUE;
+                }
+
+                long deadline = this.firstQueuedNanos + CoalescingReplicaTransport.this.maxDelayNanos;
+                if (deadline - now > 0) {
+                    return deadline;
+                }
+
+                frame = this.drain();
+            }
+
+            this.send(frame);
+            return Long.MAX_VALUE;
+        }
+
+        public void flushNow() {
+            List<T> frame;
+            synchronized (this) {
+                if (this.pending.isEmpty()) {
+                    return;
+                }
+
+                frame = this.drain();
+            }
+
+            this.send(frame);
+        }
+
+        private List<T> drain() {
+            List<T> frame = this.pending;
+            this.pending = new ArrayList<>();
+            this.pendingBytes = 0;
+            return frame;
+        }
+
+        private void send(List<T> frame) {
+            T packed;
+            try {
+                packed = CoalescingReplicaTransport.this.packer.apply(frame);
+            } finally {
+                for (T message : frame) {
+                    CoalescingReplicaTransport.this.releaser.accept(message);
+                }
+            }
+
+            CoalescingReplicaTransport.this.delegate.sendMessage(this.replicaId, packed);
+        }
+    }
+}
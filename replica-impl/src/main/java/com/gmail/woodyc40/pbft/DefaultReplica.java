@@ -3,15 +3,25 @@ package com.gmail.woodyc40.pbft;
 import com.gmail.woodyc40.pbft.message.*;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
+    /**
+     * The heartbeat interval which disables heartbeats.
+     */
+    public static final long NO_HEARTBEAT = 0L;
+
     private static final byte[] EMPTY_DIGEST = new byte[0];
+    private static final int CATCH_UP_DIVISOR = 4;
+    private static final int RETRANSMIT_DIVISOR = 8;
+    // Heartbeats that may be missed before the primary is considered failed
+    private static final int HEARTBEAT_MISSES = 3;
 
     private final int replicaId;
     private final int tolerance;
@@ -20,11 +30,28 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
     private final ReplicaEncoder<O, R, T> encoder;
     private final ReplicaDigester<O> digester;
     private final ReplicaTransport<T> transport;
+    private final Executor checkpointExecutor;
+    // Runs the work handed back by the checkpoint executor on the thread
+    // that drives the protocol
+    private final Executor protocolExecutor;
+    private final long heartbeatInterval;
 
     private volatile int viewNumber;
     private volatile boolean disgruntled;
     private final AtomicLong seqCounter = new AtomicLong();
     private final Map<ReplicaRequestKey, LinearBackoff> timeouts = new ConcurrentHashMap<>();
+    private final Map<Long, Long> missingSince = new ConcurrentHashMap<>();
+    // Verified commit certificates waiting for the preceding sequence number
+    // to be completed before they are executed
+    private final NavigableMap<Long, ReplicaTicket<O, R>> certifiedTickets = new ConcurrentSkipListMap<>();
+    // Own checkpoints whose state digest has been computed by the
+    // checkpoint executor, waiting to be sent
+    private final Queue<ReplicaCheckpoint> digestedCheckpoints = new ConcurrentLinkedQueue<>();
+    private final Map<Long, Long> retransmitTimes = new ConcurrentHashMap<>();
+    private final AtomicInteger fetchCounter = new AtomicInteger();
+    private volatile long lastPrimaryContact = System.currentTimeMillis();
+    private volatile long lastPrimarySend;
+    private volatile int heartbeatVotes;
 
     public DefaultReplica(int replicaId,
                           int tolerance,
@@ -33,6 +60,32 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
                           ReplicaEncoder<O, R, T> encoder,
                           ReplicaDigester<O> digester,
                           ReplicaTransport<T> transport) {
+        this(replicaId, tolerance, timeout, log, encoder, digester, transport, Runnable::run, Runnable::run);
+    }
+
+    public DefaultReplica(int replicaId,
+                          int tolerance,
+                          long timeout,
+                          ReplicaMessageLog log,
+                          ReplicaEncoder<O, R, T> encoder,
+                          ReplicaDigester<O> digester,
+                          ReplicaTransport<T> transport,
+                          Executor checkpointExecutor,
+                          Executor protocolExecutor) {
+        this(replicaId, tolerance, timeout, log, encoder, digester, transport,
+                checkpointExecutor, protocolExecutor, NO_HEARTBEAT);
+    }
+
+    public DefaultReplica(int replicaId,
+                          int tolerance,
+                          long timeout,
+                          ReplicaMessageLog log,
+                          ReplicaEncoder<O, R, T> encoder,
+                          ReplicaDigester<O> digester,
+                          ReplicaTransport<T> transport,
+                          Executor checkpointExecutor,
+                          Executor protocolExecutor,
+                          long heartbeatInterval) {
         this.replicaId = replicaId;
         this.tolerance = tolerance;
         this.timeout = timeout;
@@ -40,6 +93,9 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
         this.encoder = encoder;
         this.digester = digester;
         this.transport = transport;
+        this.checkpointExecutor = checkpointExecutor;
+        this.protocolExecutor = protocolExecutor;
+        this.heartbeatInterval = heartbeatInterval;
     }
 
     @Override
@@ -57,6 +113,11 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
         return this.timeout;
     }
 
+    @Override
+    public long heartbeatIntervalMs() {
+        return this.heartbeatInterval;
+    }
+
     @Override
     public ReplicaMessageLog log() {
         return this.log;
@@ -89,6 +150,19 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
 
     @Override
     public long checkTimeout(ReplicaRequestKey key) {
+        /*
+         * Buffered requests are normally dispatched as replies are sent, but
+         * if every request was buffered while the memory budget was exceeded
+         * then there are no replies left to do so once the log has made room,
+         * so the primary dispatches them here before its own timers expire.
+         */
+        if (this.replicaId == this.getPrimaryId() && !this.disgruntled) {
+            ReplicaRequest<O> bufferedRequest;
+            while (!this.log.shouldBuffer() && (bufferedRequest = this.log.popBuffer()) != null) {
+                this.recvRequest(bufferedRequest, true);
+            }
+        }
+
         LinearBackoff backoff = this.timeouts.get(key);
         if (backoff == null) {
             return 0L;
@@ -136,17 +210,225 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
         }
     }
 
+    @Override
+    public long checkCatchUp() {
+        /*
+         * Non-standard behavior - PBFT relies on the view change protocol to
+         * recover from lost messages. Instead, a replica that has committed
+         * later sequence numbers but is missing earlier ones asks a peer for
+         * their commit certificates so that transient packet loss does not
+         * stall the replica until its request timers expire.
+         *
+         * Since sequence numbers may be committed out-of-order, a sequence
+         * number is only fetched once it has been missing for a fraction of
+         * the timeout, which is short enough for the catch-up to complete
+         * before a view change would be voted for.
+         *
+         * This only detects the gaps and sends the FETCH, the certificates
+         * themselves are executed by the threads receiving the messages so
+         * that the timer never computes a request concurrently with them.
+         */
+        long delay = Math.max(1L, this.timeout / CATCH_UP_DIVISOR);
+        long now = System.currentTimeMillis();
+
+        Collection<Long> missing = new ArrayList<>(this.log.missingSeqNumbers());
+        missing.removeAll(this.certifiedTickets.keySet());
+        this.missingSince.keySet().retainAll(missing);
+
+        long waitTime = delay;
+        List<Long> due = new ArrayList<>();
+        for (long seqNumber : missing) {
+            long since = this.missingSince.computeIfAbsent(seqNumber, k -> now);
+            long elapsed = now - since;
+            if (elapsed >= delay) {
+                due.add(seqNumber);
+
+                // Wait for the same delay again before asking another peer
+                this.missingSince.put(seqNumber, now);
+            } else {
+                waitTime = Math.min(waitTime, delay - elapsed);
+            }
+        }
+
+        // A lone replica has nobody to fetch the missing requests from
+        int replicas = this.transport.countKnownReplicas();
+        if (!due.isEmpty() && replicas > 1) {
+            // Rotate through the other replicas on each attempt in case the
+            // previously selected peer is faulty or also lagging
+            int peerId = (this.replicaId + 1 + Math.floorMod(this.fetchCounter.getAndIncrement(), replicas - 1)) % replicas;
+
+            ReplicaFetch fetch = new DefaultReplicaFetch(due, this.replicaId);
+            this.sendFetch(peerId, fetch);
+        }
+
+        return waitTime;
+    }
+
+    @Override
+    public long checkRetransmit() {
+        /*
+         * Non-standard behavior - PBFT relies on the view change protocol to
+         * recover from lost messages. Instead, a ticket that has been stuck
+         * in the same phase for a fraction of the timeout asks the replicas
+         * whose PRE-PREPARE, PREPARE or COMMIT it is missing to send it
+         * again. The delay is shorter than the catch-up delay so that a lost
+         * message is repaired by a single retransmission before falling back
+         * to fetching the commit certificate or to a view change.
+         */
+        long delay = Math.max(1L, this.timeout / RETRANSMIT_DIVISOR);
+        if (this.disgruntled) {
+            return delay;
+        }
+
+        long now = System.currentTimeMillis();
+        int currentViewNumber = this.viewNumber;
+
+        long waitTime = delay;
+        Set<Long> pending = new HashSet<>();
+        for (ReplicaTicket<?, ?> ticket : this.log.pendingTickets()) {
+            /*
+             * Skip no-op requests used to fill the NEW-VIEW, which are never
+             * prepared, and tickets created by phase messages arriving after
+             * the sequence number has already been completed.
+             */
+            ReplicaRequest<?> request = ticket.request();
+            ReplicaTicketPhase phase = ticket.phase();
+            long seqNumber = ticket.seqNumber();
+            if (ticket.viewNumber() != currentViewNumber ||
+                    phase == ReplicaTicketPhase.COMMIT ||
+                    request != null && request.operation() == null ||
+                    this.log.isCompleted(seqNumber)) {
+                continue;
+            }
+
+            pending.add(seqNumber);
+
+            // Wait for the same delay again after each request in case the
+            // retransmitted messages are lost as well
+            long since = Math.max(ticket.phaseTime(), this.retransmitTimes.getOrDefault(seqNumber, 0L));
+            long elapsed = now - since;
+            if (elapsed >= delay) {
+                this.retransmitTimes.put(seqNumber, now);
+                this.requestMissing(ticket, phase);
+            } else {
+                waitTime = Math.min(waitTime, delay - elapsed);
+            }
+        }
+
+        this.retransmitTimes.keySet().retainAll(pending);
+        return waitTime;
+    }
+
+    @Override
+    public long checkHeartbeat() {
+        if (this.heartbeatInterval <= NO_HEARTBEAT) {
+            return this.timeout;
+        }
+
+        long now = System.currentTimeMillis();
+        int currentViewNumber = this.viewNumber;
+        if (this.replicaId == this.getPrimaryId()) {
+            if (this.disgruntled) {
+                return this.heartbeatInterval;
+            }
+
+            // PRE-PREPARE messages already show that the primary is alive, so
+            // only send a heartbeat after being idle for an interval
+            long elapsed = now - this.lastPrimarySend;
+            if (elapsed < this.heartbeatInterval) {
+                return this.heartbeatInterval - elapsed;
+            }
+
+            this.lastPrimarySend = now;
+            this.sendHeartbeat(new DefaultReplicaHeartbeat(currentViewNumber, this.replicaId));
+            return this.heartbeatInterval;
+        }
+
+        /*
+         * Non-standard behavior - PBFT 4.4 only detects a faulty primary
+         * through the timers of pending requests, so a primary that fails
+         * while the system is idle is only replaced once clients time out.
+         * Instead, a backup votes for a view change once the primary has
+         * been silent for several heartbeat intervals.
+         *
+         * As with the request timers in PBFT 4.5.2, each subsequent vote for
+         * the next view waits one more period than the previous one in case
+         * the next primary is faulty as well.
+         */
+        int votes = this.heartbeatVotes;
+        long limit = this.heartbeatInterval * HEARTBEAT_MISSES * (votes + 1) * (votes + 2) / 2;
+        long silence = now - this.lastPrimaryContact;
+        if (silence < limit) {
+            return Math.min(this.heartbeatInterval, limit - silence);
+        }
+
+        this.heartbeatVotes = votes + 1;
+        this.disgruntled = true;
+
+        ReplicaViewChange viewChange = this.log.produceViewChange(
+                currentViewNumber + votes + 1,
+                this.replicaId,
+                this.tolerance);
+        this.sendViewChange(viewChange);
+
+        return this.heartbeatInterval;
+    }
+
+    private void requestMissing(ReplicaTicket<?, ?> ticket, ReplicaTicketPhase phase) {
+        int viewNumber = ticket.viewNumber();
+        long seqNumber = ticket.seqNumber();
+        int primaryId = getPrimaryId(viewNumber, this.transport.countKnownReplicas());
+
+        boolean hasPrePrepare = false;
+        Set<Integer> received = new HashSet<>();
+        for (Object message : ticket.messages()) {
+            if (message instanceof ReplicaPrePrepare) {
+                hasPrePrepare = true;
+            } else if (phase == ReplicaTicketPhase.PRE_PREPARE && message instanceof ReplicaPrepare) {
+                received.add(((ReplicaPrepare) message).replicaId());
+            } else if (phase == ReplicaTicketPhase.PREPARE && message instanceof ReplicaCommit) {
+                received.add(((ReplicaCommit) message).replicaId());
+            }
+        }
+
+        // PREPARE and COMMIT messages cannot be accepted without the
+        // PRE-PREPARE, so only ask the primary for it first
+        if (!hasPrePrepare) {
+            this.sendRetransmit(primaryId, new DefaultReplicaRetransmit(
+                    viewNumber, seqNumber, ReplicaMessageType.PRE_PREPARE, this.replicaId));
+            return;
+        }
+
+        // PBFT 4.2 - The primary does not send a PREPARE
+        ReplicaMessageType missingType = phase == ReplicaTicketPhase.PRE_PREPARE ?
+                ReplicaMessageType.PREPARE : ReplicaMessageType.COMMIT;
+        this.transport.knownReplicaIds().forEach(peerId -> {
+            if (peerId == this.replicaId || received.contains(peerId) ||
+                    missingType == ReplicaMessageType.PREPARE && peerId == primaryId) {
+                return;
+            }
+
+            this.sendRetransmit(peerId, new DefaultReplicaRetransmit(
+                    viewNumber, seqNumber, missingType, this.replicaId));
+        });
+    }
+
     private void resendReply(String clientId, ReplicaTicket<O, R> ticket) {
         ticket.result().thenAccept(result -> {
-            int viewNumber = ticket.viewNumber();
-            ReplicaRequest<O> request = ticket.request();
-            long timestamp = request.timestamp();
-            ReplicaReply<R> reply = new DefaultReplicaReply<>(
-                    viewNumber,
-                    timestamp,
-                    clientId,
-                    this.replicaId,
-                    result);
+            // Resend the original reply if possible so that the encoder is
+            // able to reuse its encoded form
+            ReplicaReply<R> reply = ticket.reply();
+            if (reply == null) {
+                int viewNumber = ticket.viewNumber();
+                ReplicaRequest<O> request = ticket.request();
+                long timestamp = request.timestamp();
+                reply = new DefaultReplicaReply<>(
+                        viewNumber,
+                        timestamp,
+                        clientId,
+                        this.replicaId,
+                        result);
+            }
             this.sendReply(clientId, reply);
         }).exceptionally(t -> {
             throw new RuntimeException(t);
@@ -182,7 +464,23 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
         // PBFT 4.1 - If the request is received by a non-primary replica
         // send the request to the actual primary
         if (this.replicaId != primaryId) {
-            this.sendRequest(primaryId, request);
+            // The primary has already pre-prepared this request, so a client
+            // retransmission does not need to be forwarded again
+            if (!this.log.isInFlight(key)) {
+                this.sendRequest(primaryId, request);
+            }
+            return;
+        }
+
+        /*
+         * Non-standard behavior - a client that times out multicasts its
+         * request to every replica, each of which forwards it to the primary.
+         * The primary marks each request that it accepts as in flight so that
+         * these copies are dropped without being digested or assigned another
+         * sequence number. Buffered requests have already been marked, but
+         * are marked again in case a view change has since cleared them.
+         */
+        if (!this.log.markInFlight(key) && !wasRequestBuffered) {
             return;
         }
 
@@ -194,7 +492,11 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
          */
         if (!wasRequestBuffered) {
             if (this.log.shouldBuffer()) {
-                this.log.buffer(request);
+                // A dropped request is left to the client to retransmit, so
+                // its timer must not make this primary vote against itself
+                if (!this.log.buffer(request)) {
+                    this.timeouts.remove(key);
+                }
                 return;
             }
         }
@@ -260,6 +562,9 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
         // See #recvRequest(ReplicaRequest, boolean)
         T encodedPrePrepare = this.encoder.encodePrePrepare(prePrepare);
         this.transport.multicast(encodedPrePrepare, this.replicaId);
+
+        // Doubles as a heartbeat, see #checkHeartbeat()
+        this.lastPrimarySend = System.currentTimeMillis();
     }
 
     private boolean verifyPhaseMessage(ReplicaPhaseMessage message) {
@@ -270,20 +575,58 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
          * has been sent by a faulty replica.
          */
 
+        int currentViewNumber = this.viewNumber;
+        int viewNumber = message.viewNumber();
+        long seqNumber = message.seqNumber();
+
         // PBFT 4.4 - Phase messages are not accepted when the replica is
-        // disgruntled
-        if (this.disgruntled) {
+        // disgruntled, or if they are not in the current view or between the
+        // water marks
+        if (this.disgruntled ||
+                currentViewNumber != viewNumber ||
+                !this.log.isBetweenWaterMarks(seqNumber)) {
+            /*
+             * Non-standard behavior - messages from the near future are
+             * deferred instead of being dropped so that a replica which is
+             * slightly behind the others does not have to wait for them to be
+             * resent or for a view change once it catches up.
+             *
+             * The view or the water marks may have changed while the message
+             * was being deferred, in which case it is replayed right away.
+             */
+            if (this.log.defer(message, currentViewNumber) &&
+                    !this.disgruntled &&
+                    this.viewNumber == viewNumber &&
+                    this.log.isBetweenWaterMarks(seqNumber)) {
+                this.replayDeferred();
+            }
+
             return false;
         }
 
-        int currentViewNumber = this.viewNumber;
-        int viewNumber = message.viewNumber();
-        if (currentViewNumber != viewNumber) {
-            return false;
+        return true;
+    }
+
+    private void replayDeferred() {
+        /*
+         * Process the deferred messages which are now in the current view and
+         * between the water marks. This is done whenever the replica enters a
+         * new view or the water marks slide forward due to a stable
+         * checkpoint.
+         */
+        if (this.disgruntled) {
+            return;
         }
 
-        long seqNumber = message.seqNumber();
-        return this.log.isBetweenWaterMarks(seqNumber);
+        for (ReplicaPhaseMessage message : this.log.popDeferred(this.viewNumber)) {
+            if (message instanceof ReplicaPrePrepare) {
+                this.recvPrePrepare((ReplicaPrePrepare<O>) message);
+            } else if (message instanceof ReplicaPrepare) {
+                this.recvPrepare((ReplicaPrepare) message);
+            } else if (message instanceof ReplicaCommit) {
+                this.recvCommit((ReplicaCommit) message);
+            }
+        }
     }
 
     @Override
@@ -314,6 +657,7 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
          * multicasts a PREPARE to all other replicas and adding the PREPARE to
          * its log.
          */
+        boolean firstPrePrepare = true;
         ReplicaTicket<O, R> ticket = this.log.getTicket(currentViewNumber, seqNumber);
         if (ticket != null) {
             // PRE-PREPARE has previously been inserted into the log for this
@@ -328,6 +672,7 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
                 if (!Arrays.equals(prevDigest, digest)) {
                     return;
                 }
+                firstPrePrepare = false;
             }
         } else {
             // PRE-PREPARE is the first - create a new ticket for it in this
@@ -339,6 +684,17 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
         // PBFT 4.2 - Add PRE-PREPARE along with its REQUEST to the log
         ticket.append(prePrepare);
 
+        /*
+         * A newly accepted PRE-PREPARE in the current view shows that the
+         * primary is alive. PRE-PREPARE messages carry no sender, since only
+         * the primary may send them, so rejected and replayed messages are
+         * not counted in case they were sent by another replica.
+         */
+        if (firstPrePrepare) {
+            this.lastPrimaryContact = System.currentTimeMillis();
+        }
+        this.log.markInFlight(new DefaultReplicaRequestKey(request.clientId(), request.timestamp()));
+
         // PBFT 4.2 - Multicast PREPARE to other replicas
         ReplicaPrepare prepare = new DefaultReplicaPrepare(
                 currentViewNumber,
@@ -390,6 +746,13 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
 
         ReplicaTicket<O, R> ticket = this.log.getTicket(currentViewNumber, seqNumber);
         if (ticket == null) {
+            // Messages arriving after the ticket has been completed are no
+            // longer needed, creating a ticket for them would leave it
+            // pending until the next stable checkpoint
+            if (this.log.isCompleted(seqNumber)) {
+                return null;
+            }
+
             ticket = this.log.newTicket(currentViewNumber, seqNumber);
         }
 
@@ -474,50 +837,91 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
              * callback of some sort.
              */
             if (ticket.isCommittedLocal(this.tolerance) && ticket.casPhase(phase, ReplicaTicketPhase.COMMIT)) {
-                ReplicaRequest<O> request = ticket.request();
-                if (request != null) {
-                    O operation = request.operation();
-                    R result = this.compute(operation);
-
-                    String clientId = request.clientId();
-                    long timestamp = request.timestamp();
-                    ReplicaReply<R> reply = new DefaultReplicaReply<>(
-                            currentViewNumber,
-                            timestamp,
-                            clientId,
-                            this.replicaId,
-                            result);
-
-                    ReplicaRequestKey key = new DefaultReplicaRequestKey(clientId, timestamp);
-                    this.log.completeTicket(key, currentViewNumber, seqNumber);
-                    this.sendReply(clientId, reply);
+                this.executeTicket(ticket, currentViewNumber, seqNumber);
+                this.executeCertifiedTickets();
+            }
+        }
+    }
 
-                    this.timeouts.remove(key);
-                }
+    private void executeTicket(ReplicaTicket<O, R> ticket, int currentViewNumber, long seqNumber) {
+        ReplicaRequest<O> request = ticket.request();
+        if (request != null) {
+            O operation = request.operation();
+            R result = this.compute(operation);
 
-                /*
-                 * Checkpointing is specified by PBFT 4.3. A checkpoint is
-                 * reached every time the sequence number mod the interval
-                 * reaches 0, in which case a CHECKPOINT message is sent
-                 * containing the current sequence number, the digest of the
-                 * current state and this replica's ID.
-                 *
-                 * This replica implementation is stateless with respect to the
-                 * requests made by the client (i.e. clients do not change the
-                 * state of the replica, only the state of the protocol), and so
-                 * the digest method simply returns an empty array.
-                 */
-                if (seqNumber % this.log.checkpointInterval() == 0) {
-                    ReplicaCheckpoint checkpoint = new DefaultReplicaCheckpoint(
-                            seqNumber,
-                            this.digestState(),
-                            this.replicaId);
-                    this.sendCheckpoint(checkpoint);
-
-                    // Log own checkpoint in accordance to PBFT 4.3
-                    this.log.appendCheckpoint(checkpoint, this.tolerance);
-                }
-            }
+            String clientId = request.clientId();
+            long timestamp = request.timestamp();
+            ReplicaReply<R> reply = new DefaultReplicaReply<>(
+                    currentViewNumber,
+                    timestamp,
+                    clientId,
+                    this.replicaId,
+                    result);
+
+            // Record the reply before completing the result so that it is
+            // visible to retransmissions waiting on the result
+            ticket.setReply(reply);
+            ticket.result().complete(result);
+
+            ReplicaRequestKey key = new DefaultReplicaRequestKey(clientId, timestamp);
+            this.log.completeTicket(key, currentViewNumber, seqNumber);
+            this.sendReply(clientId, reply);
+
+            this.timeouts.remove(key);
+        }
+
+        /*
+         * Checkpointing is specified by PBFT 4.3. A checkpoint is
+         * reached every time the sequence number mod the interval
+         * reaches 0, in which case a CHECKPOINT message is sent
+         * containing the current sequence number, the digest of the
+         * current state and this replica's ID.
+         *
+         * This replica implementation is stateless with respect to the
+         * requests made by the client (i.e. clients do not change the
+         * state of the replica, only the state of the protocol), and so
+         * the digest method simply returns an empty array. Stateful
+         * implementations override #digestState(), preferably backed
+         * by a ReplicaStateTree so that only the partitions modified
+         * since the last checkpoint are rehashed.
+         *
+         * Only a copy-on-write snapshot of the state is taken here,
+         * the digest itself is computed on the checkpoint executor
+         * and the CHECKPOINT is multicasted once it is done so that
+         * execution of subsequent requests does not stall.
+         */
+        if (seqNumber % this.log.checkpointInterval() == 0) {
+            ReplicaStateSnapshot snapshot = this.snapshotState();
+            this.checkpointExecutor.execute(() -> {
+                this.digestedCheckpoints.add(new DefaultReplicaCheckpoint(
+                        seqNumber,
+                        snapshot.digest(),
+                        this.replicaId));
+                this.protocolExecutor.execute(this::sendDigestedCheckpoints);
+            });
+        }
+    }
+
+    private void sendDigestedCheckpoints() {
+        /*
+         * The checkpoint executor only computes the digest and then hands
+         * the CHECKPOINT back to the protocol executor, which sends and logs
+         * it here so that the message log is only ever modified by the
+         * threads driving the protocol.
+         */
+        ReplicaCheckpoint checkpoint;
+        boolean sent = false;
+        while ((checkpoint = this.digestedCheckpoints.poll()) != null) {
+            this.sendCheckpoint(checkpoint);
+
+            // Log own checkpoint in accordance to PBFT 4.3
+            this.log.appendCheckpoint(checkpoint, this.tolerance);
+            sent = true;
+        }
+
+        if (sent) {
+            this.replayDeferred();
+            this.executeCertifiedTickets();
         }
     }
 
@@ -548,6 +952,12 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
          * stable.
          */
         this.log.appendCheckpoint(checkpoint, this.tolerance);
+
+        // The water marks may have moved to include deferred messages, and a
+        // stable checkpoint may have filled the gap that held certificates
+        // are waiting on
+        this.replayDeferred();
+        this.executeCertifiedTickets();
     }
 
     @Override
@@ -566,6 +976,14 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
         this.disgruntled = false;
         this.viewNumber = newViewNumber;
         this.timeouts.clear();
+
+        // Give the new primary a full period before suspecting it
+        this.heartbeatVotes = 0;
+        this.lastPrimaryContact = System.currentTimeMillis();
+
+        // Process the messages that were sent in the new view before this
+        // replica had entered it
+        this.replayDeferred();
     }
 
     @Override
@@ -684,6 +1102,7 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
             long seqNumber = prePrepare.seqNumber();
             ReplicaTicket<O, R> ticket = this.log.newTicket(newViewNumber, seqNumber);
             ticket.append(prePrepare);
+            this.log.markInFlight(new DefaultReplicaRequestKey(request.clientId(), request.timestamp()));
 
             ReplicaPrepare prepare = new DefaultReplicaPrepare(
                     newViewNumber,
@@ -706,11 +1125,245 @@ public abstract class DefaultReplica<O, R, T> implements Replica<O, R, T> {
         this.transport.multicast(encodedNewView, this.replicaId);
     }
 
+    @Override
+    public void recvFetch(ReplicaFetch fetch) {
+        /*
+         * Respond to a lagging replica with the commit certificate of each
+         * requested sequence number that has been completed by this replica.
+         * Certificates are sent in ascending sequence number order so that the
+         * lagging replica executes them in order.
+         */
+        int requesterId = fetch.replicaId();
+        for (long seqNumber : fetch.seqNumbers()) {
+            ReplicaTicket<O, R> ticket = this.log.getCompletedTicket(seqNumber);
+            if (ticket == null) {
+                continue;
+            }
+
+            ReplicaPrePrepare<O> prePrepare = null;
+            for (Object message : ticket.messages()) {
+                if (message instanceof ReplicaPrePrepare) {
+                    prePrepare = (ReplicaPrePrepare<O>) message;
+                    break;
+                }
+            }
+
+            if (prePrepare == null) {
+                continue;
+            }
+
+            Collection<ReplicaCommit> commits = new ArrayList<>();
+            for (Object message : ticket.messages()) {
+                if (message instanceof ReplicaCommit) {
+                    ReplicaCommit commit = (ReplicaCommit) message;
+                    if (Arrays.equals(prePrepare.digest(), commit.digest())) {
+                        commits.add(commit);
+                    }
+                }
+            }
+
+            ReplicaCommitProof<O> proof = new DefaultReplicaCommitProof<>(
+                    prePrepare,
+                    commits,
+                    this.replicaId);
+            this.sendCommitProof(requesterId, proof);
+        }
+    }
+
+    @Override
+    public void sendFetch(int replicaId, ReplicaFetch fetch) {
+        T encodedFetch = this.encoder.encodeFetch(fetch);
+        this.transport.sendMessage(replicaId, encodedFetch);
+    }
+
+    private boolean verifyCommitProof(ReplicaCommitProof<O> proof) {
+        /*
+         * A commit certificate is valid if the request matches the digest in
+         * the PRE-PREPARE and if 2f + 1 distinct replicas have sent a COMMIT
+         * for the same view, sequence number and digest, which is the same
+         * condition as committed-local in PBFT 4.2.
+         */
+        ReplicaPrePrepare<O> prePrepare = proof.prePrepare();
+        int viewNumber = prePrepare.viewNumber();
+        long seqNumber = prePrepare.seqNumber();
+        byte[] digest = prePrepare.digest();
+
+        if (!Arrays.equals(digest, this.digester.digest(prePrepare.request()))) {
+            return false;
+        }
+
+        final int requiredCommits = 2 * this.tolerance + 1;
+        Set<Integer> committedReplicas = new HashSet<>();
+        for (ReplicaCommit commit : proof.commits()) {
+            if (commit.viewNumber() == viewNumber &&
+                    commit.seqNumber() == seqNumber &&
+                    Arrays.equals(commit.digest(), digest)) {
+                committedReplicas.add(commit.replicaId());
+            }
+        }
+
+        return committedReplicas.size() >= requiredCommits;
+    }
+
+    @Override
+    public void recvCommitProof(ReplicaCommitProof<O> proof) {
+        ReplicaPrePrepare<O> prePrepare = proof.prePrepare();
+        int viewNumber = prePrepare.viewNumber();
+        long seqNumber = prePrepare.seqNumber();
+
+        // Ignore certificates that have been garbage collected by a stable
+        // checkpoint or that have already been completed by this replica
+        if (!this.log.isBetweenWaterMarks(seqNumber) || this.log.getCompletedTicket(seqNumber) != null) {
+            return;
+        }
+
+        if (!this.verifyCommitProof(proof)) {
+            return;
+        }
+
+        ReplicaTicket<O, R> ticket = this.log.newTicket(viewNumber, seqNumber);
+        ticket.append(prePrepare);
+        for (ReplicaCommit commit : proof.commits()) {
+            ticket.append(commit);
+        }
+
+        this.missingSince.remove(seqNumber);
+        this.certifiedTickets.put(seqNumber, ticket);
+        this.executeCertifiedTickets();
+    }
+
+    private void executeCertifiedTickets() {
+        /*
+         * Certificates may arrive in any order, but they are only executed
+         * once every preceding sequence number has been completed so that the
+         * lagging replica applies the requests in the same order as the rest
+         * of the replicas. Certificates that are still waiting on a gap are
+         * held until the gap is filled, either by another certificate or by
+         * the replica completing the ticket through the normal protocol.
+         *
+         * Each certificate is claimed by removing it from the map, so that
+         * only one thread executes it even if several drain the map at once.
+         */
+        Map.Entry<Long, ReplicaTicket<O, R>> entry;
+        while ((entry = this.certifiedTickets.firstEntry()) != null) {
+            long seqNumber = entry.getKey();
+            if (!this.log.isCompleted(seqNumber) && !this.log.isCompleted(seqNumber - 1)) {
+                return;
+            }
+
+            ReplicaTicket<O, R> ticket = entry.getValue();
+            if (!this.certifiedTickets.remove(seqNumber, ticket) || this.log.isCompleted(seqNumber)) {
+                continue;
+            }
+
+            // The certificate proves that the request has been committed, so
+            // skip directly to the committed phase unless the replica has
+            // already managed to execute it by itself in the meantime
+            ReplicaTicketPhase phase = ticket.phase();
+            if (phase != ReplicaTicketPhase.COMMIT && ticket.casPhase(phase, ReplicaTicketPhase.COMMIT)) {
+                this.executeTicket(ticket, ticket.viewNumber(), seqNumber);
+            }
+        }
+    }
+
+    @Override
+    public void sendCommitProof(int replicaId, ReplicaCommitProof<O> proof) {
+        T encodedProof = this.encoder.encodeCommitProof(proof);
+        this.transport.sendMessage(replicaId, encodedProof);
+    }
+
+    @Override
+    public void recvRetransmit(ReplicaRetransmit retransmit) {
+        /*
+         * Answer a replica that is missing a phase message from the log,
+         * including from the completed tickets in case this replica has
+         * already executed the request. Only this replica's own PREPARE or
+         * COMMIT is sent, since those are the messages that the requester
+         * determined to be missing from this replica.
+         *
+         * The completed ticket is checked first because late phase messages
+         * may have created another pending ticket for the same sequence
+         * number after it had been completed.
+         */
+        int viewNumber = retransmit.viewNumber();
+        long seqNumber = retransmit.seqNumber();
+        ReplicaTicket<O, R> ticket = this.log.getCompletedTicket(seqNumber);
+        if (ticket == null || ticket.viewNumber() != viewNumber) {
+            ticket = this.log.getTicket(viewNumber, seqNumber);
+            if (ticket == null) {
+                return;
+            }
+        }
+
+        int requesterId = retransmit.replicaId();
+        ReplicaMessageType messageType = retransmit.messageType();
+        for (Object message : ticket.messages()) {
+            if (messageType == ReplicaMessageType.PRE_PREPARE && message instanceof ReplicaPrePrepare) {
+                T encodedPrePrepare = this.encoder.encodePrePrepare((ReplicaPrePrepare<O>) message);
+                this.transport.sendMessage(requesterId, encodedPrePrepare);
+                return;
+            }
+
+            if (messageType == ReplicaMessageType.PREPARE && message instanceof ReplicaPrepare) {
+                ReplicaPrepare prepare = (ReplicaPrepare) message;
+                if (prepare.replicaId() == this.replicaId) {
+                    T encodedPrepare = this.encoder.encodePrepare(prepare);
+                    this.transport.sendMessage(requesterId, encodedPrepare);
+                    return;
+                }
+            }
+
+            if (messageType == ReplicaMessageType.COMMIT && message instanceof ReplicaCommit) {
+                ReplicaCommit commit = (ReplicaCommit) message;
+                if (commit.replicaId() == this.replicaId) {
+                    T encodedCommit = this.encoder.encodeCommit(commit);
+                    this.transport.sendMessage(requesterId, encodedCommit);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void sendRetransmit(int replicaId, ReplicaRetransmit retransmit) {
+        T encodedRetransmit = this.encoder.encodeRetransmit(retransmit);
+        this.transport.sendMessage(replicaId, encodedRetransmit);
+    }
+
+    @Override
+    public void recvHeartbeat(ReplicaHeartbeat heartbeat) {
+        // Only heartbeats from the primary of the current view count, those
+        // from replicas in other views do not show that the primary is alive
+        int currentViewNumber = this.viewNumber;
+        if (heartbeat.viewNumber() != currentViewNumber || heartbeat.replicaId() != this.getPrimaryId()) {
+            return;
+        }
+
+        this.lastPrimaryContact = System.currentTimeMillis();
+    }
+
+    @Override
+    public void sendHeartbeat(ReplicaHeartbeat heartbeat) {
+        T encodedHeartbeat = this.encoder.encodeHeartbeat(heartbeat);
+        this.transport.multicast(encodedHeartbeat, this.replicaId);
+    }
+
     @Override
     public byte[] digestState() {
         return EMPTY_DIGEST;
     }
 
+    @Override
+    public ReplicaStateSnapshot snapshotState() {
+        // Implementations that do not provide a copy-on-write view fall back
+        // to digesting the state eagerly, which remains correct regardless of
+        // the checkpoint executor being used. State backed by a
+        // DefaultReplicaStateTree can return DefaultReplicaStateTree#snapshot()
+        // instead to digest asynchronously
+        byte[] digest = this.digestState();
+        return () -> digest;
+    }
+
     @Override
     public ReplicaEncoder<O, R, T> encoder() {
         return this.encoder;
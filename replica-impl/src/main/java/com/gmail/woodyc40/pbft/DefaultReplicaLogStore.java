@@ -0,0 +1,86 @@
+package com.gmail.woodyc40.pbft;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+public class DefaultReplicaLogStore implements ReplicaLogStore {
+    private static final String EXTENSION = ".ticket";
+
+    private final Path directory;
+    private final Function<ReplicaTicket<?, ?>, byte[]> serializer;
+    private final Function<byte[], ReplicaTicket<?, ?>> deserializer;
+
+    private final NavigableSet<Long> storedSeqNumbers = new ConcurrentSkipListSet<>();
+
+    public DefaultReplicaLogStore(Path directory,
+                                  Function<ReplicaTicket<?, ?>, byte[]> serializer,
+                                  Function<byte[], ReplicaTicket<?, ?>> deserializer) {
+        this.directory = directory;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path toPath(long seqNumber) {
+        return this.directory.resolve(seqNumber + EXTENSION);
+    }
+
+    @Override
+    public void store(ReplicaTicket<?, ?> ticket) {
+        long seqNumber = ticket.seqNumber();
+        byte[] data = this.serializer.apply(ticket);
+
+        try {
+            Files.write(this.toPath(seqNumber), data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.storedSeqNumbers.add(seqNumber);
+    }
+
+    @Override
+    public @Nullable <O, R> ReplicaTicket<O, R> load(long seqNumber) {
+        if (!this.storedSeqNumbers.contains(seqNumber)) {
+            return null;
+        }
+
+        try {
+            byte[] data = Files.readAllBytes(this.toPath(seqNumber));
+
+            // Only the tickets of the replica that owns the log are stored,
+            // which have the operation and result types that it requests
+            @SuppressWarnings("unchecked")
+            ReplicaTicket<O, R> ticket = (ReplicaTicket<O, R>) this.deserializer.apply(data);
+            return ticket;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void discard(long checkpoint) {
+        NavigableSet<Long> discarded = this.storedSeqNumbers.headSet(checkpoint, true);
+        for (Long seqNumber : discarded) {
+            try {
+                Files.deleteIfExists(this.toPath(seqNumber));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            discarded.remove(seqNumber);
+        }
+    }
+}
@@ -9,35 +9,163 @@ import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 
 public class DefaultReplicaMessageLog implements ReplicaMessageLog {
     private static final byte[] NULL_DIGEST = new byte[0];
     private static final DefaultReplicaRequest<Object> NULL_REQ = new DefaultReplicaRequest<>(null, 0, "");
 
+    // Approximate heap cost of a message object and of a request along with
+    // its operation, used to track the memory budget. Encoded forms kept
+    // alive by the messages are counted separately, see #wireBytes
+    private static final long MESSAGE_BYTES = 64;
+    private static final long REQUEST_BYTES = 256;
+    private static final ToLongFunction<Object> NO_WIRE_BYTES = message -> 0L;
+
+    public static final int DEFAULT_DEFERRED_CAPACITY = 4096;
+    // How many views ahead of the current view messages are deferred for
+    private static final int DEFERRED_VIEWS = 2;
+
     private final int bufferThreshold;
     private final int checkpointInterval;
     private final int watermarkInterval;
+    private final long memoryBudget;
+    private final @Nullable ReplicaLogStore store;
+    private final int deferredCapacity;
+    private final Executor spillExecutor;
+    private final ToLongFunction<Object> wireBytes;
 
     private final Deque<ReplicaRequest<?>> buffer = new ConcurrentLinkedDeque<>();
+    // Guarded by itself
+    private final NavigableMap<TicketKey, Deque<ReplicaPhaseMessage>> deferred = new TreeMap<>();
+    private int deferredCount;
 
     private final Map<ReplicaRequestKey, ReplicaTicket<?, ?>> ticketCache = new ConcurrentHashMap<>();
+    private final Set<ReplicaRequestKey> inFlight = ConcurrentHashMap.newKeySet();
     private final Map<TicketKey, ReplicaTicket<?, ?>> tickets = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, ReplicaTicket<?, ?>> completedTickets = new ConcurrentSkipListMap<>();
+
+    private final Map<ReplicaRequestKey, Long> spilledTicketCache = new ConcurrentHashMap<>();
+    private final NavigableSet<Long> spilledSeqNumbers = new ConcurrentSkipListSet<>();
+    // Sequence numbers filled with a no-op by a NEW-VIEW, which are never
+    // executed but must not be reported as missing either
+    private final NavigableSet<Long> noOpSeqNumbers = new ConcurrentSkipListSet<>();
+    // Estimated size of the completed tickets queued to be written to the
+    // store, guarded by this
+    private final Map<Long, Long> spilling = new HashMap<>();
+    private long spillingBytes;
+    private final Map<Long, Long> completedBytes = new ConcurrentHashMap<>();
+    private final AtomicLong heapBytes = new AtomicLong();
+    private final AtomicLong bufferBytes = new AtomicLong();
+    private final AtomicLong protocolBytes = new AtomicLong();
+    private volatile long averageTicketBytes = MESSAGE_BYTES;
 
     private final Map<Long, Collection<ReplicaCheckpoint>> checkpoints = new ConcurrentHashMap<>();
     private final Map<Integer, Map<Integer, ReplicaViewChange>> viewChanges = new ConcurrentHashMap<>();
 
     private volatile long lowWaterMark;
     private volatile long highWaterMark;
+    private volatile long stableSeqNumber = -1;
 
     public DefaultReplicaMessageLog(int bufferThreshold, int checkpointInterval, int watermarkInterval) {
+        this(bufferThreshold, checkpointInterval, watermarkInterval, Long.MAX_VALUE, null);
+    }
+
+    public DefaultReplicaMessageLog(int bufferThreshold,
+                                    int checkpointInterval,
+                                    int watermarkInterval,
+                                    long memoryBudget,
+                                    @Nullable ReplicaLogStore store) {
+        this(bufferThreshold, checkpointInterval, watermarkInterval, memoryBudget, store, DEFAULT_DEFERRED_CAPACITY);
+    }
+
+    public DefaultReplicaMessageLog(int bufferThreshold,
+                                    int checkpointInterval,
+                                    int watermarkInterval,
+                                    long memoryBudget,
+                                    @Nullable ReplicaLogStore store,
+                                    int deferredCapacity) {
+        this(bufferThreshold, checkpointInterval, watermarkInterval, memoryBudget, store, deferredCapacity,
+                store == null ? Runnable::run : newSpillExecutor());
+    }
+
+    public DefaultReplicaMessageLog(int bufferThreshold,
+                                    int checkpointInterval,
+                                    int watermarkInterval,
+                                    long memoryBudget,
+                                    @Nullable ReplicaLogStore store,
+                                    int deferredCapacity,
+                                    Executor spillExecutor) {
+        this(bufferThreshold, checkpointInterval, watermarkInterval, memoryBudget, store, deferredCapacity,
+                spillExecutor, NO_WIRE_BYTES);
+    }
+
+    /**
+     * Creates a new message log.
+     *
+     * @param bufferThreshold the number of pending tickets
+     *                        beyond which requests are
+     *                        buffered
+     * @param checkpointInterval the number of sequence
+     *                           numbers between checkpoints
+     * @param watermarkInterval the width of the water marks
+     * @param memoryBudget the approximate number of heap
+     *                     bytes that the log may use
+     * @param store the store completed tickets are spilled
+     *              to once the budget is exceeded, or
+     *              {@code null} to keep them on the heap
+     * @param deferredCapacity the maximum number of
+     *                         deferred phase messages
+     * @param spillExecutor the executor which writes
+     *                      spilled tickets to the store
+     * @param wireBytes the number of bytes of the encoded
+     *                  form kept alive by a logged message,
+     *                  such as
+     *                  {@code BinaryReplicaCodec#wireFormBytes},
+     *                  which must not change while the
+     *                  message is logged
+     */
+    public DefaultReplicaMessageLog(int bufferThreshold,
+                                    int checkpointInterval,
+                                    int watermarkInterval,
+                                    long memoryBudget,
+                                    @Nullable ReplicaLogStore store,
+                                    int deferredCapacity,
+                                    Executor spillExecutor,
+                                    ToLongFunction<Object> wireBytes) {
         this.bufferThreshold = bufferThreshold;
         this.checkpointInterval = checkpointInterval;
         this.watermarkInterval = watermarkInterval;
+        this.memoryBudget = memoryBudget;
+        this.store = store;
+        this.deferredCapacity = deferredCapacity;
+        this.spillExecutor = spillExecutor;
+        this.wireBytes = wireBytes;
 
         this.lowWaterMark = 0;
         this.highWaterMark = this.lowWaterMark + watermarkInterval;
     }
 
+    @SuppressWarnings("unchecked")
+    private static <O, R> ReplicaTicket<O, R> cast(ReplicaTicket<?, ?> ticket) {
+        // Every ticket in the log belongs to the replica that owns it, and so
+        // has the operation and result types that the replica requests
+        return (ReplicaTicket<O, R>) ticket;
+    }
+
+    private static Executor newSpillExecutor() {
+        return Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "pbft-log-spill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     @Override
     public int checkpointInterval() {
         return this.checkpointInterval;
@@ -50,19 +178,44 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
 
     @Override
     public <O, R> @Nullable ReplicaTicket<O, R> getTicketFromCache(ReplicaRequestKey key) {
-        return (ReplicaTicket<O, R>) this.ticketCache.get(key);
+        ReplicaTicket<O, R> ticket = cast(this.ticketCache.get(key));
+        if (ticket != null) {
+            return ticket;
+        }
+
+        Long spilledSeqNumber = this.spilledTicketCache.get(key);
+        if (spilledSeqNumber != null && this.store != null) {
+            return this.store.load(spilledSeqNumber);
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean markInFlight(ReplicaRequestKey key) {
+        return this.inFlight.add(key);
+    }
+
+    @Override
+    public boolean isInFlight(ReplicaRequestKey key) {
+        return this.inFlight.contains(key);
     }
 
     @Override
     public @Nullable <O, R> ReplicaTicket<O, R> getTicket(int viewNumber, long seqNumber) {
         TicketKey key = new TicketKey(viewNumber, seqNumber);
-        return (ReplicaTicket<O, R>) this.tickets.get(key);
+        return cast(this.tickets.get(key));
     }
 
     @Override
     public @NonNull <O, R> ReplicaTicket<O, R> newTicket(int viewNumber, long seqNumber) {
         TicketKey key = new TicketKey(viewNumber, seqNumber);
-        return (ReplicaTicket<O, R>) this.tickets.computeIfAbsent(key, k -> new DefaultReplicaTicket<>(viewNumber, seqNumber));
+        return cast(this.tickets.computeIfAbsent(key, k -> new DefaultReplicaTicket<>(viewNumber, seqNumber)));
+    }
+
+    @Override
+    public Collection<ReplicaTicket<?, ?>> pendingTickets() {
+        return Collections.unmodifiableCollection(this.tickets.values());
     }
 
     @Override
@@ -71,10 +224,215 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
         ReplicaTicket<?, ?> ticket = this.tickets.remove(key);
 
         this.ticketCache.put(rrk, ticket);
+        this.inFlight.remove(rrk);
+        if (ticket != null) {
+            this.completedTickets.put(seqNumber, ticket);
+
+            long bytes = this.estimateBytes(ticket);
+            this.completedBytes.put(seqNumber, bytes);
+            this.heapBytes.addAndGet(bytes);
+
+            // Exponentially weighted average used to estimate the size of
+            // the tickets that are still in progress
+            this.averageTicketBytes = (7 * this.averageTicketBytes + bytes) / 8;
+
+            this.spillColdTickets();
+        }
 
         return ticket != null;
     }
 
+    private long estimateBytes(ReplicaTicket<?, ?> ticket) {
+        long bytes = MESSAGE_BYTES;
+        for (Object message : ticket.messages()) {
+            bytes += MESSAGE_BYTES + this.wireBytes.applyAsLong(message);
+
+            if (message instanceof ReplicaPhaseMessage) {
+                bytes += ((ReplicaPhaseMessage) message).digest().length;
+            }
+
+            if (message instanceof ReplicaRequest || message instanceof ReplicaPrePrepare) {
+                bytes += REQUEST_BYTES;
+            }
+        }
+
+        // The reply is kept for retransmissions along with its result, but
+        // it is only encoded once the ticket has been completed, so its
+        // encoded form is approximated as a request
+        if (ticket.reply() != null) {
+            bytes += MESSAGE_BYTES + REQUEST_BYTES;
+        }
+
+        return bytes;
+    }
+
+    private long estimateBytes(ReplicaCheckpoint checkpoint) {
+        return MESSAGE_BYTES + checkpoint.digest().length + this.wireBytes.applyAsLong(checkpoint);
+    }
+
+    private long estimateBytes(@Nullable Collection<ReplicaCheckpoint> checkpoints) {
+        long bytes = 0;
+        if (checkpoints != null) {
+            for (ReplicaCheckpoint checkpoint : checkpoints) {
+                bytes += this.estimateBytes(checkpoint);
+            }
+        }
+
+        return bytes;
+    }
+
+    private long estimateBytes(@Nullable ReplicaViewChange viewChange) {
+        if (viewChange == null) {
+            return 0;
+        }
+
+        long bytes = MESSAGE_BYTES + this.wireBytes.applyAsLong(viewChange) +
+                this.estimateBytes(viewChange.checkpointProofs());
+        for (Collection<ReplicaPhaseMessage> proofs : viewChange.preparedProofs().values()) {
+            for (ReplicaPhaseMessage message : proofs) {
+                bytes += MESSAGE_BYTES + message.digest().length + this.wireBytes.applyAsLong(message);
+                if (message instanceof ReplicaPrePrepare) {
+                    bytes += REQUEST_BYTES;
+                }
+            }
+        }
+
+        return bytes;
+    }
+
+    private long logBytes() {
+        return this.heapBytes.get() +
+                this.tickets.size() * this.averageTicketBytes +
+                this.protocolBytes.get();
+    }
+
+    private long usedBytes() {
+        return this.logBytes() + this.bufferBytes.get();
+    }
+
+    private void spillColdTickets() {
+        /*
+         * Completed tickets are only read again for retransmissions, view
+         * changes and catch-up, so once the memory budget is exceeded the
+         * oldest completed tickets are moved to the store while keeping a
+         * small index on the heap to find them until the next stable
+         * checkpoint discards them.
+         *
+         * The tickets are written by the spill executor in batches so that
+         * the executing thread does not wait on the store. They remain in
+         * the completed tickets until they have been written, so they can
+         * still be read in the meantime.
+         */
+        ReplicaLogStore store = this.store;
+        if (store == null) {
+            return;
+        }
+
+        Map<Long, ReplicaTicket<?, ?>> batch = new LinkedHashMap<>();
+        synchronized (this) {
+            Iterator<Entry<Long, ReplicaTicket<?, ?>>> it = this.completedTickets.entrySet().iterator();
+            while (this.usedBytes() - this.spillingBytes > this.memoryBudget && it.hasNext()) {
+                Entry<Long, ReplicaTicket<?, ?>> coldest = it.next();
+                long seqNumber = coldest.getKey();
+                if (this.spilling.containsKey(seqNumber)) {
+                    continue;
+                }
+
+                long bytes = this.completedBytes.getOrDefault(seqNumber, 0L);
+                this.spilling.put(seqNumber, bytes);
+                this.spillingBytes += bytes;
+                batch.put(seqNumber, coldest.getValue());
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            this.spillExecutor.execute(() -> this.spill(store, batch));
+        }
+    }
+
+    private void spill(ReplicaLogStore store, Map<Long, ReplicaTicket<?, ?>> batch) {
+        for (Entry<Long, ReplicaTicket<?, ?>> entry : batch.entrySet()) {
+            long seqNumber = entry.getKey();
+            ReplicaTicket<?, ?> ticket = entry.getValue();
+
+            // Tickets discarded by a stable checkpoint in the meantime are
+            // not written at all
+            boolean stored = seqNumber > this.stableSeqNumber;
+            if (stored) {
+                store.store(ticket);
+            }
+
+            // Added to the spilled sequence numbers before being removed from
+            // the completed tickets so that it is never reported as missing
+            synchronized (this) {
+                if (stored && seqNumber > this.stableSeqNumber) {
+                    this.spilledSeqNumbers.add(seqNumber);
+
+                    ReplicaRequest<?> request = ticket.request();
+                    if (request != null) {
+                        ReplicaRequestKey key = new DefaultReplicaRequestKey(request.clientId(), request.timestamp());
+                        this.ticketCache.remove(key);
+                        this.spilledTicketCache.put(key, seqNumber);
+                    }
+                }
+                this.completedTickets.remove(seqNumber);
+
+                Long bytes = this.completedBytes.remove(seqNumber);
+                if (bytes != null) {
+                    this.heapBytes.addAndGet(-bytes);
+                }
+
+                Long queuedBytes = this.spilling.remove(seqNumber);
+                if (queuedBytes != null) {
+                    this.spillingBytes -= queuedBytes;
+                }
+            }
+        }
+    }
+
+    @Override
+    public @Nullable <O, R> ReplicaTicket<O, R> getCompletedTicket(long seqNumber) {
+        ReplicaTicket<O, R> ticket = cast(this.completedTickets.get(seqNumber));
+        if (ticket == null && this.store != null && this.spilledSeqNumbers.contains(seqNumber)) {
+            return this.store.load(seqNumber);
+        }
+
+        return ticket;
+    }
+
+    @Override
+    public boolean isCompleted(long seqNumber) {
+        return seqNumber <= this.stableSeqNumber ||
+                this.completedTickets.containsKey(seqNumber) ||
+                this.spilledSeqNumbers.contains(seqNumber) ||
+                this.noOpSeqNumbers.contains(seqNumber);
+    }
+
+    @Override
+    public Collection<Long> missingSeqNumbers() {
+        /*
+         * Completed tickets are indexed by sequence number so that gaps can
+         * be found by walking from the sequence number following the last
+         * stable checkpoint up to the highest completed sequence number. This
+         * is bounded by the width of the water marks.
+         */
+        Collection<Long> missing = new ArrayList<>();
+        if (this.completedTickets.isEmpty() && this.spilledSeqNumbers.isEmpty()) {
+            return missing;
+        }
+
+        long highest = Math.max(
+                this.completedTickets.isEmpty() ? -1 : this.completedTickets.lastKey(),
+                this.spilledSeqNumbers.isEmpty() ? -1 : this.spilledSeqNumbers.last());
+        for (long i = this.stableSeqNumber + 1; i < highest; i++) {
+            if (!this.isCompleted(i)) {
+                missing.add(i);
+            }
+        }
+
+        return missing;
+    }
+
     private void gcCheckpoint(long checkpoint) {
         /*
          * Procedure used to discard all PRE-PREPARE, PREPARE and COMMIT
@@ -93,10 +451,39 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
 
         for (Long seqNumber : this.checkpoints.keySet()) {
             if (seqNumber < checkpoint) {
-                this.checkpoints.remove(seqNumber);
+                this.protocolBytes.addAndGet(-this.estimateBytes(this.checkpoints.remove(seqNumber)));
+            }
+        }
+
+        // Includes the tickets recreated by PREPARE or COMMIT messages that
+        // arrived after the ticket had been completed, which are otherwise
+        // never removed and count against the memory budget
+        for (TicketKey key : this.tickets.keySet()) {
+            if (key.seqNumber() <= checkpoint) {
+                this.tickets.remove(key);
+            }
+        }
+
+        this.completedTickets.headMap(checkpoint, true).clear();
+        this.noOpSeqNumbers.headSet(checkpoint, true).clear();
+        for (Long seqNumber : this.completedBytes.keySet()) {
+            if (seqNumber <= checkpoint) {
+                Long bytes = this.completedBytes.remove(seqNumber);
+                if (bytes != null) {
+                    this.heapBytes.addAndGet(-bytes);
+                }
             }
         }
 
+        if (this.store != null) {
+            this.spilledSeqNumbers.headSet(checkpoint, true).clear();
+            this.spilledTicketCache.values().removeIf(seqNumber -> seqNumber <= checkpoint);
+            this.store.discard(checkpoint);
+        }
+        if (this.stableSeqNumber < checkpoint) {
+            this.stableSeqNumber = checkpoint;
+        }
+
         this.highWaterMark = checkpoint + this.watermarkInterval;
         this.lowWaterMark = checkpoint;
     }
@@ -112,6 +499,7 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
         long seqNumber = checkpoint.lastSeqNumber();
         Collection<ReplicaCheckpoint> checkpointProofs = this.checkpoints.computeIfAbsent(seqNumber, k -> new ConcurrentLinkedQueue<>());
         checkpointProofs.add(checkpoint);
+        this.addProtocolBytes(this.estimateBytes(checkpoint));
 
         final int stableCount = 2 * tolerance + 1;
         int matching = 0;
@@ -130,6 +518,33 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
         }
     }
 
+    private void putCheckpointProofs(long seqNumber, @Nullable Collection<ReplicaCheckpoint> proofs) {
+        if (proofs == null) {
+            return;
+        }
+
+        Collection<ReplicaCheckpoint> previous = this.checkpoints.put(seqNumber, proofs);
+        this.addProtocolBytes(this.estimateBytes(proofs) - this.estimateBytes(previous));
+    }
+
+    private void putViewChange(Map<Integer, ReplicaViewChange> newViewSet, ReplicaViewChange viewChange) {
+        ReplicaViewChange previous = newViewSet.put(viewChange.replicaId(), viewChange);
+        this.addProtocolBytes(this.estimateBytes(viewChange) - this.estimateBytes(previous));
+    }
+
+    private void addProtocolBytes(long bytes) {
+        /*
+         * Checkpoint and VIEW-CHANGE proofs are bounded by the protocol
+         * rather than by the log, but still count towards the memory budget
+         * so that more completed tickets are spilled and new requests are
+         * buffered to make room for them.
+         */
+        this.protocolBytes.addAndGet(bytes);
+        if (bytes > 0) {
+            this.spillColdTickets();
+        }
+    }
+
     private @Nullable Collection<ReplicaPhaseMessage> selectPreparedProofs(ReplicaTicket<?, ?> ticket, int requiredMatches) {
         /*
          * Selecting the proofs of PRE-PREPARE and PREPARE messages for the
@@ -209,6 +624,24 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
             }
         }
 
+        // Scan through the completed tickets that have been spilled out of
+        // the heap
+        if (this.store != null) {
+            for (Long seqNumber : this.spilledSeqNumbers.tailSet(checkpoint, false)) {
+                ReplicaTicket<?, ?> ticket = this.store.load(seqNumber);
+                if (ticket == null) {
+                    continue;
+                }
+
+                Collection<ReplicaPhaseMessage> proofs = this.selectPreparedProofs(ticket, requiredMatches);
+                if (proofs == null) {
+                    continue;
+                }
+
+                preparedProofs.put(seqNumber, proofs);
+            }
+        }
+
         // Scan through the currently active tickets
         for (ReplicaTicket<?, ?> ticket : this.tickets.values()) {
             ReplicaTicketPhase phase = ticket.phase();
@@ -246,7 +679,7 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
          * stall; therefore I do include the initiating replica here.
          */
         Map<Integer, ReplicaViewChange> newViewSet = this.viewChanges.computeIfAbsent(newViewNumber, k -> new ConcurrentHashMap<>());
-        newViewSet.put(replicaId, viewChange);
+        this.putViewChange(newViewSet, viewChange);
 
         return viewChange;
     }
@@ -275,7 +708,7 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
         int replicaId = viewChange.replicaId();
 
         Map<Integer, ReplicaViewChange> newViewSet = this.viewChanges.computeIfAbsent(newViewNumber, k -> new ConcurrentHashMap<>());
-        newViewSet.put(replicaId, viewChange);
+        this.putViewChange(newViewSet, viewChange);
 
         final int bandwagonSize = tolerance + 1;
 
@@ -340,8 +773,17 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
 
             sequenceProofs.add(prePrepareProofMessage);
 
+            // No-ops are never prepared, so no ticket is created for them,
+            // they are only recorded to fill the gap in the sequence numbers
+            ReplicaRequest<?> request = prePrepareProofMessage.request();
+            if (request == NULL_REQ) {
+                this.noOpSeqNumbers.add(i);
+                continue;
+            }
+
             ReplicaTicket<Object, Object> ticket = this.newTicket(newViewNumber, i);
             ticket.append(prePrepareProofMessage);
+            this.inFlight.add(new DefaultReplicaRequestKey(request.clientId(), request.timestamp()));
         }
 
         return sequenceProofs;
@@ -413,7 +855,7 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
 
         this.gcNewView(newViewNumber);
         if (minS > this.lowWaterMark) {
-            this.checkpoints.put(minS, minSProof);
+            this.putCheckpointProofs(minS, minSProof);
             this.gcCheckpoint(minS);
         }
 
@@ -434,10 +876,25 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
     private void gcNewView(int newViewNumber) {
         /*
          * Performs clean-up for entering a new view in accordance with PBFT
-         * 4.4. This means that any view change votes and pending tickets that
-         * are not in the new view are removed.
+         * 4.4. This means that any view change votes up to the new view and
+         * pending tickets that are not in the new view are removed.
+         *
+         * Requests that were in flight in the previous view are forgotten as
+         * well so that client retransmissions are accepted by the new primary
+         * unless they are carried over by the NEW-VIEW.
          */
-        this.viewChanges.remove(newViewNumber);
+        for (Integer viewNumber : this.viewChanges.keySet()) {
+            // Votes for earlier views can no longer be used either
+            if (viewNumber <= newViewNumber) {
+                Map<Integer, ReplicaViewChange> votes = this.viewChanges.remove(viewNumber);
+                if (votes != null) {
+                    for (ReplicaViewChange vote : votes.values()) {
+                        this.protocolBytes.addAndGet(-this.estimateBytes(vote));
+                    }
+                }
+            }
+        }
+        this.inFlight.clear();
 
         for (TicketKey key : this.tickets.keySet()) {
             if (key.viewNumber() != newViewNumber) {
@@ -471,26 +928,69 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
         }
 
         if (this.lowWaterMark < minS) {
-            this.checkpoints.put(minS, checkpointProofs);
+            this.putCheckpointProofs(minS, checkpointProofs);
             this.gcCheckpoint(minS);
         }
 
+        // Record the no-ops filling the NEW-VIEW so that they are treated as
+        // completed rather than being fetched from other replicas forever
+        for (ReplicaPrePrepare<?> prePrepare : newView.preparedProofs()) {
+            ReplicaRequest<?> request = prePrepare.request();
+            long seqNumber = prePrepare.seqNumber();
+            if (request != null && request.operation() == null && seqNumber > this.stableSeqNumber) {
+                this.noOpSeqNumbers.add(seqNumber);
+            }
+        }
+
         return true;
     }
 
     @Override
     public boolean shouldBuffer() {
-        return this.tickets.size() >= this.bufferThreshold;
+        if (this.tickets.size() >= this.bufferThreshold) {
+            return true;
+        }
+
+        // Throttle new requests when the memory budget has been reached until
+        // completed tickets are either spilled or garbage collected. The
+        // buffer is bounded on its own, otherwise a full buffer would keep
+        // every new request buffered with nothing left to drain it
+        if (this.logBytes() >= this.memoryBudget) {
+            this.spillColdTickets();
+            return true;
+        }
+
+        return false;
     }
 
     @Override
-    public <O> void buffer(ReplicaRequest<O> request) {
+    public <O> boolean buffer(ReplicaRequest<O> request) {
+        /*
+         * The buffer itself must be bounded as well to keep the heap usage
+         * predictable under overload. Requests that do not fit are dropped,
+         * the client will retransmit them once its timer expires per PBFT 4.1.
+         */
+        if (this.bufferBytes.get() + REQUEST_BYTES > this.memoryBudget) {
+            this.inFlight.remove(new DefaultReplicaRequestKey(request.clientId(), request.timestamp()));
+            return false;
+        }
+
+        this.bufferBytes.addAndGet(REQUEST_BYTES);
         this.buffer.addLast(request);
+        return true;
     }
 
     @Override
     public @Nullable <O> ReplicaRequest<O> popBuffer() {
-        return (ReplicaRequest<O>) this.buffer.pollFirst();
+        // Requests are buffered by the replica that owns the log, and so have
+        // the operation type that it requests
+        @SuppressWarnings("unchecked")
+        ReplicaRequest<O> request = (ReplicaRequest<O>) this.buffer.pollFirst();
+        if (request != null) {
+            this.bufferBytes.addAndGet(-REQUEST_BYTES);
+        }
+
+        return request;
     }
 
     @Override
@@ -498,7 +998,90 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
         return seqNumber >= this.lowWaterMark && seqNumber <= this.highWaterMark;
     }
 
-    private static class TicketKey {
+    @Override
+    public boolean shouldDefer(int curViewNumber, int viewNumber, long seqNumber) {
+        /*
+         * A replica which is slightly behind, e.g. one which has not yet
+         * received the NEW-VIEW or the checkpoints that stabilize the low
+         * water mark, will shortly need the messages that the other replicas
+         * have already started sending. Messages which are too far ahead are
+         * still dropped as they are more likely to be from a faulty replica
+         * and are recovered through the protocol anyways.
+         */
+        if (viewNumber < curViewNumber || viewNumber > curViewNumber + DEFERRED_VIEWS) {
+            return false;
+        }
+
+        if (seqNumber < this.lowWaterMark || seqNumber > this.highWaterMark + this.watermarkInterval) {
+            return false;
+        }
+
+        return viewNumber > curViewNumber || seqNumber > this.highWaterMark;
+    }
+
+    @Override
+    public boolean defer(ReplicaPhaseMessage message, int curViewNumber) {
+        int viewNumber = message.viewNumber();
+        long seqNumber = message.seqNumber();
+        if (!this.shouldDefer(curViewNumber, viewNumber, seqNumber)) {
+            return false;
+        }
+
+        TicketKey key = new TicketKey(viewNumber, seqNumber);
+        synchronized (this.deferred) {
+            // Make room by dropping the messages furthest in the future,
+            // which are the least likely to be needed soon
+            if (this.deferredCount >= this.deferredCapacity) {
+                Entry<TicketKey, Deque<ReplicaPhaseMessage>> furthest = this.deferred.lastEntry();
+                if (furthest == null || key.compareTo(furthest.getKey()) >= 0) {
+                    return false;
+                }
+
+                Deque<ReplicaPhaseMessage> messages = furthest.getValue();
+                messages.pollLast();
+                if (messages.isEmpty()) {
+                    this.deferred.remove(furthest.getKey());
+                }
+                this.deferredCount--;
+            }
+
+            this.deferred.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(message);
+            this.deferredCount++;
+        }
+
+        return true;
+    }
+
+    @Override
+    public Collection<ReplicaPhaseMessage> popDeferred(int curViewNumber) {
+        Collection<ReplicaPhaseMessage> ready = new ArrayList<>();
+        synchronized (this.deferred) {
+            Iterator<Entry<TicketKey, Deque<ReplicaPhaseMessage>>> it = this.deferred.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry<TicketKey, Deque<ReplicaPhaseMessage>> entry = it.next();
+                TicketKey key = entry.getKey();
+
+                // Keys are ordered by view and then by sequence number, so
+                // the remaining messages are all still in the future
+                if (key.viewNumber() > curViewNumber ||
+                        key.viewNumber() == curViewNumber && key.seqNumber() > this.highWaterMark) {
+                    break;
+                }
+
+                Deque<ReplicaPhaseMessage> messages = entry.getValue();
+                if (key.viewNumber() == curViewNumber && key.seqNumber() >= this.lowWaterMark) {
+                    ready.addAll(messages);
+                }
+
+                this.deferredCount -= messages.size();
+                it.remove();
+            }
+        }
+
+        return ready;
+    }
+
+    private static class TicketKey implements Comparable<TicketKey> {
         private final int viewNumber;
         private final long seqNumber;
 
@@ -511,6 +1094,16 @@ public class DefaultReplicaMessageLog implements ReplicaMessageLog {
             return this.viewNumber;
         }
 
+        public long seqNumber() {
+            return this.seqNumber;
+        }
+
+        @Override
+        public int compareTo(TicketKey o) {
+            int compare = Integer.compare(this.viewNumber, o.viewNumber);
+            return compare != 0 ? compare : Long.compare(this.seqNumber, o.seqNumber);
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -0,0 +1,285 @@
+package com.gmail.woodyc40.pbft;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+
+public class DefaultReplicaStateTree implements ReplicaStateTree {
+    private static final String ALGORITHM = "SHA-256";
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+
+    private final int partitions;
+    private final int height;
+    private final int leafOffset;
+    private final ObjIntConsumer<MessageDigest> partitionHasher;
+    private final @Nullable IntFunction<byte[]> partitionCopier;
+
+    // Guarded by this
+    private final byte[][] nodes;
+    private final MessageDigest digest;
+
+    // Guarded by itself, kept apart from the nodes so that the thread
+    // executing requests is not blocked while a snapshot is being digested
+    private final BitSet dirty = new BitSet();
+    private final Deque<Snapshot> pendingSnapshots = new ArrayDeque<>();
+
+    public DefaultReplicaStateTree(int partitions, ObjIntConsumer<MessageDigest> partitionHasher) {
+        this(partitions, partitionHasher, null);
+    }
+
+    /**
+     * Creates a tree which supports {@link #snapshot()} by
+     * copying the modified partitions with the given
+     * function, which is also used to hash the partitions.
+     *
+     * @param partitions the number of partitions
+     * @param partitionCopier copies the bytes of the given
+     *                        partition
+     */
+    public DefaultReplicaStateTree(int partitions, IntFunction<byte[]> partitionCopier) {
+        this(partitions, (digest, partition) -> digest.update(partitionCopier.apply(partition)), partitionCopier);
+    }
+
+    private DefaultReplicaStateTree(int partitions,
+                                    ObjIntConsumer<MessageDigest> partitionHasher,
+                                    @Nullable IntFunction<byte[]> partitionCopier) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Partitions must be positive: " + partitions);
+        }
+
+        this.partitions = partitions;
+        this.partitionHasher = partitionHasher;
+        this.partitionCopier = partitionCopier;
+
+        int height = 0;
+        while ((1 << height) < partitions) {
+            height++;
+        }
+        this.height = height;
+        this.leafOffset = (1 << height) - 1;
+        this.nodes = new byte[2 * this.leafOffset + 1][];
+
+        try {
+            this.digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        // Every leaf, including the padding leaves up to the next power of
+        // two, starts dirty so that the first call to #root() builds the
+        // whole tree
+        this.dirty.set(0, this.leafOffset + 1);
+    }
+
+    @Override
+    public int partitions() {
+        return this.partitions;
+    }
+
+    @Override
+    public int height() {
+        return this.height;
+    }
+
+    @Override
+    public void markDirty(int partition) {
+        if (partition < 0 || partition >= this.partitions) {
+            throw new IndexOutOfBoundsException("Partition " + partition + " out of " + this.partitions);
+        }
+
+        synchronized (this.dirty) {
+            this.dirty.set(partition);
+        }
+    }
+
+    /**
+     * Captures a copy-on-write snapshot of the state by
+     * copying only the partitions marked dirty since the
+     * previous snapshot, which may then be digested on
+     * another thread while the state continues to be
+     * modified.
+     *
+     * @return the snapshot
+     * @throws IllegalStateException if this tree was not
+     * created with a partition copier
+     */
+    public ReplicaStateSnapshot snapshot() {
+        IntFunction<byte[]> copier = this.partitionCopier;
+        if (copier == null) {
+            throw new IllegalStateException("Snapshots require a partition copier");
+        }
+
+        synchronized (this.dirty) {
+            BitSet leaves = (BitSet) this.dirty.clone();
+            Map<Integer, byte[]> copies = new HashMap<>();
+            for (int partition = leaves.nextSetBit(0); partition >= 0 && partition < this.partitions;
+                 partition = leaves.nextSetBit(partition + 1)) {
+                copies.put(partition, copier.apply(partition));
+            }
+            this.dirty.clear();
+
+            Snapshot snapshot = new Snapshot(leaves, copies);
+            this.pendingSnapshots.addLast(snapshot);
+            return snapshot;
+        }
+    }
+
+    private @Nullable Snapshot pollSnapshot() {
+        synchronized (this.dirty) {
+            return this.pendingSnapshots.pollFirst();
+        }
+    }
+
+    private void applySnapshots(@Nullable Snapshot until) {
+        /*
+         * Snapshots must be applied in the order that they were taken since
+         * each one only contains the partitions modified since the previous
+         * one, so earlier snapshots that are still pending are digested first
+         * regardless of the order in which they are requested.
+         */
+        while (until == null || until.root == null) {
+            Snapshot next = this.pollSnapshot();
+            if (next == null) {
+                return;
+            }
+
+            next.root = this.rehash(next.leaves, (digest, partition) -> digest.update(next.copies.get(partition)));
+        }
+    }
+
+    @Override
+    public synchronized byte[] root() {
+        this.applySnapshots(null);
+
+        BitSet leaves;
+        synchronized (this.dirty) {
+            leaves = (BitSet) this.dirty.clone();
+            this.dirty.clear();
+        }
+
+        return this.rehash(leaves, this.partitionHasher);
+    }
+
+    private byte[] rehash(BitSet leaves, ObjIntConsumer<MessageDigest> hasher) {
+        /*
+         * Rehash the dirty leaves, collecting their parents in order to
+         * rehash the next level up. Each level only visits the ancestors of
+         * the dirty leaves, so the cost is O(d log n) for d dirty partitions.
+         */
+        Set<Integer> level = new TreeSet<>();
+        for (int partition = leaves.nextSetBit(0); partition >= 0; partition = leaves.nextSetBit(partition + 1)) {
+            int node = this.leafOffset + partition;
+
+            this.digest.update(LEAF_PREFIX);
+            if (partition < this.partitions) {
+                hasher.accept(this.digest, partition);
+            }
+            this.nodes[node] = this.digest.digest();
+
+            if (node > 0) {
+                level.add((node - 1) / 2);
+            }
+        }
+
+        while (!level.isEmpty()) {
+            Set<Integer> parents = new TreeSet<>();
+            for (int node : level) {
+                this.digest.update(NODE_PREFIX);
+                this.digest.update(this.nodes[2 * node + 1]);
+                this.digest.update(this.nodes[2 * node + 2]);
+                this.nodes[node] = this.digest.digest();
+
+                if (node > 0) {
+                    parents.add((node - 1) / 2);
+                }
+            }
+
+            level = parents;
+        }
+
+        return this.nodes[0].clone();
+    }
+
+    private int nodeIndex(int level, int index) {
+        if (level < 0 || level > this.height || index < 0 || index >= (1 << level)) {
+            throw new IndexOutOfBoundsException("No node at level " + level + " index " + index);
+        }
+
+        return (1 << level) - 1 + index;
+    }
+
+    @Override
+    public synchronized byte[] nodeDigest(int level, int index) {
+        byte[] node = this.nodes[this.nodeIndex(level, index)];
+        if (node == null) {
+            throw new IllegalStateException("Tree has not been built, call #root() first");
+        }
+
+        return node.clone();
+    }
+
+    @Override
+    public Collection<Integer> differingPartitions(BiFunction<Integer, Integer, byte[]> remote) {
+        /*
+         * Breadth-first descent from the root, only expanding the children of
+         * nodes whose digests differ from the remote copy. Padding leaves are
+         * identical on both sides so they are never reported.
+         */
+        Collection<Integer> differing = new ArrayList<>();
+        Deque<int[]> pending = new ArrayDeque<>();
+        pending.add(new int[] { 0, 0 });
+
+        while (!pending.isEmpty()) {
+            int[] node = pending.poll();
+            int level = node[0];
+            int index = node[1];
+
+            if (Arrays.equals(this.nodeDigest(level, index), remote.apply(level, index))) {
+                continue;
+            }
+
+            if (level == this.height) {
+                if (index < this.partitions) {
+                    differing.add(index);
+                }
+                continue;
+            }
+
+            pending.add(new int[] { level + 1, 2 * index });
+            pending.add(new int[] { level + 1, 2 * index + 1 });
+        }
+
+        return differing;
+    }
+
+    private class Snapshot implements ReplicaStateSnapshot {
+        private final BitSet leaves;
+        private final Map<Integer, byte[]> copies;
+        // Guarded by the tree
+        private byte @Nullable [] root;
+
+        Snapshot(BitSet leaves, Map<Integer, byte[]> copies) {
+            this.leaves = leaves;
+            this.copies = copies;
+        }
+
+        @Override
+        public byte[] digest() {
+            DefaultReplicaStateTree tree = DefaultReplicaStateTree.this;
+            synchronized (tree) {
+                tree.applySnapshots(this);
+                if (this.root == null) {
+                    throw new IllegalStateException("Snapshot was not taken from this tree");
+                }
+
+                return this.root.clone();
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.gmail.woodyc40.pbft;
 import com.gmail.woodyc40.pbft.message.ReplicaCommit;
 import com.gmail.woodyc40.pbft.message.ReplicaPrePrepare;
 import com.gmail.woodyc40.pbft.message.ReplicaPrepare;
+import com.gmail.woodyc40.pbft.message.ReplicaReply;
 import com.gmail.woodyc40.pbft.message.ReplicaRequest;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -19,7 +20,9 @@ public class DefaultReplicaTicket<O, R> implements ReplicaTicket<O, R> {
 
     private volatile ReplicaRequest<O> request;
     private final AtomicReference<ReplicaTicketPhase> phase = new AtomicReference<>(ReplicaTicketPhase.PRE_PREPARE);
+    private volatile long phaseTime = System.currentTimeMillis();
     private final CompletableFuture<R> future = new CompletableFuture<>();
+    private volatile @Nullable ReplicaReply<R> reply;
 
     public DefaultReplicaTicket(int viewNumber, long seqNumber) {
         this.viewNumber = viewNumber;
@@ -108,7 +111,17 @@ public class DefaultReplicaTicket<O, R> implements ReplicaTicket<O, R> {
 
     @Override
     public boolean casPhase(ReplicaTicketPhase old, ReplicaTicketPhase next) {
-        return this.phase.compareAndSet(old, next);
+        if (this.phase.compareAndSet(old, next)) {
+            this.phaseTime = System.currentTimeMillis();
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public long phaseTime() {
+        return this.phaseTime;
     }
 
     @Override
@@ -125,4 +138,14 @@ public class DefaultReplicaTicket<O, R> implements ReplicaTicket<O, R> {
     public CompletableFuture<R> result() {
         return this.future;
     }
+
+    @Override
+    public void setReply(ReplicaReply<R> reply) {
+        this.reply = reply;
+    }
+
+    @Override
+    public @Nullable ReplicaReply<R> reply() {
+        return this.reply;
+    }
 }
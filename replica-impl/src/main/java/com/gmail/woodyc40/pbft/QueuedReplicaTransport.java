@@ -0,0 +1,301 @@
+package com.gmail.woodyc40.pbft;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * An {@link AsyncReplicaTransport} which decorates a
+ * blocking {@link ReplicaTransport} with a bounded queue
+ * and a sender thread for each replica.
+ *
+ * <p>A replica is isolated when its queue overflows or when
+ * a single send to it takes longer than the slow send
+ * threshold. While isolated, messages to the replica are
+ * dropped without being queued, except for a single probe
+ * message once the queue is empty. The isolation is lifted
+ * when a send completes within the threshold and the queue
+ * has drained to half of its capacity, so that a lagging
+ * replica neither delays the healthy replicas nor
+ * oscillates in and out of isolation.</p>
+ *
+ * <p>A send which throws is counted as failed and isolates
+ * the replica in the same way as a slow send, without
+ * stopping its sender thread.</p>
+ *
+ * <p>Every send to the delegate takes ownership of one
+ * reference to the message, as is the case for pooled
+ * buffers. Given the functions which retain and release a
+ * reference, a multicast retains one reference for each
+ * queued destination and releases the reference of the
+ * caller, and messages that are dropped or still queued
+ * when the transport is closed are released.</p>
+ *
+ * @param <T> the encoded message type
+ */
+public class QueuedReplicaTransport<T> implements AsyncReplicaTransport<T>, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(QueuedReplicaTransport.class.getName());
+
+    private final ReplicaTransport<T> delegate;
+    private final int capacity;
+    private final ReplicaOverflowPolicy overflowPolicy;
+    private final long slowSendNanos;
+    private final Consumer<T> retainer;
+    private final Consumer<T> releaser;
+
+    private final int[] replicaIds;
+    private final Map<Integer, PeerSender> senders = new HashMap<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new queued transport.
+     *
+     * @param delegate the transport used to send messages
+     * @param capacity the number of messages which may be
+     *                 queued for each replica
+     * @param overflowPolicy the action taken when a queue is
+     *                       full
+     * @param slowSendMs the time after which a single send
+     *                   causes the replica to be isolated
+     */
+    public QueuedReplicaTransport(ReplicaTransport<T> delegate,
+                                  int capacity,
+                                  ReplicaOverflowPolicy overflowPolicy,
+                                  long slowSendMs) {
+        this(delegate, capacity, overflowPolicy, slowSendMs, data -> {}, data -> {});
+    }
+
+    /**
+     * Creates a new queued transport for reference counted
+     * messages.
+     *
+     * @param delegate the transport used to send messages
+     * @param capacity the number of messages which may be
+     *                 queued for each replica
+     * @param overflowPolicy the action taken when a queue is
+     *                       full
+     * @param slowSendMs the time after which a single send
+     *                   causes the replica to be isolated
+     * @param retainer adds a reference to a message
+     * @param releaser removes a reference from a message
+     */
+    public QueuedReplicaTransport(ReplicaTransport<T> delegate,
+                                  int capacity,
+                                  ReplicaOverflowPolicy overflowPolicy,
+                                  long slowSendMs,
+                                  Consumer<T> retainer,
+                                  Consumer<T> releaser) {
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.slowSendNanos = TimeUnit.MILLISECONDS.toNanos(slowSendMs);
+        this.retainer = retainer;
+        this.releaser = releaser;
+
+        this.replicaIds = delegate.knownReplicaIds().toArray();
+        for (int id : this.replicaIds) {
+            PeerSender sender = new PeerSender(id);
+            this.senders.put(id, sender);
+            sender.thread.start();
+        }
+    }
+
+    private PeerSender sender(int replicaId) {
+        PeerSender sender = this.senders.get(replicaId);
+        if (sender == null) {
+            throw new IllegalArgumentException("Unknown replica: " + replicaId);
+        }
+
+        return sender;
+    }
+
+    @Override
+    public boolean offer(int replicaId, T data) {
+        PeerSender sender = this.senders.get(replicaId);
+        if (sender == null) {
+            this.releaser.accept(data);
+            throw new IllegalArgumentException("Unknown replica: " + replicaId);
+        }
+
+        return sender.offer(data);
+    }
+
+    @Override
+    public int pendingMessages(int replicaId) {
+        return this.sender(replicaId).queue.size();
+    }
+
+    @Override
+    public boolean isIsolated(int replicaId) {
+        return this.sender(replicaId).isolated;
+    }
+
+    /**
+     * Obtains the number of sends to the given replica which
+     * have thrown an exception.
+     *
+     * @param replicaId the replica ID
+     * @return the number of failed sends
+     */
+    public long failedSends(int replicaId) {
+        return this.sender(replicaId).failedSends.get();
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.delegate.countKnownReplicas();
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return IntStream.of(this.replicaIds);
+    }
+
+    @Override
+    public void sendMessage(int replicaId, T data) {
+        this.offer(replicaId, data);
+    }
+
+    @Override
+    public void multicast(T data, int... ignoredReplicas) {
+        // Each queued destination owns its own reference, which is
+        // released by the send or when the message is dropped
+        try {
+            outer:
+            for (int id : this.replicaIds) {
+                for (int ignored : ignoredReplicas) {
+                    if (id == ignored) {
+                        continue outer;
+                    }
+                }
+
+                this.retainer.accept(data);
+                this.senders.get(id).offer(data);
+            }
+        } finally {
+            this.releaser.accept(data);
+        }
+    }
+
+    @Override
+    public void sendReply(String clientId, T reply) {
+        this.delegate.sendReply(clientId, reply);
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        for (PeerSender sender : this.senders.values()) {
+            sender.thread.interrupt();
+        }
+
+        try {
+            for (PeerSender sender : this.senders.values()) {
+                sender.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (PeerSender sender : this.senders.values()) {
+            sender.discard();
+        }
+    }
+
+    private class PeerSender {
+        private final int replicaId;
+        private final BlockingQueue<T> queue;
+        private final Thread thread;
+        private final AtomicLong failedSends = new AtomicLong();
+
+        private volatile boolean isolated;
+
+        public PeerSender(int replicaId) {
+            this.replicaId = replicaId;
+            this.queue = new ArrayBlockingQueue<>(QueuedReplicaTransport.this.capacity);
+            this.thread = new Thread(this::run, "pbft-sender-" + replicaId);
+            this.thread.setDaemon(true);
+        }
+
+        public boolean offer(T data) {
+            if (this.enqueue(data)) {
+                return true;
+            }
+
+            QueuedReplicaTransport.this.releaser.accept(data);
+            return false;
+        }
+
+        private boolean enqueue(T data) {
+            if (!QueuedReplicaTransport.this.running) {
+                return false;
+            }
+
+            if (this.isolated) {
+                // Only allow a single probe message through once the
+                // backlog has been written, which lifts the isolation
+                // if it is sent quickly enough
+                return this.queue.isEmpty() && this.queue.offer(data);
+            }
+
+            if (this.queue.offer(data)) {
+                return true;
+            }
+
+            this.isolated = true;
+            if (QueuedReplicaTransport.this.overflowPolicy == ReplicaOverflowPolicy.DROP_OLDEST) {
+                T oldest = this.queue.poll();
+                if (oldest != null) {
+                    QueuedReplicaTransport.this.releaser.accept(oldest);
+                }
+                return this.queue.offer(data);
+            }
+
+            return false;
+        }
+
+        private void discard() {
+            T data;
+            while ((data = this.queue.poll()) != null) {
+                QueuedReplicaTransport.this.releaser.accept(data);
+            }
+        }
+
+        private void run() {
+            while (QueuedReplicaTransport.this.running) {
+                T data;
+                try {
+                    data = this.queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                // The send takes over the reference held by the queue, even
+                // if it throws
+                long start = System.nanoTime();
+                try {
+                    QueuedReplicaTransport.this.delegate.sendMessage(this.replicaId, data);
+                } catch (RuntimeException e) {
+                    this.failedSends.incrementAndGet();
+                    this.isolated = true;
+                    LOGGER.log(Level.WARNING, "Failed to send message to replica " + this.replicaId, e);
+                    continue;
+                }
+
+                if (System.nanoTime() - start > QueuedReplicaTransport.this.slowSendNanos) {
+                    this.isolated = true;
+                } else if (this.isolated && this.queue.size() <= QueuedReplicaTransport.this.capacity / 2) {
+                    this.isolated = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.gmail.woodyc40.pbft;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Routes incoming encoded messages to the appropriate
+ * {@code recv*} hook of a {@link Replica}.
+ *
+ * <p>Only the type of the message is determined before
+ * dispatching, after which only the body of that type is
+ * decoded, so applications only need to implement a {@link
+ * ReplicaDecoder} and pass each message received by their
+ * transport to {@link #dispatch(Object)}.</p>
+ *
+ * <p>If the decoder also implements {@link
+ * ReplicaHeaderDecoder}, phase messages which would fail
+ * the view, water mark and disgruntled checks performed by
+ * the replica are dropped before their body is decoded,
+ * except for those which the replica defers because they
+ * are from the near future.</p>
+ *
+ * @param <O> the operation type
+ * @param <R> the result type
+ * @param <T> the encoded message type
+ */
+public class ReplicaDispatcher<O, R, T> {
+    private final Replica<O, R, T> replica;
+    private final ReplicaDecoder<O, T> decoder;
+    private final @Nullable ReplicaHeaderDecoder<T> headerDecoder;
+
+    @SuppressWarnings("unchecked")
+    public ReplicaDispatcher(Replica<O, R, T> replica, ReplicaDecoder<O, T> decoder) {
+        this.replica = replica;
+        this.decoder = decoder;
+        this.headerDecoder = decoder instanceof ReplicaHeaderDecoder ?
+                (ReplicaHeaderDecoder<T>) decoder : null;
+    }
+
+    private boolean isStale(T data) {
+        /*
+         * Mirrors the checks made by the replica upon receiving a phase
+         * message so that they can be made before the body is decoded. The
+         * replica still performs its own checks, so the state read here
+         * only needs to be approximately current.
+         */
+        if (this.headerDecoder == null) {
+            return false;
+        }
+
+        int curViewNumber = this.replica.viewNumber();
+        int viewNumber = this.headerDecoder.viewNumber(data);
+        long seqNumber = this.headerDecoder.seqNumber(data);
+
+        // Messages from the near future are deferred by the replica
+        ReplicaMessageLog log = this.replica.log();
+        if (log.shouldDefer(curViewNumber, viewNumber, seqNumber)) {
+            return false;
+        }
+
+        // PBFT 4.4 - Phase messages are not accepted when the replica is
+        // disgruntled
+        if (this.replica.isDisgruntled()) {
+            return true;
+        }
+
+        if (viewNumber != curViewNumber) {
+            return true;
+        }
+
+        return !log.isBetweenWaterMarks(seqNumber);
+    }
+
+    public void dispatch(T data) {
+        ReplicaMessageType type = this.decoder.type(data);
+        switch (type) {
+            case REQUEST:
+                this.replica.recvRequest(this.decoder.decodeRequest(data));
+                break;
+            case PRE_PREPARE:
+                if (this.isStale(data)) {
+                    break;
+                }
+                this.replica.recvPrePrepare(this.decoder.decodePrePrepare(data));
+                break;
+            case PREPARE:
+                if (this.isStale(data)) {
+                    break;
+                }
+                this.replica.recvPrepare(this.decoder.decodePrepare(data));
+                break;
+            case COMMIT:
+                if (this.isStale(data)) {
+                    break;
+                }
+                this.replica.recvCommit(this.decoder.decodeCommit(data));
+                break;
+            case CHECKPOINT:
+                this.replica.recvCheckpoint(this.decoder.decodeCheckpoint(data));
+                break;
+            case VIEW_CHANGE:
+                this.replica.recvViewChange(this.decoder.decodeViewChange(data));
+                break;
+            case NEW_VIEW:
+                this.replica.recvNewView(this.decoder.decodeNewView(data));
+                break;
+            case FETCH:
+                this.replica.recvFetch(this.decoder.decodeFetch(data));
+                break;
+            case COMMIT_PROOF:
+                this.replica.recvCommitProof(this.decoder.decodeCommitProof(data));
+                break;
+            case RETRANSMIT:
+                this.replica.recvRetransmit(this.decoder.decodeRetransmit(data));
+                break;
+            case HEARTBEAT:
+                this.replica.recvHeartbeat(this.decoder.decodeHeartbeat(data));
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected message type: " + type);
+        }
+    }
+}
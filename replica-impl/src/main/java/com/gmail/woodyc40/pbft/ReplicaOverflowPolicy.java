@@ -0,0 +1,20 @@
+package com.gmail.woodyc40.pbft;
+
+/**
+ * The action taken by a {@link QueuedReplicaTransport} when
+ * a message is sent to a replica whose outbound queue is
+ * full.
+ */
+public enum ReplicaOverflowPolicy {
+    /**
+     * Drops the message being sent, keeping the messages
+     * which are already queued.
+     */
+    DROP_NEWEST,
+    /**
+     * Drops the oldest queued message to make room for the
+     * message being sent, favoring the most recent protocol
+     * state.
+     */
+    DROP_OLDEST
+}
@@ -0,0 +1,32 @@
+package com.gmail.woodyc40.pbft.message;
+
+import java.util.Collection;
+
+public class DefaultReplicaCommitProof<O> implements ReplicaCommitProof<O> {
+    private final ReplicaPrePrepare<O> prePrepare;
+    private final Collection<ReplicaCommit> commits;
+    private final int replicaId;
+
+    public DefaultReplicaCommitProof(ReplicaPrePrepare<O> prePrepare,
+                                     Collection<ReplicaCommit> commits,
+                                     int replicaId) {
+        this.prePrepare = prePrepare;
+        this.commits = commits;
+        this.replicaId = replicaId;
+    }
+
+    @Override
+    public ReplicaPrePrepare<O> prePrepare() {
+        return this.prePrepare;
+    }
+
+    @Override
+    public Collection<ReplicaCommit> commits() {
+        return this.commits;
+    }
+
+    @Override
+    public int replicaId() {
+        return this.replicaId;
+    }
+}
@@ -0,0 +1,23 @@
+package com.gmail.woodyc40.pbft.message;
+
+import java.util.Collection;
+
+public class DefaultReplicaFetch implements ReplicaFetch {
+    private final Collection<Long> seqNumbers;
+    private final int replicaId;
+
+    public DefaultReplicaFetch(Collection<Long> seqNumbers, int replicaId) {
+        this.seqNumbers = seqNumbers;
+        this.replicaId = replicaId;
+    }
+
+    @Override
+    public Collection<Long> seqNumbers() {
+        return this.seqNumbers;
+    }
+
+    @Override
+    public int replicaId() {
+        return this.replicaId;
+    }
+}
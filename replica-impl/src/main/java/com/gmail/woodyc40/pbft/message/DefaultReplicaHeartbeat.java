@@ -0,0 +1,21 @@
+package com.gmail.woodyc40.pbft.message;
+
+public class DefaultReplicaHeartbeat implements ReplicaHeartbeat {
+    private final int viewNumber;
+    private final int replicaId;
+
+    public DefaultReplicaHeartbeat(int viewNumber, int replicaId) {
+        this.viewNumber = viewNumber;
+        this.replicaId = replicaId;
+    }
+
+    @Override
+    public int viewNumber() {
+        return this.viewNumber;
+    }
+
+    @Override
+    public int replicaId() {
+        return this.replicaId;
+    }
+}
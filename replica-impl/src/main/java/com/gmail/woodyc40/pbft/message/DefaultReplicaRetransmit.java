@@ -0,0 +1,37 @@
+package com.gmail.woodyc40.pbft.message;
+
+import com.gmail.woodyc40.pbft.ReplicaMessageType;
+
+public class DefaultReplicaRetransmit implements ReplicaRetransmit {
+    private final int viewNumber;
+    private final long seqNumber;
+    private final ReplicaMessageType messageType;
+    private final int replicaId;
+
+    public DefaultReplicaRetransmit(int viewNumber, long seqNumber, ReplicaMessageType messageType, int replicaId) {
+        this.viewNumber = viewNumber;
+        this.seqNumber = seqNumber;
+        this.messageType = messageType;
+        this.replicaId = replicaId;
+    }
+
+    @Override
+    public int viewNumber() {
+        return this.viewNumber;
+    }
+
+    @Override
+    public long seqNumber() {
+        return this.seqNumber;
+    }
+
+    @Override
+    public ReplicaMessageType messageType() {
+        return this.messageType;
+    }
+
+    @Override
+    public int replicaId() {
+        return this.replicaId;
+    }
+}
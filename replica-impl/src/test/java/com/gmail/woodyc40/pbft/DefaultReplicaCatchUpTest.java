@@ -0,0 +1,94 @@
+package com.gmail.woodyc40.pbft;
+
+import com.gmail.woodyc40.pbft.message.DefaultReplicaFetch;
+import com.gmail.woodyc40.pbft.message.ReplicaCommitProof;
+import com.gmail.woodyc40.pbft.message.ReplicaFetch;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultReplicaCatchUpTest {
+    private static final long TIMEOUT = 40;
+    private static final int LAGGING = 3;
+
+    private static ReplicaCluster laggingCluster() {
+        ReplicaCluster cluster = new ReplicaCluster(TIMEOUT);
+
+        // Sequence number 0 is a stable checkpoint, which is not fetched
+        cluster.sendRequest(0, ReplicaCluster.request(0, 0));
+        cluster.deliverAll();
+
+        // The lagging replica misses every message for the next requests
+        for (int i = 1; i < 4; i++) {
+            cluster.sendRequest(0, ReplicaCluster.request(i, i));
+            cluster.deliverAll(envelope -> envelope.to == LAGGING);
+        }
+
+        // And then executes a later one, leaving a gap behind it
+        cluster.sendRequest(0, ReplicaCluster.request(4, 4));
+        cluster.deliverAll();
+
+        return cluster;
+    }
+
+    @Test
+    void fetchesMissingSequenceNumbers() throws InterruptedException {
+        ReplicaCluster cluster = laggingCluster();
+        ReplicaCluster.TestReplica lagging = cluster.replica(LAGGING);
+        assertEquals(Arrays.asList(0, 4), lagging.executed());
+        assertEquals(Arrays.asList(1L, 2L, 3L), lagging.log().missingSeqNumbers());
+
+        // Sequence numbers are only fetched after they have been missing
+        // for a while since they may still be committed out of order
+        lagging.checkCatchUp();
+        assertTrue(cluster.sent(ReplicaFetch.class).isEmpty());
+
+        Thread.sleep(TIMEOUT);
+        lagging.checkCatchUp();
+
+        List<ReplicaFetch> fetches = cluster.sentMessages(ReplicaFetch.class);
+        assertEquals(1, fetches.size());
+        assertEquals(Arrays.asList(1L, 2L, 3L), fetches.get(0).seqNumbers());
+
+        cluster.deliverAll();
+        assertEquals(Arrays.asList(0, 4, 1, 2, 3), lagging.executed());
+        assertTrue(lagging.log().missingSeqNumbers().isEmpty());
+    }
+
+    @Test
+    void executesOutOfOrderProofsInOrder() {
+        ReplicaCluster cluster = laggingCluster();
+        ReplicaCluster.TestReplica lagging = cluster.replica(LAGGING);
+
+        cluster.replica(0).recvFetch(new DefaultReplicaFetch(Arrays.asList(1L, 2L, 3L), LAGGING));
+        List<ReplicaCluster.Envelope> proofs = cluster.take(envelope -> envelope.message instanceof ReplicaCommitProof);
+        assertEquals(3, proofs.size());
+
+        // Deliver the certificates from the highest sequence number down
+        proofs.sort(Comparator.comparingLong(envelope ->
+                -((ReplicaCommitProof<?>) envelope.message).prePrepare().seqNumber()));
+        cluster.deliver(proofs.get(0));
+        cluster.deliver(proofs.get(1));
+
+        // The held certificates are not executed while the gap is still
+        // there, nor by the catch-up timer
+        assertEquals(Arrays.asList(0, 4), lagging.executed());
+        lagging.checkCatchUp();
+        assertEquals(Arrays.asList(0, 4), lagging.executed());
+
+        cluster.deliver(proofs.get(2));
+        assertEquals(Arrays.asList(0, 4, 1, 2, 3), lagging.executed());
+
+        // Duplicate certificates are ignored
+        for (ReplicaCluster.Envelope proof : proofs) {
+            cluster.deliver(proof);
+        }
+        lagging.checkCatchUp();
+        assertEquals(Arrays.asList(0, 4, 1, 2, 3), lagging.executed());
+        assertTrue(lagging.log().missingSeqNumbers().isEmpty());
+    }
+}
@@ -0,0 +1,48 @@
+package com.gmail.woodyc40.pbft;
+
+import com.gmail.woodyc40.pbft.message.ReplicaCheckpoint;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultReplicaCheckpointTest {
+    private static final int CHECKPOINT_INTERVAL = 10;
+    private static final int WATERMARK_INTERVAL = 40;
+
+    @Test
+    void sendsCheckpointOnceDigestCompletes() {
+        // Digests are only computed when the test runs them
+        List<Runnable> digests = new ArrayList<>();
+        ReplicaCluster cluster = new ReplicaCluster(10_000,
+                replicaId -> new DefaultReplicaMessageLog(100, CHECKPOINT_INTERVAL, WATERMARK_INTERVAL),
+                digests::add, DefaultReplica.NO_HEARTBEAT);
+
+        for (int i = 0; i <= CHECKPOINT_INTERVAL; i++) {
+            cluster.sendRequest(0, ReplicaCluster.request(i, i));
+            cluster.deliverAll();
+        }
+
+        // Sequence numbers 0 and 10 are checkpoints on every replica
+        assertEquals(2 * ReplicaCluster.REPLICAS, digests.size());
+        assertTrue(cluster.sent(ReplicaCheckpoint.class).isEmpty());
+        for (int i = 0; i < ReplicaCluster.REPLICAS; i++) {
+            assertFalse(cluster.replica(i).log().isBetweenWaterMarks(CHECKPOINT_INTERVAL + WATERMARK_INTERVAL));
+        }
+
+        // Nothing else happens on the replicas, the completed digests alone
+        // must cause the checkpoints to be sent
+        digests.forEach(Runnable::run);
+        assertEquals(2 * ReplicaCluster.REPLICAS * (ReplicaCluster.REPLICAS - 1),
+                cluster.sent(ReplicaCheckpoint.class).size());
+
+        cluster.deliverAll();
+        for (int i = 0; i < ReplicaCluster.REPLICAS; i++) {
+            ReplicaMessageLog log = cluster.replica(i).log();
+            assertTrue(log.isBetweenWaterMarks(CHECKPOINT_INTERVAL + WATERMARK_INTERVAL), "Replica " + i);
+            assertTrue(log.missingSeqNumbers().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.gmail.woodyc40.pbft;
+
+import com.gmail.woodyc40.pbft.message.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultReplicaDeferredTest {
+    private static final int CHECKPOINT_INTERVAL = 10;
+    private static final int WATERMARK_INTERVAL = 20;
+    private static final int LAGGING = 3;
+
+    private static ReplicaPrepare prepare(long seqNumber) {
+        return new DefaultReplicaPrepare(0, seqNumber, new byte[0], 1);
+    }
+
+    @Test
+    void replaysDeferredMessagesOnceWindowAdvances() {
+        ReplicaCluster cluster = new ReplicaCluster(10_000,
+                replicaId -> new DefaultReplicaMessageLog(100, CHECKPOINT_INTERVAL, WATERMARK_INTERVAL),
+                Runnable::run, DefaultReplica.NO_HEARTBEAT);
+
+        // The lagging replica does not receive the checkpoints of the others
+        // in time, so its water marks stay behind theirs
+        List<ReplicaCluster.Envelope> checkpoints = new ArrayList<>();
+        int requests = WATERMARK_INTERVAL + 2;
+        for (int i = 0; i < requests; i++) {
+            cluster.sendRequest(0, ReplicaCluster.request(i, i));
+            cluster.deliverAll(envelope -> envelope.to == LAGGING &&
+                    envelope.message instanceof ReplicaCheckpoint &&
+                    checkpoints.add(envelope));
+        }
+
+        // Sequence numbers beyond the high water mark are deferred
+        ReplicaCluster.TestReplica lagging = cluster.replica(LAGGING);
+        assertFalse(lagging.log().isBetweenWaterMarks(WATERMARK_INTERVAL + 1));
+        assertEquals(IntStream.rangeClosed(0, WATERMARK_INTERVAL).boxed().collect(Collectors.toList()),
+                lagging.executed());
+        for (int i = 0; i < ReplicaCluster.REPLICAS; i++) {
+            if (i != LAGGING) {
+                assertEquals(requests, cluster.replica(i).executed().size());
+            }
+        }
+
+        checkpoints.forEach(cluster::deliver);
+        cluster.deliverAll();
+
+        assertTrue(lagging.log().isBetweenWaterMarks(WATERMARK_INTERVAL + 1));
+        assertEquals(IntStream.range(0, requests).boxed().collect(Collectors.toList()), lagging.executed());
+    }
+
+    @Test
+    void dropsFurthestMessagesBeyondCapacity() {
+        DefaultReplicaMessageLog log = new DefaultReplicaMessageLog(100, CHECKPOINT_INTERVAL, WATERMARK_INTERVAL,
+                Long.MAX_VALUE, null, 2);
+
+        // Messages inside the window and beyond the next one are not deferred
+        assertFalse(log.defer(prepare(WATERMARK_INTERVAL), 0));
+        assertFalse(log.defer(prepare(2 * WATERMARK_INTERVAL + 1), 0));
+
+        assertTrue(log.defer(prepare(WATERMARK_INTERVAL + 5), 0));
+        assertTrue(log.defer(prepare(WATERMARK_INTERVAL + 6), 0));
+
+        // Full, so a message further ahead is dropped while a nearer one
+        // replaces the furthest
+        assertFalse(log.defer(prepare(WATERMARK_INTERVAL + 7), 0));
+        assertTrue(log.defer(prepare(WATERMARK_INTERVAL + 1), 0));
+
+        assertTrue(log.popDeferred(0).isEmpty());
+
+        for (int replicaId = 0; replicaId < 3; replicaId++) {
+            log.appendCheckpoint(new DefaultReplicaCheckpoint(CHECKPOINT_INTERVAL, new byte[0], replicaId), 1);
+        }
+        List<Long> replayed = log.popDeferred(0).stream()
+                .map(ReplicaPhaseMessage::seqNumber)
+                .collect(Collectors.toList());
+        assertEquals(List.of((long) WATERMARK_INTERVAL + 1, (long) WATERMARK_INTERVAL + 5), replayed);
+        assertTrue(log.popDeferred(0).isEmpty());
+    }
+}
@@ -0,0 +1,84 @@
+package com.gmail.woodyc40.pbft;
+
+import com.gmail.woodyc40.pbft.message.ReplicaHeartbeat;
+import com.gmail.woodyc40.pbft.message.ReplicaViewChange;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultReplicaHeartbeatTest {
+    private static final long HEARTBEAT_INTERVAL = 100;
+    private static final long MARGIN = HEARTBEAT_INTERVAL / 2;
+    private static final int BACKUP = 1;
+
+    private static ReplicaCluster newCluster() {
+        return new ReplicaCluster(10_000,
+                replicaId -> new DefaultReplicaMessageLog(100, 10, 40),
+                Runnable::run, HEARTBEAT_INTERVAL);
+    }
+
+    private static void sleepUntil(long start, long elapsed) throws InterruptedException {
+        long remaining = start + elapsed - System.currentTimeMillis();
+        if (remaining > 0) {
+            Thread.sleep(remaining);
+        }
+    }
+
+    private static List<Integer> votes(ReplicaCluster cluster) {
+        return cluster.sent(ReplicaViewChange.class).stream()
+                .filter(envelope -> envelope.from == BACKUP)
+                .map(envelope -> ((ReplicaViewChange) envelope.message).newViewNumber())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void votesAfterIncreasingSilence() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        ReplicaCluster cluster = newCluster();
+        ReplicaCluster.TestReplica backup = cluster.replica(BACKUP);
+
+        // The primary is given 3 intervals before the first vote
+        sleepUntil(start, 3 * HEARTBEAT_INTERVAL / 2);
+        backup.checkHeartbeat();
+        assertTrue(votes(cluster).isEmpty());
+
+        sleepUntil(start, 3 * HEARTBEAT_INTERVAL + MARGIN);
+        backup.checkHeartbeat();
+        assertEquals(Collections.singletonList(1), votes(cluster));
+
+        backup.checkHeartbeat();
+        assertEquals(Collections.singletonList(1), votes(cluster));
+
+        // The next vote waits for 3 * (1 + 2) intervals of silence in total
+        sleepUntil(start, 6 * HEARTBEAT_INTERVAL + MARGIN);
+        backup.checkHeartbeat();
+        assertEquals(Collections.singletonList(1), votes(cluster));
+
+        sleepUntil(start, 9 * HEARTBEAT_INTERVAL + MARGIN);
+        backup.checkHeartbeat();
+        assertEquals(Arrays.asList(1, 2), votes(cluster));
+    }
+
+    @Test
+    void heartbeatDefersVote() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        ReplicaCluster cluster = newCluster();
+        ReplicaCluster.TestReplica backup = cluster.replica(BACKUP);
+
+        // An idle primary sends a heartbeat after an interval
+        sleepUntil(start, 2 * HEARTBEAT_INTERVAL);
+        cluster.replica(0).checkHeartbeat();
+        assertEquals(ReplicaCluster.REPLICAS - 1, cluster.sent(ReplicaHeartbeat.class).size());
+        cluster.deliverAll();
+
+        sleepUntil(start, 3 * HEARTBEAT_INTERVAL + MARGIN);
+        backup.checkHeartbeat();
+        assertTrue(votes(cluster).isEmpty());
+    }
+}
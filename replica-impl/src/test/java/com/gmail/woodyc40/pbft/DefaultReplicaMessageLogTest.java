@@ -0,0 +1,145 @@
+package com.gmail.woodyc40.pbft;
+
+import com.gmail.woodyc40.pbft.message.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultReplicaMessageLogTest {
+    private static final int TOLERANCE = 1;
+    private static final int CHECKPOINT_INTERVAL = 10;
+    private static final int WATERMARK_INTERVAL = 40;
+    private static final String CLIENT_ID = "client";
+
+    private static byte[] digest(ReplicaRequest<Integer> request) {
+        return (request.timestamp() + ":" + request.operation()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] serialize(ReplicaTicket<?, ?> ticket) {
+        ReplicaRequest<?> request = ticket.request();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(ticket.viewNumber());
+            out.writeLong(ticket.seqNumber());
+            out.writeInt((Integer) request.operation());
+            out.writeLong(request.timestamp());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static ReplicaTicket<?, ?> deserialize(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int viewNumber = in.readInt();
+            long seqNumber = in.readLong();
+            ReplicaRequest<Integer> request = new DefaultReplicaRequest<>(in.readInt(), in.readLong(), CLIENT_ID);
+
+            DefaultReplicaTicket<Integer, Integer> ticket = new DefaultReplicaTicket<>(viewNumber, seqNumber);
+            ticket.append(new DefaultReplicaPrePrepare<>(viewNumber, seqNumber, digest(request), request));
+            return ticket;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void complete(ReplicaMessageLog log, long seqNumber) {
+        ReplicaRequest<Integer> request = new DefaultReplicaRequest<>((int) seqNumber * 2, seqNumber, CLIENT_ID);
+        ReplicaTicket<Integer, Integer> ticket = log.newTicket(0, seqNumber);
+        ticket.append(new DefaultReplicaPrePrepare<>(0, seqNumber, digest(request), request));
+
+        assertTrue(log.completeTicket(new DefaultReplicaRequestKey(CLIENT_ID, seqNumber), 0, seqNumber));
+    }
+
+    private static long countFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void reloadsSpilledTickets(@TempDir Path directory) throws IOException {
+        ReplicaLogStore store = new DefaultReplicaLogStore(directory,
+                DefaultReplicaMessageLogTest::serialize,
+                DefaultReplicaMessageLogTest::deserialize);
+
+        // Every completed ticket exceeds the budget, and is written to the
+        // store right away
+        DefaultReplicaMessageLog log = new DefaultReplicaMessageLog(100, CHECKPOINT_INTERVAL, WATERMARK_INTERVAL,
+                1, store, DefaultReplicaMessageLog.DEFAULT_DEFERRED_CAPACITY, Runnable::run);
+        for (long i = 0; i <= 2 * CHECKPOINT_INTERVAL; i++) {
+            complete(log, i);
+        }
+        assertEquals(2 * CHECKPOINT_INTERVAL + 1, countFiles(directory));
+        assertTrue(log.missingSeqNumbers().isEmpty());
+
+        for (long i = 0; i <= 2 * CHECKPOINT_INTERVAL; i++) {
+            assertTrue(log.isCompleted(i));
+
+            ReplicaTicket<Integer, Integer> ticket = log.getCompletedTicket(i);
+            assertNotNull(ticket);
+            assertEquals(i, ticket.seqNumber());
+            assertEquals(i * 2, (int) ticket.request().operation());
+            assertEquals(i, ticket.request().timestamp());
+
+            ReplicaTicket<Integer, Integer> cached = log.getTicketFromCache(new DefaultReplicaRequestKey(CLIENT_ID, i));
+            assertNotNull(cached);
+            assertEquals(i, cached.seqNumber());
+        }
+
+        // A stable checkpoint discards the spilled tickets it covers
+        for (int replicaId = 0; replicaId < 2 * TOLERANCE + 1; replicaId++) {
+            log.appendCheckpoint(new DefaultReplicaCheckpoint(CHECKPOINT_INTERVAL, new byte[0], replicaId), TOLERANCE);
+        }
+        assertEquals(CHECKPOINT_INTERVAL, countFiles(directory));
+        assertNull(log.getCompletedTicket(CHECKPOINT_INTERVAL));
+        assertNull(log.getTicketFromCache(new DefaultReplicaRequestKey(CLIENT_ID, CHECKPOINT_INTERVAL)));
+        assertNotNull(log.getCompletedTicket(CHECKPOINT_INTERVAL + 1));
+    }
+
+    @Test
+    void countsWireFormsTowardsBudget() {
+        AtomicInteger stored = new AtomicInteger();
+        ReplicaLogStore store = new ReplicaLogStore() {
+            @Override
+            public void store(ReplicaTicket<?, ?> ticket) {
+                stored.incrementAndGet();
+            }
+
+            @Override
+            public <O, R> ReplicaTicket<O, R> load(long seqNumber) {
+                return null;
+            }
+
+            @Override
+            public void discard(long checkpoint) {
+            }
+        };
+
+        // The same tickets only exceed the budget once the encoded forms
+        // that they keep alive are counted
+        long budget = 4096;
+        DefaultReplicaMessageLog plain = new DefaultReplicaMessageLog(100, CHECKPOINT_INTERVAL, WATERMARK_INTERVAL,
+                budget, store, DefaultReplicaMessageLog.DEFAULT_DEFERRED_CAPACITY, Runnable::run);
+        for (long i = 1; i <= 4; i++) {
+            complete(plain, i);
+        }
+        assertEquals(0, stored.get());
+
+        DefaultReplicaMessageLog wire = new DefaultReplicaMessageLog(100, CHECKPOINT_INTERVAL, WATERMARK_INTERVAL,
+                budget, store, DefaultReplicaMessageLog.DEFAULT_DEFERRED_CAPACITY, Runnable::run, message -> budget);
+        for (long i = 1; i <= 4; i++) {
+            complete(wire, i);
+        }
+        assertTrue(stored.get() > 0);
+    }
+}
@@ -0,0 +1,91 @@
+package com.gmail.woodyc40.pbft;
+
+import com.gmail.woodyc40.pbft.message.ReplicaPrePrepare;
+import com.gmail.woodyc40.pbft.message.ReplicaPrepare;
+import com.gmail.woodyc40.pbft.message.ReplicaRetransmit;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultReplicaRetransmitTest {
+    // Stalled tickets are retransmitted after an eighth of the timeout
+    private static final long TIMEOUT = 800;
+    private static final long RETRANSMIT_DELAY = TIMEOUT / 8;
+    private static final int STALLED = 3;
+
+    private static ReplicaCluster completeCheckpoint() {
+        // Sequence number 0 is a checkpoint, which would discard the stalled
+        // ticket once it becomes stable on the other replicas
+        ReplicaCluster cluster = new ReplicaCluster(TIMEOUT);
+        cluster.sendRequest(0, ReplicaCluster.request(0, 0));
+        cluster.deliverAll();
+        cluster.clearSent();
+
+        return cluster;
+    }
+
+    private static Set<Integer> retransmitTargets(ReplicaCluster cluster, ReplicaMessageType type) {
+        List<ReplicaCluster.Envelope> retransmits = cluster.sent(ReplicaRetransmit.class);
+        for (ReplicaCluster.Envelope envelope : retransmits) {
+            ReplicaRetransmit retransmit = (ReplicaRetransmit) envelope.message;
+            assertEquals(STALLED, envelope.from);
+            assertEquals(STALLED, retransmit.replicaId());
+            assertEquals(type, retransmit.messageType());
+            assertEquals(1, retransmit.seqNumber());
+        }
+
+        return retransmits.stream()
+                .map(envelope -> envelope.to)
+                .collect(Collectors.toSet());
+    }
+
+    @Test
+    void requestsMissingPreparesFromBackups() throws InterruptedException {
+        ReplicaCluster cluster = completeCheckpoint();
+        ReplicaCluster.TestReplica stalled = cluster.replica(STALLED);
+
+        // Lose every PREPARE sent to the stalled replica, which then never
+        // becomes prepared even though the others commit the request
+        cluster.sendRequest(0, ReplicaCluster.request(1, 1));
+        cluster.deliverAll(envelope -> envelope.to == STALLED && envelope.message instanceof ReplicaPrepare);
+        assertEquals(Collections.singletonList(0), stalled.executed());
+
+        stalled.checkRetransmit();
+        assertTrue(cluster.sent(ReplicaRetransmit.class).isEmpty());
+
+        Thread.sleep(2 * RETRANSMIT_DELAY);
+        stalled.checkRetransmit();
+
+        // The primary does not send a PREPARE
+        assertEquals(Set.of(1, 2), retransmitTargets(cluster, ReplicaMessageType.PREPARE));
+
+        cluster.deliverAll();
+        assertEquals(Arrays.asList(0, 1), stalled.executed());
+    }
+
+    @Test
+    void requestsMissingPrePrepareFromPrimary() throws InterruptedException {
+        ReplicaCluster cluster = completeCheckpoint();
+        ReplicaCluster.TestReplica stalled = cluster.replica(STALLED);
+
+        cluster.sendRequest(0, ReplicaCluster.request(1, 1));
+        cluster.deliverAll(envelope -> envelope.to == STALLED && envelope.message instanceof ReplicaPrePrepare);
+        assertEquals(Collections.singletonList(0), stalled.executed());
+
+        Thread.sleep(2 * RETRANSMIT_DELAY);
+        stalled.checkRetransmit();
+
+        // Nothing else can be accepted without the PRE-PREPARE, so only the
+        // primary is asked for it
+        assertEquals(Collections.singleton(0), retransmitTargets(cluster, ReplicaMessageType.PRE_PREPARE));
+
+        cluster.deliverAll();
+        assertEquals(Arrays.asList(0, 1), stalled.executed());
+    }
+}
@@ -0,0 +1,76 @@
+package com.gmail.woodyc40.pbft;
+
+import com.gmail.woodyc40.pbft.message.ReplicaPrePrepare;
+import com.gmail.woodyc40.pbft.message.ReplicaRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultReplicaRetryTest {
+    private static void retry(ReplicaCluster cluster, ReplicaRequest<Integer> request) {
+        // A client that times out multicasts its request to every replica
+        for (int i = 0; i < ReplicaCluster.REPLICAS; i++) {
+            cluster.sendRequest(i, request);
+        }
+    }
+
+    private static Set<Long> prePreparedSeqNumbers(ReplicaCluster cluster) {
+        return cluster.sentMessages(ReplicaPrePrepare.class).stream()
+                .map(ReplicaPrePrepare::seqNumber)
+                .collect(Collectors.toSet());
+    }
+
+    @Test
+    void inFlightRetryIsNotReassigned() {
+        ReplicaCluster cluster = new ReplicaCluster(10_000);
+        ReplicaRequest<Integer> request = ReplicaCluster.request(1, 1);
+
+        // The retry reaches the backups before the PRE-PREPARE does, so each
+        // of them forwards it to the primary
+        cluster.sendRequest(0, request);
+        retry(cluster, request);
+        cluster.deliverAll();
+
+        assertTrue(cluster.sent(ReplicaRequest.class).stream()
+                .anyMatch(envelope -> envelope.from != -1 && envelope.to == 0));
+        assertEquals(Collections.singleton(0L), prePreparedSeqNumbers(cluster));
+        for (int i = 0; i < ReplicaCluster.REPLICAS; i++) {
+            assertEquals(Collections.singletonList(1), cluster.replica(i).executed(), "Replica " + i);
+        }
+        assertEquals(ReplicaCluster.REPLICAS, cluster.replies().size());
+    }
+
+    @Test
+    void completedRetryResendsReply() {
+        ReplicaCluster cluster = new ReplicaCluster(10_000);
+        ReplicaRequest<Integer> request = ReplicaCluster.request(1, 1);
+
+        // Sequence number 0 is a checkpoint, which discards the cached reply
+        // once it becomes stable
+        cluster.sendRequest(0, ReplicaCluster.request(0, 0));
+        cluster.sendRequest(0, request);
+        cluster.deliverAll();
+        assertEquals(2 * ReplicaCluster.REPLICAS, cluster.replies().size());
+
+        retry(cluster, request);
+        cluster.deliverAll();
+
+        // Every replica answers from its cache without forwarding or
+        // ordering the request again
+        assertEquals(Set.of(0L, 1L), prePreparedSeqNumbers(cluster));
+        assertEquals(3 * ReplicaCluster.REPLICAS, cluster.replies().size());
+        for (int i = 0; i < ReplicaCluster.REPLICAS; i++) {
+            assertEquals(Arrays.asList(0, 1), cluster.replica(i).executed(), "Replica " + i);
+        }
+
+        // A new request from the same client is still ordered
+        cluster.sendRequest(0, ReplicaCluster.request(2, 2));
+        cluster.deliverAll();
+        assertEquals(Set.of(0L, 1L, 2L), prePreparedSeqNumbers(cluster));
+    }
+}
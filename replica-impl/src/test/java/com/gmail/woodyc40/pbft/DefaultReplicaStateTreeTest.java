@@ -0,0 +1,146 @@
+package com.gmail.woodyc40.pbft;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultReplicaStateTreeTest {
+    private static final int PARTITION_BYTES = 32;
+
+    private static byte[][] state(int partitions) {
+        return new byte[partitions][PARTITION_BYTES];
+    }
+
+    private static byte[][] copy(byte[][] state) {
+        byte[][] copy = new byte[state.length][];
+        for (int i = 0; i < state.length; i++) {
+            copy[i] = state[i].clone();
+        }
+
+        return copy;
+    }
+
+    private static DefaultReplicaStateTree tree(byte[][] state) {
+        return new DefaultReplicaStateTree(state.length, partition -> state[partition].clone());
+    }
+
+    private static byte[] rebuild(byte[][] state) {
+        return tree(state).root();
+    }
+
+    private static void update(Random random, byte[][] state, ReplicaStateTree tree) {
+        int partition = random.nextInt(state.length);
+        random.nextBytes(state[partition]);
+        tree.markDirty(partition);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 7, 8, 13 })
+    void incrementalRootMatchesRebuild(int partitions) {
+        Random random = new Random(partitions);
+        byte[][] state = state(partitions);
+        DefaultReplicaStateTree tree = tree(state);
+        assertArrayEquals(rebuild(state), tree.root());
+
+        for (int round = 0; round < 50; round++) {
+            int updates = random.nextInt(partitions + 1);
+            for (int i = 0; i < updates; i++) {
+                update(random, state, tree);
+            }
+
+            assertArrayEquals(rebuild(state), tree.root(), "Round " + round);
+        }
+    }
+
+    @Test
+    void modifiedStateChangesRoot() {
+        byte[][] state = state(5);
+        DefaultReplicaStateTree tree = tree(state);
+        byte[] root = tree.root();
+
+        state[3][0] = 1;
+        assertArrayEquals(root, tree.root(), "Only dirty partitions are rehashed");
+
+        tree.markDirty(3);
+        assertFalse(Arrays.equals(root, tree.root()));
+    }
+
+    @Test
+    void snapshotsDigestTheStateWhenTaken() {
+        Random random = new Random(0);
+        byte[][] state = state(13);
+        DefaultReplicaStateTree tree = tree(state);
+        tree.root();
+
+        List<ReplicaStateSnapshot> snapshots = new ArrayList<>();
+        List<byte[]> expected = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 3; j++) {
+                update(random, state, tree);
+            }
+
+            snapshots.add(tree.snapshot());
+            expected.add(rebuild(copy(state)));
+        }
+
+        // Modified after the last snapshot, which must not be visible to it
+        update(random, state, tree);
+
+        // Digest the later snapshots first, which must still apply the
+        // earlier ones beforehand
+        assertArrayEquals(expected.get(2), snapshots.get(2).digest());
+        assertArrayEquals(expected.get(3), snapshots.get(3).digest());
+        assertArrayEquals(expected.get(0), snapshots.get(0).digest());
+        assertArrayEquals(expected.get(1), snapshots.get(1).digest());
+
+        assertArrayEquals(rebuild(state), tree.root());
+    }
+
+    @Test
+    void snapshotRequiresCopier() {
+        DefaultReplicaStateTree tree = new DefaultReplicaStateTree(4, (digest, partition) -> {
+        });
+        assertThrows(IllegalStateException.class, tree::snapshot);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 8, 13 })
+    void findsDifferingPartitions(int partitions) {
+        byte[][] local = state(partitions);
+        byte[][] remote = copy(local);
+
+        DefaultReplicaStateTree localTree = tree(local);
+        DefaultReplicaStateTree remoteTree = tree(remote);
+        localTree.root();
+        remoteTree.root();
+        assertTrue(localTree.differingPartitions(remoteTree::nodeDigest).isEmpty());
+
+        Set<Integer> modified = new TreeSet<>();
+        modified.add(0);
+        modified.add(partitions - 1);
+        modified.add(partitions / 2);
+        for (int partition : modified) {
+            remote[partition][0]++;
+            remoteTree.markDirty(partition);
+        }
+        remoteTree.root();
+
+        List<Integer> differing = new ArrayList<>(localTree.differingPartitions(remoteTree::nodeDigest));
+        Collections.sort(differing);
+        assertEquals(new ArrayList<>(modified), differing);
+    }
+
+    @Test
+    void rejectsInvalidPartitions() {
+        assertThrows(IllegalArgumentException.class, () -> tree(state(0)));
+
+        DefaultReplicaStateTree tree = tree(state(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.markDirty(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.markDirty(-1));
+        assertThrows(IllegalStateException.class, () -> tree.nodeDigest(0, 0));
+    }
+}
@@ -0,0 +1,144 @@
+package com.gmail.woodyc40.pbft;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueuedReplicaTransportTest {
+    private static final int CAPACITY = 4;
+
+    /**
+     * A message which counts its references in the same way
+     * as a pooled buffer.
+     */
+    private static final class Message {
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        void retain() {
+            this.refs.incrementAndGet();
+        }
+
+        void release() {
+            if (this.refs.decrementAndGet() < 0) {
+                throw new IllegalStateException("Message released more times than it was retained");
+            }
+        }
+    }
+
+    /**
+     * Blocks every send until opened, releasing the
+     * reference of each send as a pool-aware transport
+     * does.
+     */
+    private static final class BlockingTransport implements ReplicaTransport<Message> {
+        private final CountDownLatch open = new CountDownLatch(1);
+
+        @Override
+        public int countKnownReplicas() {
+            return 2;
+        }
+
+        @Override
+        public IntStream knownReplicaIds() {
+            return IntStream.of(1, 2);
+        }
+
+        @Override
+        public void sendMessage(int replicaId, Message data) {
+            try {
+                this.open.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                data.release();
+            }
+        }
+
+        @Override
+        public void multicast(Message data, int... ignoredReplicas) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sendReply(String clientId, Message reply) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static void await(QueuedReplicaTransport<Message> transport) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((transport.pendingMessages(1) > 0 || transport.pendingMessages(2) > 0) &&
+                System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ReplicaOverflowPolicy.class)
+    void releasesDroppedMessages(ReplicaOverflowPolicy policy) throws Exception {
+        BlockingTransport delegate = new BlockingTransport();
+        List<Message> messages = new ArrayList<>();
+
+        QueuedReplicaTransport<Message> transport = new QueuedReplicaTransport<>(delegate, CAPACITY, policy,
+                TimeUnit.SECONDS.toMillis(10), Message::retain, Message::release);
+        try {
+            // Enough to overflow both queues while every sender is blocked
+            int dropped = 0;
+            for (int i = 0; i < 4 * CAPACITY; i++) {
+                Message message = new Message();
+                messages.add(message);
+                if (i % 2 == 0) {
+                    transport.multicast(message);
+                } else if (!transport.offer(1, message)) {
+                    dropped++;
+                }
+            }
+
+            assertTrue(dropped > 0);
+            assertTrue(transport.isIsolated(1));
+
+            delegate.open.countDown();
+            await(transport);
+        } finally {
+            transport.close();
+        }
+
+        for (Message message : messages) {
+            assertEquals(0, message.refs.get());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ReplicaOverflowPolicy.class)
+    void releasesQueuedMessagesOnClose(ReplicaOverflowPolicy policy) {
+        BlockingTransport delegate = new BlockingTransport();
+        List<Message> messages = new ArrayList<>();
+
+        QueuedReplicaTransport<Message> transport = new QueuedReplicaTransport<>(delegate, CAPACITY, policy,
+                TimeUnit.SECONDS.toMillis(10), Message::retain, Message::release);
+        for (int i = 0; i < CAPACITY; i++) {
+            Message message = new Message();
+            messages.add(message);
+            transport.multicast(message);
+        }
+
+        // The blocked sends are interrupted by closing the transport
+        transport.close();
+
+        Message late = new Message();
+        assertFalse(transport.offer(1, late));
+        messages.add(late);
+
+        for (Message message : messages) {
+            assertEquals(0, message.refs.get());
+        }
+    }
+}
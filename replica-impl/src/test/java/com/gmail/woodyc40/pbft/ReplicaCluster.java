@@ -0,0 +1,312 @@
+package com.gmail.woodyc40.pbft;
+
+import com.gmail.woodyc40.pbft.message.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * An in-memory cluster of replicas which exchange messages
+ * through a queue drained by the test, so that messages can
+ * be inspected, reordered or dropped before they are
+ * delivered.
+ */
+final class ReplicaCluster {
+    static final int TOLERANCE = 1;
+    static final int REPLICAS = 3 * TOLERANCE + 1;
+    static final String CLIENT_ID = "client";
+
+    private static final ReplicaEncoder<Integer, Integer, Object> ENCODER = new IdentityEncoder();
+    private static final ReplicaDigester<Integer> DIGESTER = request ->
+            (request.clientId() + ':' + request.timestamp() + ':' + request.operation()).getBytes(StandardCharsets.UTF_8);
+
+    private final List<TestReplica> replicas = new ArrayList<>();
+    private final Deque<Envelope> queue = new ArrayDeque<>();
+    private final List<Envelope> sent = new ArrayList<>();
+    private final List<ReplicaReply<Integer>> replies = new ArrayList<>();
+
+    ReplicaCluster(long timeout) {
+        this(timeout, replicaId -> new DefaultReplicaMessageLog(100, 10, 40), Runnable::run,
+                DefaultReplica.NO_HEARTBEAT);
+    }
+
+    ReplicaCluster(long timeout,
+                   IntFunction<ReplicaMessageLog> logs,
+                   Executor checkpointExecutor,
+                   long heartbeatInterval) {
+        for (int i = 0; i < REPLICAS; i++) {
+            this.replicas.add(new TestReplica(i, timeout, logs.apply(i), new Transport(i),
+                    checkpointExecutor, heartbeatInterval));
+        }
+    }
+
+    static ReplicaRequest<Integer> request(int operation, long timestamp) {
+        return new DefaultReplicaRequest<>(operation, timestamp, CLIENT_ID);
+    }
+
+    TestReplica replica(int replicaId) {
+        return this.replicas.get(replicaId);
+    }
+
+    /**
+     * Queues a request from the client to the given replica.
+     */
+    void sendRequest(int replicaId, ReplicaRequest<Integer> request) {
+        this.enqueue(new Envelope(-1, replicaId, request));
+    }
+
+    /**
+     * Delivers every queued message, including those sent
+     * in response, until the queue is empty.
+     *
+     * @return the number of messages delivered
+     */
+    int deliverAll() {
+        return this.deliverAll(envelope -> false);
+    }
+
+    /**
+     * Delivers every queued message that does not match the
+     * given predicate, dropping those that do.
+     *
+     * @param drop whether to drop the message
+     * @return the number of messages delivered
+     */
+    int deliverAll(Predicate<Envelope> drop) {
+        int delivered = 0;
+        Envelope envelope;
+        while ((envelope = this.queue.poll()) != null) {
+            if (!drop.test(envelope)) {
+                this.deliver(envelope);
+                delivered++;
+            }
+        }
+
+        return delivered;
+    }
+
+    /**
+     * Removes the queued messages matching the given
+     * predicate so that the test may deliver them itself.
+     */
+    List<Envelope> take(Predicate<Envelope> filter) {
+        List<Envelope> taken = new ArrayList<>();
+        for (Iterator<Envelope> it = this.queue.iterator(); it.hasNext(); ) {
+            Envelope envelope = it.next();
+            if (filter.test(envelope)) {
+                taken.add(envelope);
+                it.remove();
+            }
+        }
+
+        return taken;
+    }
+
+    @SuppressWarnings("unchecked")
+    void deliver(Envelope envelope) {
+        TestReplica replica = this.replicas.get(envelope.to);
+        Object message = envelope.message;
+        if (message instanceof ReplicaRequest) {
+            replica.recvRequest((ReplicaRequest<Integer>) message);
+        } else if (message instanceof ReplicaPrePrepare) {
+            replica.recvPrePrepare((ReplicaPrePrepare<Integer>) message);
+        } else if (message instanceof ReplicaPrepare) {
+            replica.recvPrepare((ReplicaPrepare) message);
+        } else if (message instanceof ReplicaCommit) {
+            replica.recvCommit((ReplicaCommit) message);
+        } else if (message instanceof ReplicaCheckpoint) {
+            replica.recvCheckpoint((ReplicaCheckpoint) message);
+        } else if (message instanceof ReplicaViewChange) {
+            replica.recvViewChange((ReplicaViewChange) message);
+        } else if (message instanceof ReplicaNewView) {
+            replica.recvNewView((ReplicaNewView) message);
+        } else if (message instanceof ReplicaFetch) {
+            replica.recvFetch((ReplicaFetch) message);
+        } else if (message instanceof ReplicaCommitProof) {
+            replica.recvCommitProof((ReplicaCommitProof<Integer>) message);
+        } else if (message instanceof ReplicaRetransmit) {
+            replica.recvRetransmit((ReplicaRetransmit) message);
+        } else if (message instanceof ReplicaHeartbeat) {
+            replica.recvHeartbeat((ReplicaHeartbeat) message);
+        } else {
+            throw new IllegalArgumentException("Unknown message: " + message);
+        }
+    }
+
+    /**
+     * Obtains every message of the given type sent since
+     * the cluster was created or last cleared.
+     */
+    <M> List<Envelope> sent(Class<M> type) {
+        return this.sent.stream()
+                .filter(envelope -> type.isInstance(envelope.message))
+                .collect(Collectors.toList());
+    }
+
+    <M> List<M> sentMessages(Class<M> type) {
+        return this.sent(type).stream()
+                .map(envelope -> type.cast(envelope.message))
+                .collect(Collectors.toList());
+    }
+
+    void clearSent() {
+        this.sent.clear();
+    }
+
+    List<ReplicaReply<Integer>> replies() {
+        return this.replies;
+    }
+
+    private void enqueue(Envelope envelope) {
+        this.queue.add(envelope);
+        this.sent.add(envelope);
+    }
+
+    static final class Envelope {
+        final int from;
+        final int to;
+        final Object message;
+
+        Envelope(int from, int to, Object message) {
+            this.from = from;
+            this.to = to;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return this.from + " -> " + this.to + ": " + this.message.getClass().getSimpleName();
+        }
+    }
+
+    static final class TestReplica extends DefaultReplica<Integer, Integer, Object> {
+        // The operations in the order that they were executed
+        private final List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+
+        TestReplica(int replicaId,
+                    long timeout,
+                    ReplicaMessageLog log,
+                    ReplicaTransport<Object> transport,
+                    Executor checkpointExecutor,
+                    long heartbeatInterval) {
+            super(replicaId, TOLERANCE, timeout, log, ENCODER, DIGESTER, transport,
+                    checkpointExecutor, Runnable::run, heartbeatInterval);
+        }
+
+        List<Integer> executed() {
+            return this.executed;
+        }
+
+        @Override
+        public Integer compute(Integer operation) {
+            this.executed.add(operation);
+            return operation + 1;
+        }
+    }
+
+    private final class Transport implements ReplicaTransport<Object> {
+        private final int replicaId;
+
+        Transport(int replicaId) {
+            this.replicaId = replicaId;
+        }
+
+        @Override
+        public int countKnownReplicas() {
+            return REPLICAS;
+        }
+
+        @Override
+        public IntStream knownReplicaIds() {
+            return IntStream.range(0, REPLICAS);
+        }
+
+        @Override
+        public void sendMessage(int replicaId, Object data) {
+            ReplicaCluster.this.enqueue(new Envelope(this.replicaId, replicaId, data));
+        }
+
+        @Override
+        public void multicast(Object data, int... ignoredReplicas) {
+            Set<Integer> ignored = Arrays.stream(ignoredReplicas).boxed().collect(Collectors.toSet());
+            for (int i = 0; i < REPLICAS; i++) {
+                if (!ignored.contains(i)) {
+                    this.sendMessage(i, data);
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void sendReply(String clientId, Object reply) {
+            ReplicaCluster.this.replies.add((ReplicaReply<Integer>) reply);
+        }
+    }
+
+    private static final class IdentityEncoder implements ReplicaEncoder<Integer, Integer, Object> {
+        @Override
+        public Object encodeRequest(ReplicaRequest<Integer> request) {
+            return request;
+        }
+
+        @Override
+        public Object encodePrePrepare(ReplicaPrePrepare<Integer> prePrepare) {
+            return prePrepare;
+        }
+
+        @Override
+        public Object encodePrepare(ReplicaPrepare prepare) {
+            return prepare;
+        }
+
+        @Override
+        public Object encodeCommit(ReplicaCommit commit) {
+            return commit;
+        }
+
+        @Override
+        public Object encodeReply(ReplicaReply<Integer> reply) {
+            return reply;
+        }
+
+        @Override
+        public Object encodeCheckpoint(ReplicaCheckpoint checkpoint) {
+            return checkpoint;
+        }
+
+        @Override
+        public Object encodeViewChange(ReplicaViewChange viewChange) {
+            return viewChange;
+        }
+
+        @Override
+        public Object encodeNewView(ReplicaNewView newView) {
+            return newView;
+        }
+
+        @Override
+        public Object encodeFetch(ReplicaFetch fetch) {
+            return fetch;
+        }
+
+        @Override
+        public Object encodeCommitProof(ReplicaCommitProof<Integer> proof) {
+            return proof;
+        }
+
+        @Override
+        public Object encodeRetransmit(ReplicaRetransmit retransmit) {
+            return retransmit;
+        }
+
+        @Override
+        public Object encodeHeartbeat(ReplicaHeartbeat heartbeat) {
+            return heartbeat;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.gmail.woodyc40.pbft;
+
+/**
+ * A {@link ReplicaTransport} whose send operations never
+ * block the calling thread.
+ *
+ * <p>Messages are placed into a bounded outbound queue for
+ * each destination replica and written independently of
+ * the other replicas, so a slow or unresponsive replica
+ * cannot delay the messages sent to the rest. Because PBFT
+ * only requires {@code 2f + 1} replicas to make progress,
+ * messages to a replica which falls behind may be dropped;
+ * it recovers them later through the retransmission and
+ * catch-up mechanisms.</p>
+ *
+ * @param <T> the encoded message type
+ */
+public interface AsyncReplicaTransport<T> extends ReplicaTransport<T> {
+    /**
+     * Attempts to queue the given message to be sent to
+     * the given replica without blocking.
+     *
+     * <p>{@link #sendMessage(int, Object)} and {@link
+     * #multicast(Object, int...)} behave in the same way
+     * but do not report the outcome.</p>
+     *
+     * @param replicaId the replica to send the message
+     * @param data the encoded message
+     * @return {@code true} if the message was queued,
+     * {@code false} if it was dropped
+     */
+    boolean offer(int replicaId, T data);
+
+    /**
+     * Obtains the number of messages which are queued to
+     * be sent to the given replica.
+     *
+     * @param replicaId the replica ID
+     * @return the number of queued messages
+     */
+    int pendingMessages(int replicaId);
+
+    /**
+     * Determines whether the given replica is currently
+     * isolated because it has not kept up with the
+     * messages sent to it, in which case messages to that
+     * replica are dropped until it catches up.
+     *
+     * @param replicaId the replica ID
+     * @return {@code true} if messages to the replica are
+     * being dropped
+     */
+    boolean isIsolated(int replicaId);
+}
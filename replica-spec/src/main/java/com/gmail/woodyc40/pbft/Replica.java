@@ -16,10 +16,16 @@ import java.util.Collection;
  * - {@link #recvCheckpoint(ReplicaCheckpoint)}
  * - {@link #recvViewChange(ReplicaViewChange)}
  * - {@link #recvNewView(ReplicaNewView)}
+ * - {@link #recvFetch(ReplicaFetch)}
+ * - {@link #recvCommitProof(ReplicaCommitProof)}
+ * - {@link #recvRetransmit(ReplicaRetransmit)}
+ * - {@link #recvHeartbeat(ReplicaHeartbeat)}
  *
  * In addition, users are also expected to call
- * {@link #checkTimeout(ReplicaRequestKey)} in a loop in
- * order to maintain liveness.</p>
+ * {@link #checkTimeout(ReplicaRequestKey)},
+ * {@link #checkCatchUp()}, {@link #checkRetransmit()} and
+ * {@link #checkHeartbeat()} in a loop in order to maintain
+ * liveness.</p>
  *
  * @param <O> the operation type
  * @param <R> the result type of the operation
@@ -51,6 +57,15 @@ public interface Replica<O, R, T> {
      */
     long timeoutMs();
 
+    /**
+     * The number of milliseconds between the heartbeats
+     * multicasted by the primary while it is idle.
+     *
+     * @return the heartbeat interval, or {@code 0} if
+     * heartbeats are disabled
+     */
+    long heartbeatIntervalMs();
+
     /**
      * Obtains this {@link Replica}'s message log as
      * specified in the PBFT algorithm;
@@ -121,6 +136,56 @@ public interface Replica<O, R, T> {
      */
     long checkTimeout(ReplicaRequestKey key);
 
+    /**
+     * Checks the message log for sequence numbers that
+     * have been missed below the highest committed
+     * sequence number, sending a {@link ReplicaFetch} to
+     * a peer for the ones that have remained missing for
+     * longer than the catch-up delay.
+     *
+     * <p>This allows a replica that has lost messages to
+     * catch up from the commit certificates of its peers
+     * before the request timers cause a view change.</p>
+     *
+     * @return the time to wait before calling this method
+     * again
+     */
+    long checkCatchUp();
+
+    /**
+     * Checks the pending tickets for those which have been
+     * stuck in the same phase for longer than the
+     * retransmission delay, sending a {@link
+     * ReplicaRetransmit} for each missing phase message to
+     * the replica that should have sent it.
+     *
+     * <p>This allows a replica to recover from lost
+     * PRE-PREPARE, PREPARE and COMMIT messages before the
+     * request timers cause a view change.</p>
+     *
+     * @return the time to wait before calling this method
+     * again
+     */
+    long checkRetransmit();
+
+    /**
+     * Multicasts a {@link ReplicaHeartbeat} if this
+     * replica is the primary and has not sent a
+     * PRE-PREPARE within the heartbeat interval, otherwise
+     * votes for a view change if nothing has been received
+     * from the primary for several heartbeat intervals.
+     *
+     * <p>This allows a failed primary to be replaced
+     * within a small multiple of the heartbeat interval,
+     * even when there are no outstanding requests to time
+     * out. Nothing is done if heartbeats are
+     * disabled.</p>
+     *
+     * @return the time to wait before calling this method
+     * again
+     */
+    long checkHeartbeat();
+
     /**
      * Called by the replica user to indicate
      * that a PBFT {@code REQUEST} has been received.
@@ -253,14 +318,102 @@ public interface Replica<O, R, T> {
      */
     void sendNewView(ReplicaNewView newView);
 
+    /**
+     * Called by users to indicate that a replica has
+     * requested the commit certificates for sequence
+     * numbers that it has missed.
+     *
+     * @param fetch the message received
+     */
+    void recvFetch(ReplicaFetch fetch);
+
+    /**
+     * Sends a fetch message to the given replica in order
+     * to catch up on missing sequence numbers.
+     *
+     * @param replicaId the replica to request from
+     * @param fetch     the message to send
+     */
+    void sendFetch(int replicaId, ReplicaFetch fetch);
+
+    /**
+     * Called by users to indicate that a commit
+     * certificate has been received in response to a
+     * fetch message sent by this replica.
+     *
+     * @param proof the message received
+     */
+    void recvCommitProof(ReplicaCommitProof<O> proof);
+
+    /**
+     * Sends the commit certificate for a sequence number
+     * to the replica which requested it.
+     *
+     * @param replicaId the replica that sent the fetch
+     * @param proof     the message to send
+     */
+    void sendCommitProof(int replicaId, ReplicaCommitProof<O> proof);
+
+    /**
+     * Called by users to indicate that a replica has
+     * requested a phase message that it has not received.
+     *
+     * @param retransmit the message received
+     */
+    void recvRetransmit(ReplicaRetransmit retransmit);
+
+    /**
+     * Sends a retransmit message to the given replica in
+     * order to obtain a missing phase message.
+     *
+     * @param replicaId  the replica to request from
+     * @param retransmit the message to send
+     */
+    void sendRetransmit(int replicaId, ReplicaRetransmit retransmit);
+
+    /**
+     * Called by users to indicate that a heartbeat has
+     * been received from the primary.
+     *
+     * @param heartbeat the message received
+     */
+    void recvHeartbeat(ReplicaHeartbeat heartbeat);
+
+    /**
+     * Multicasts a heartbeat to the other replicas to
+     * indicate that this replica, the primary, is alive.
+     *
+     * @param heartbeat the message to send
+     */
+    void sendHeartbeat(ReplicaHeartbeat heartbeat);
+
     /**
      * Produces a digest of the current replica state in
      * order for other replicas to verify its status.
      *
+     * <p>This is called every time a checkpoint is
+     * reached, so implementations with large states should
+     * avoid rehashing the entire state, e.g. by using a
+     * {@link ReplicaStateTree}.</p>
+     *
      * @return the digest of the currentstate
      */
     byte[] digestState();
 
+    /**
+     * Captures a copy-on-write view of the current replica
+     * state when a checkpoint is reached so that the state
+     * digest can be computed without pausing execution.
+     *
+     * <p>This is called on the thread executing requests,
+     * so it should do as little work as possible, e.g.
+     * recording the partitions that have been modified
+     * since the last checkpoint.</p>
+     *
+     * @return the snapshot of the current state
+     */
+    ReplicaStateSnapshot snapshotState();
+
     /**
      * Performs the computation signified by the object
      * which represents the operation to perform on this
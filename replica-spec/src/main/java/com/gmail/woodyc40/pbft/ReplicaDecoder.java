@@ -0,0 +1,120 @@
+package com.gmail.woodyc40.pbft;
+
+import com.gmail.woodyc40.pbft.message.*;
+
+/**
+ * The counterpart to the {@link ReplicaEncoder} which
+ * transforms messages received through a {@link
+ * ReplicaTransport} back into their message objects.
+ *
+ * <p>A {@link ReplicaDecoder} should verify message
+ * signatures and MACs as it sees fit, throwing an exception
+ * for messages which fail verification.</p>
+ *
+ * <p>The type of the message is determined first so that
+ * only the decoding method for that type needs to be
+ * called. This is done by the {@code ReplicaDispatcher}
+ * provided by the default implementation.</p>
+ *
+ * @param <O> the operation type handled by this decoder
+ * @param <T> the common transmissible type
+ */
+public interface ReplicaDecoder<O, T> {
+    /**
+     * Determines the type of the given encoded message.
+     *
+     * @param data the encoded message
+     * @return the message type
+     * @throws IllegalArgumentException if the message type
+     * is not recognized
+     */
+    ReplicaMessageType type(T data);
+
+    /**
+     * Decodes a request message.
+     *
+     * @param data the encoded request message
+     * @return the request
+     */
+    ReplicaRequest<O> decodeRequest(T data);
+
+    /**
+     * Decodes a pre-prepare message.
+     *
+     * @param data the encoded pre-prepare message
+     * @return the pre-prepare message
+     */
+    ReplicaPrePrepare<O> decodePrePrepare(T data);
+
+    /**
+     * Decodes a prepare message.
+     *
+     * @param data the encoded prepare message
+     * @return the prepare message
+     */
+    ReplicaPrepare decodePrepare(T data);
+
+    /**
+     * Decodes a commit message.
+     *
+     * @param data the encoded commit message
+     * @return the commit message
+     */
+    ReplicaCommit decodeCommit(T data);
+
+    /**
+     * Decodes a checkpoint message.
+     *
+     * @param data the encoded checkpoint message
+     * @return the checkpoint message
+     */
+    ReplicaCheckpoint decodeCheckpoint(T data);
+
+    /**
+     * Decodes a view change message.
+     *
+     * @param data the encoded view change message
+     * @return the view change message
+     */
+    ReplicaViewChange decodeViewChange(T data);
+
+    /**
+     * Decodes a new view message.
+     *
+     * @param data the encoded new view message
+     * @return the new view message
+     */
+    ReplicaNewView decodeNewView(T data);
+
+    /**
+     * Decodes a fetch message.
+     *
+     * @param data the encoded fetch message
+     * @return the fetch message
+     */
+    ReplicaFetch decodeFetch(T data);
+
+    /**
+     * Decodes a commit proof message.
+     *
+     * @param data the encoded commit proof message
+     * @return the commit proof message
+     */
+    ReplicaCommitProof<O> decodeCommitProof(T data);
+
+    /**
+     * Decodes a retransmit message.
+     *
+     * @param data the encoded retransmit message
+     * @return the retransmit message
+     */
+    ReplicaRetransmit decodeRetransmit(T data);
+
+    /**
+     * Decodes a heartbeat message.
+     *
+     * @param data the encoded heartbeat message
+     * @return the heartbeat message
+     */
+    ReplicaHeartbeat decodeHeartbeat(T data);
+}
@@ -84,4 +84,40 @@ public interface ReplicaEncoder<O, R, T> {
      * @return the encoded new view message
      */
     T encodeNewView(ReplicaNewView newView);
+
+    /**
+     * Encodes the fetch message used to request missing
+     * sequence numbers from another replica.
+     *
+     * @param fetch the fetch message
+     * @return the encoded fetch message
+     */
+    T encodeFetch(ReplicaFetch fetch);
+
+    /**
+     * Encodes the commit certificate sent in response to a
+     * fetch message.
+     *
+     * @param proof the commit proof message
+     * @return the encoded commit proof message
+     */
+    T encodeCommitProof(ReplicaCommitProof<O> proof);
+
+    /**
+     * Encodes the message used to request a missing phase
+     * message from another replica.
+     *
+     * @param retransmit the retransmit message
+     * @return the encoded retransmit message
+     */
+    T encodeRetransmit(ReplicaRetransmit retransmit);
+
+    /**
+     * Encodes the heartbeat message multicasted by an idle
+     * primary.
+     *
+     * @param heartbeat the heartbeat message
+     * @return the encoded heartbeat message
+     */
+    T encodeHeartbeat(ReplicaHeartbeat heartbeat);
 }
@@ -0,0 +1,36 @@
+package com.gmail.woodyc40.pbft;
+
+/**
+ * An optional extension to a {@link ReplicaDecoder} for
+ * encodings which are able to read the view and sequence
+ * number of a phase message without decoding the rest of
+ * the message.
+ *
+ * <p>This allows PRE-PREPARE, PREPARE and COMMIT messages
+ * that a replica would discard anyways, because they are
+ * for a different view or fall outside of the water marks
+ * and are not from the near future, to be dropped before
+ * their body is decoded or their digests and MACs are
+ * verified.</p>
+ *
+ * @param <T> the common transmissible type
+ */
+public interface ReplicaHeaderDecoder<T> {
+    /**
+     * Reads the view number of the given encoded
+     * PRE-PREPARE, PREPARE or COMMIT message.
+     *
+     * @param data the encoded phase message
+     * @return the view number of the message
+     */
+    int viewNumber(T data);
+
+    /**
+     * Reads the sequence number of the given encoded
+     * PRE-PREPARE, PREPARE or COMMIT message.
+     *
+     * @param data the encoded phase message
+     * @return the sequence number of the message
+     */
+    long seqNumber(T data);
+}
@@ -0,0 +1,44 @@
+package com.gmail.woodyc40.pbft;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Represents an off-heap store, such as a disk, to which
+ * a {@link ReplicaMessageLog} spills completed tickets
+ * when it exceeds its memory budget.
+ *
+ * <p>Completed tickets are only needed to resend replies,
+ * to produce {@code VIEW-CHANGE} proofs and to serve
+ * commit certificates to lagging replicas, so they can be
+ * moved out of the heap until the next stable checkpoint
+ * discards them.</p>
+ */
+public interface ReplicaLogStore {
+    /**
+     * Stores the given completed ticket.
+     *
+     * @param ticket the ticket to store
+     */
+    void store(ReplicaTicket<?, ?> ticket);
+
+    /**
+     * Loads a previously stored ticket with the given
+     * sequence number.
+     *
+     * @param seqNumber the sequence number of the ticket
+     * @param <O>       the requested operation type
+     * @param <R>       the requested result type
+     * @return the stored ticket, or {@code null} if no
+     * ticket has been stored with the sequence number
+     */
+    @Nullable <O, R> ReplicaTicket<O, R> load(long seqNumber);
+
+    /**
+     * Discards all stored tickets with a sequence number
+     * lower than or equal to the given stable checkpoint.
+     *
+     * @param checkpoint the stable checkpoint sequence
+     *                   number
+     */
+    void discard(long checkpoint);
+}
@@ -2,11 +2,14 @@ package com.gmail.woodyc40.pbft;
 
 import com.gmail.woodyc40.pbft.message.ReplicaCheckpoint;
 import com.gmail.woodyc40.pbft.message.ReplicaNewView;
+import com.gmail.woodyc40.pbft.message.ReplicaPhaseMessage;
 import com.gmail.woodyc40.pbft.message.ReplicaRequest;
 import com.gmail.woodyc40.pbft.message.ReplicaViewChange;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.Collection;
+
 /**
  * Represents an abstract message log using {@link ReplicaTicket}s
  * to organize pending operations from client requests.
@@ -41,6 +44,35 @@ public interface ReplicaMessageLog {
      */
     @Nullable <O, R> ReplicaTicket<O, R> getTicketFromCache(ReplicaRequestKey key);
 
+    /**
+     * Records that the request with the given key has been
+     * assigned, or is about to be assigned, a sequence
+     * number so that retransmissions of the same request
+     * can be recognized before any further processing.
+     *
+     * <p>The request is no longer in flight once its
+     * ticket has been completed or when a new view is
+     * entered.</p>
+     *
+     * @param key the key used to reference the request
+     *            from the client
+     * @return {@code true} if the request was not already
+     * in flight
+     */
+    boolean markInFlight(ReplicaRequestKey key);
+
+    /**
+     * Determines whether the request with the given key
+     * has been marked using {@link
+     * #markInFlight(ReplicaRequestKey)} and has not yet
+     * been completed.
+     *
+     * @param key the key used to reference the request
+     *            from the client
+     * @return {@code true} if the request is in flight
+     */
+    boolean isInFlight(ReplicaRequestKey key);
+
     /**
      * Obtains a pending request in the given view with the
      * given sequence number.
@@ -66,6 +98,14 @@ public interface ReplicaMessageLog {
      */
     @NonNull <O, R> ReplicaTicket<O, R> newTicket(int viewNumber, long seqNumber);
 
+    /**
+     * Obtains the tickets which have been created but not
+     * yet completed.
+     *
+     * @return the pending tickets
+     */
+    Collection<ReplicaTicket<?, ?>> pendingTickets();
+
     /**
      * Removes the ticket for the pending request with the
      * given view and sequence numbers and stores it until
@@ -81,6 +121,41 @@ public interface ReplicaMessageLog {
      */
     boolean completeTicket(ReplicaRequestKey key, int viewNumber, long seqNumber);
 
+    /**
+     * Obtains a ticket that has been completed with the
+     * given sequence number, used to serve commit
+     * certificates to lagging replicas.
+     *
+     * @param seqNumber the sequence number
+     * @param <O>       the requested operation type
+     * @param <R>       the requested result type
+     * @return the completed ticket, or {@code null} if
+     * the sequence number has not been completed or has
+     * already been garbage collected
+     */
+    @Nullable <O, R> ReplicaTicket<O, R> getCompletedTicket(long seqNumber);
+
+    /**
+     * Determines whether the given sequence number has
+     * been completed by this replica or is covered by the
+     * last stable checkpoint, without loading the ticket.
+     *
+     * @param seqNumber the sequence number
+     * @return {@code true} if the sequence number no
+     * longer needs any phase messages
+     */
+    boolean isCompleted(long seqNumber);
+
+    /**
+     * Obtains the sequence numbers after the last stable
+     * checkpoint that have not been completed but are
+     * lower than the highest completed sequence number.
+     *
+     * @return the missing sequence numbers, in ascending
+     * order
+     */
+    Collection<Long> missingSeqNumbers();
+
     /**
      * Adds the checkpoint message to the log, clearing the
      * necessary state if a consensus is reached.
@@ -172,8 +247,10 @@ public interface ReplicaMessageLog {
      *
      * @param request the request to buffer
      * @param <O>     the request operation type
+     * @return {@code false} if the buffer is full and the
+     * request was dropped
      */
-    <O> void buffer(ReplicaRequest<O> request);
+    <O> boolean buffer(ReplicaRequest<O> request);
 
     /**
      * Pops the next request from the FIFO buffer.
@@ -184,6 +261,49 @@ public interface ReplicaMessageLog {
      */
     @Nullable <O> ReplicaRequest<O> popBuffer();
 
+    /**
+     * Determines whether a phase message with the given
+     * view and sequence number is from the near future,
+     * i.e. for a slightly higher view or beyond the high
+     * water mark by less than the width of the water
+     * marks, and should be deferred rather than dropped.
+     *
+     * @param curViewNumber the current view number of the
+     *                      replica
+     * @param viewNumber    the view number of the message
+     * @param seqNumber     the sequence number of the
+     *                      message
+     * @return {@code true} if the message should be
+     * deferred
+     */
+    boolean shouldDefer(int curViewNumber, int viewNumber, long seqNumber);
+
+    /**
+     * Holds onto the given phase message until it is
+     * within the view and water marks of the replica.
+     *
+     * @param message       the message to defer
+     * @param curViewNumber the current view number of the
+     *                      replica
+     * @return {@code true} if the message was deferred,
+     * {@code false} if it is not from the near future or
+     * if it is further in the future than every deferred
+     * message and there is no more room
+     */
+    boolean defer(ReplicaPhaseMessage message, int curViewNumber);
+
+    /**
+     * Removes the deferred messages which are now in the
+     * given view and between the water marks, discarding
+     * those which have become stale.
+     *
+     * @param curViewNumber the current view number of the
+     *                      replica
+     * @return the messages to process, ordered by
+     * sequence number
+     */
+    Collection<ReplicaPhaseMessage> popDeferred(int curViewNumber);
+
     /**
      * Ensures that the given sequence number is between
      * the acceptable low-high water marks.
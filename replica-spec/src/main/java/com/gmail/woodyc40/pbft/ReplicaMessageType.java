@@ -0,0 +1,67 @@
+package com.gmail.woodyc40.pbft;
+
+/**
+ * The types of messages exchanged by replicas, each of
+ * which is identified by a compact tag which may be used by
+ * encoders to mark the type of an encoded message.
+ */
+public enum ReplicaMessageType {
+    REQUEST(1),
+    PRE_PREPARE(2),
+    PREPARE(3),
+    COMMIT(4),
+    REPLY(5),
+    CHECKPOINT(6),
+    VIEW_CHANGE(7),
+    NEW_VIEW(8),
+    FETCH(9),
+    COMMIT_PROOF(10),
+    RETRANSMIT(11),
+    HEARTBEAT(12);
+
+    private static final ReplicaMessageType[] BY_TAG;
+
+    static {
+        int maxTag = 0;
+        for (ReplicaMessageType type : values()) {
+            maxTag = Math.max(maxTag, type.tag);
+        }
+
+        BY_TAG = new ReplicaMessageType[maxTag + 1];
+        for (ReplicaMessageType type : values()) {
+            BY_TAG[type.tag] = type;
+        }
+    }
+
+    private final int tag;
+
+    ReplicaMessageType(int tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Obtains the tag which identifies this message type.
+     *
+     * @return the message tag
+     */
+    public int tag() {
+        return this.tag;
+    }
+
+    /**
+     * Obtains the message type identified by the given
+     * tag.
+     *
+     * @param tag the message tag
+     * @return the message type
+     * @throws IllegalArgumentException if no type has the
+     * given tag
+     */
+    public static ReplicaMessageType fromTag(int tag) {
+        if (tag <= 0 || tag >= BY_TAG.length || BY_TAG[tag] == null) {
+            throw new IllegalArgumentException("Unrecognized tag: " + tag);
+        }
+
+        return BY_TAG[tag];
+    }
+}
@@ -0,0 +1,22 @@
+package com.gmail.woodyc40.pbft;
+
+/**
+ * Represents a copy-on-write view of the state of a
+ * {@link Replica} taken at a checkpoint.
+ *
+ * <p>The snapshot is captured synchronously when the
+ * checkpoint sequence number is executed, but its digest
+ * may be computed on a background thread while the replica
+ * continues to execute subsequent requests. Implementations
+ * must therefore ensure that the digest reflects the state
+ * at the time of capture rather than the live state.</p>
+ */
+public interface ReplicaStateSnapshot {
+    /**
+     * Computes the digest of the state captured by this
+     * snapshot.
+     *
+     * @return the state digest
+     */
+    byte[] digest();
+}
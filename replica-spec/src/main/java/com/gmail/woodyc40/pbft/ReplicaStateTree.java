@@ -0,0 +1,84 @@
+package com.gmail.woodyc40.pbft;
+
+import java.util.Collection;
+import java.util.function.BiFunction;
+
+/**
+ * Represents a partitioned Merkle tree built over the
+ * state of a {@link Replica} in order to produce the state
+ * digest sent in {@code CHECKPOINT} messages.
+ *
+ * <p>The replica state is split into a fixed number of
+ * partitions (e.g. pages or key ranges), each of which
+ * forms a leaf of the tree. Users mark the partitions that
+ * are modified by {@link Replica#compute(Object)} as dirty
+ * and only the dirty leaves and their ancestors are
+ * rehashed when {@link #root()} is called, so the cost of
+ * a checkpoint is proportional to the change set rather
+ * than the size of the state.</p>
+ *
+ * <p>Levels are numbered from {@code 0} at the root to
+ * {@link #height()} at the leaves.</p>
+ */
+public interface ReplicaStateTree {
+    /**
+     * Obtains the number of state partitions covered by
+     * the leaves of this tree.
+     *
+     * @return the number of partitions
+     */
+    int partitions();
+
+    /**
+     * Obtains the number of levels below the root of this
+     * tree, i.e. the level at which the leaves reside.
+     *
+     * @return the height of the tree
+     */
+    int height();
+
+    /**
+     * Marks the given partition as modified so that its
+     * leaf is rehashed the next time the root is
+     * requested.
+     *
+     * @param partition the partition that was modified
+     */
+    void markDirty(int partition);
+
+    /**
+     * Rehashes all dirty leaves along with their ancestors
+     * and returns the resulting root digest.
+     *
+     * @return the digest of the entire state
+     */
+    byte[] root();
+
+    /**
+     * Obtains the digest of the node at the given level
+     * and index as of the last call to {@link #root()}.
+     *
+     * @param level the level of the node, {@code 0} being
+     *              the root
+     * @param index the index of the node in its level
+     * @return the node digest
+     */
+    byte[] nodeDigest(int level, int index);
+
+    /**
+     * Descends the tree alongside a remote copy, such as
+     * one held by another replica during state transfer,
+     * in order to find the partitions that differ.
+     *
+     * <p>Only the subtrees whose digests differ are
+     * visited, so the number of remote lookups is
+     * proportional to the number of differing partitions
+     * multiplied by the height of the tree.</p>
+     *
+     * @param remote a function that provides the remote
+     *               node digest given its level and index
+     * @return the partitions which must be fetched in
+     * order to match the remote state
+     */
+    Collection<Integer> differingPartitions(BiFunction<Integer, Integer, byte[]> remote);
+}
@@ -1,5 +1,6 @@
 package com.gmail.woodyc40.pbft;
 
+import com.gmail.woodyc40.pbft.message.ReplicaReply;
 import com.gmail.woodyc40.pbft.message.ReplicaRequest;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -78,6 +79,15 @@ public interface ReplicaTicket<O, R> {
      */
     boolean casPhase(ReplicaTicketPhase old, ReplicaTicketPhase next);
 
+    /**
+     * Obtains the time at which the ticket entered its
+     * current phase, used to detect tickets that have
+     * stopped making progress.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    long phaseTime();
+
     /**
      * Obtains a collection of the messages pertaining to
      * the same operation referenced by this ticket.
@@ -102,4 +112,24 @@ public interface ReplicaTicket<O, R> {
      * @return a future result
      */
     CompletableFuture<R> result();
+
+    /**
+     * Records the reply sent to the client once the
+     * request has been executed so that retransmissions
+     * are able to send the same message, and therefore
+     * reuse its encoded form, instead of a new one.
+     *
+     * @param reply the reply sent to the client
+     */
+    void setReply(ReplicaReply<R> reply);
+
+    /**
+     * Obtains the reply sent to the client, if the request
+     * has been executed by this replica.
+     *
+     * @return the reply, or {@code null} if it has not
+     * been sent
+     */
+    @Nullable
+    ReplicaReply<R> reply();
 }
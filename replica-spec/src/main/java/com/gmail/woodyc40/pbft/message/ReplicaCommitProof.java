@@ -0,0 +1,40 @@
+package com.gmail.woodyc40.pbft.message;
+
+import java.util.Collection;
+
+/**
+ * Represents the commit certificate for a single sequence
+ * number which is sent in response to a
+ * {@link ReplicaFetch}.
+ *
+ * <p>A proof is valid only if the digest of the request
+ * matches the {@code PRE-PREPARE} and there are at least
+ * {@code 2f + 1} matching {@code COMMIT} messages from
+ * distinct replicas.</p>
+ *
+ * @param <O> the request operation type
+ */
+public interface ReplicaCommitProof<O> {
+    /**
+     * The {@code PRE-PREPARE} message, along with the
+     * request that it carries, which was committed.
+     *
+     * @return the committed pre-prepare message
+     */
+    ReplicaPrePrepare<O> prePrepare();
+
+    /**
+     * The {@code COMMIT} messages logged by the sending
+     * replica for the sequence number.
+     *
+     * @return the commit messages
+     */
+    Collection<ReplicaCommit> commits();
+
+    /**
+     * The ID number of the replica sending this message.
+     *
+     * @return the replica ID number
+     */
+    int replicaId();
+}
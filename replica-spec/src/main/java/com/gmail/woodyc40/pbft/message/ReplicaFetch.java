@@ -0,0 +1,30 @@
+package com.gmail.woodyc40.pbft.message;
+
+import java.util.Collection;
+
+/**
+ * Represents a request sent by a lagging replica to one of
+ * its peers in order to catch up on the sequence numbers
+ * that it has missed.
+ *
+ * <p>The peer responds with a {@link ReplicaCommitProof}
+ * for each of the requested sequence numbers that it has
+ * committed.</p>
+ */
+public interface ReplicaFetch {
+    /**
+     * The sequence numbers that the sending replica has
+     * not committed.
+     *
+     * @return the missing sequence numbers, in ascending
+     * order
+     */
+    Collection<Long> seqNumbers();
+
+    /**
+     * The ID number of the replica sending this message.
+     *
+     * @return the replica ID number
+     */
+    int replicaId();
+}
@@ -0,0 +1,24 @@
+package com.gmail.woodyc40.pbft.message;
+
+/**
+ * Represents a message periodically multicasted by the
+ * primary while it has no PRE-PREPARE to send, so that the
+ * backups are able to tell an idle primary apart from one
+ * that has failed.
+ */
+public interface ReplicaHeartbeat {
+    /**
+     * The view in which the sending replica is the
+     * primary.
+     *
+     * @return the view number
+     */
+    int viewNumber();
+
+    /**
+     * The ID number of the replica sending this message.
+     *
+     * @return the replica ID number
+     */
+    int replicaId();
+}
@@ -0,0 +1,46 @@
+package com.gmail.woodyc40.pbft.message;
+
+import com.gmail.woodyc40.pbft.ReplicaMessageType;
+
+/**
+ * Represents a request sent by a replica to one of its
+ * peers for a phase message that it has not received for a
+ * sequence number which has stopped making progress.
+ *
+ * <p>The peer responds by sending the requested message
+ * again from its log, i.e. the PRE-PREPARE for the
+ * sequence number, or the PREPARE or COMMIT that the peer
+ * itself has sent.</p>
+ */
+public interface ReplicaRetransmit {
+    /**
+     * The view number of the requested message.
+     *
+     * @return the view number
+     */
+    int viewNumber();
+
+    /**
+     * The sequence number of the requested message.
+     *
+     * @return the sequence number
+     */
+    long seqNumber();
+
+    /**
+     * The type of message being requested, which is one
+     * of {@link ReplicaMessageType#PRE_PREPARE}, {@link
+     * ReplicaMessageType#PREPARE} or {@link
+     * ReplicaMessageType#COMMIT}.
+     *
+     * @return the requested message type
+     */
+    ReplicaMessageType messageType();
+
+    /**
+     * The ID number of the replica sending this message.
+     *
+     * @return the replica ID number
+     */
+    int replicaId();
+}
@@ -0,0 +1,57 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opens Unix domain socket channels for replicas and
+ * clients that run on the same host, avoiding the TCP/IP
+ * stack used by {@link TcpChannelFactory}.
+ */
+public class UnixChannelFactory implements NioChannelFactory {
+    @Override
+    public SocketChannel openChannel(SocketAddress remote) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.configureBlocking(false);
+        return channel;
+    }
+
+    @Override
+    public ServerSocketChannel openServerChannel(SocketAddress local) throws IOException {
+        // A socket file left behind by a previous run prevents binding
+        if (local instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) local).getPath());
+        }
+
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.configureBlocking(false);
+        channel.bind(local);
+        return channel;
+    }
+
+    /**
+     * Obtains the socket addresses of the given number of
+     * replicas, named {@code replica-<id>.sock} in the
+     * given directory.
+     *
+     * @param directory the directory containing the sockets
+     * @param replicas the number of replicas
+     * @return the replica socket addresses, keyed by ID
+     */
+    public static Map<Integer, SocketAddress> replicaAddresses(Path directory, int replicas) {
+        Map<Integer, SocketAddress> addresses = new HashMap<>();
+        for (int i = 0; i < replicas; i++) {
+            addresses.put(i, UnixDomainSocketAddress.of(directory.resolve("replica-" + i + ".sock")));
+        }
+
+        return addresses;
+    }
+}
@@ -0,0 +1,15 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * A {@link NioClientTransport} which connects to replicas
+ * listening on Unix domain sockets in the given directory.
+ */
+public class UnixClientTransport extends NioClientTransport {
+    public UnixClientTransport(String clientId, Path directory, int replicas, Consumer<ByteBuffer> handler) {
+        super(clientId, UnixChannelFactory.replicaAddresses(directory, replicas), handler, new UnixChannelFactory());
+    }
+}
@@ -0,0 +1,16 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * A {@link NioReplicaTransport} which communicates over
+ * Unix domain sockets in the given directory, using the
+ * same framing as the TCP transport.
+ */
+public class UnixReplicaTransport extends NioReplicaTransport {
+    public UnixReplicaTransport(int replicaId, Path directory, int replicas, Consumer<ByteBuffer> handler) {
+        super(replicaId, UnixChannelFactory.replicaAddresses(directory, replicas), handler, new UnixChannelFactory());
+    }
+}
@@ -0,0 +1,252 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reassembles the messages which have been split into
+ * chunks by a {@link ChunkedReplicaTransport} or a {@link
+ * ChunkedClientTransport}, passing messages which were not
+ * chunked straight to the handler.
+ *
+ * <p>Chunks are keyed by the hash at the head of the hash
+ * chain of the message they belong to, so the same message
+ * streamed by several senders, such as a request forwarded
+ * by more than one replica, is only reassembled once. Each
+ * chunk is verified against the chain as soon as every
+ * chunk before it has been, and chunks which arrive ahead
+ * of that are held as candidates. A chunk which fails the
+ * verification is discarded on its own, so that a faulty
+ * sender cannot prevent the same chunk from an honest
+ * sender from completing the message.</p>
+ *
+ * <p>Partially received messages are bounded by the given
+ * number of bytes, beyond which the oldest are discarded
+ * and left to be recovered by the protocol.</p>
+ */
+public class ChunkAssembler implements Consumer<ByteBuffer> {
+    public static final int DEFAULT_MAX_MESSAGE_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_MAX_PENDING_BYTES = 256L * 1024 * 1024;
+
+    private final Consumer<ByteBuffer> handler;
+    private final int maxMessageBytes;
+    private final long maxPendingBytes;
+
+    // Insertion ordered so that the oldest messages are evicted first
+    private final Map<ByteBuffer, Assembly> assemblies = new LinkedHashMap<>();
+    private long pendingBytes;
+
+    public ChunkAssembler(Consumer<ByteBuffer> handler) {
+        this(handler, DEFAULT_MAX_MESSAGE_BYTES, DEFAULT_MAX_PENDING_BYTES);
+    }
+
+    public ChunkAssembler(Consumer<ByteBuffer> handler, int maxMessageBytes, long maxPendingBytes) {
+        this.handler = handler;
+        this.maxMessageBytes = maxMessageBytes;
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    @Override
+    public void accept(ByteBuffer data) {
+        if (!data.hasRemaining() || data.get(data.position()) != ChunkStreamer.CHUNK_MARKER) {
+            this.handler.accept(data);
+            return;
+        }
+
+        ByteBuffer message = this.acceptChunk(data.duplicate());
+        if (message != null) {
+            this.handler.accept(message);
+        }
+    }
+
+    private synchronized @Nullable ByteBuffer acceptChunk(ByteBuffer chunk) {
+        if (chunk.remaining() < ChunkStreamer.HEADER_BYTES) {
+            return null;
+        }
+
+        chunk.get();
+        byte[] head = new byte[ChunkStreamer.DIGEST_BYTES];
+        chunk.get(head);
+        int total = chunk.getInt();
+        int chunkBytes = chunk.getInt();
+        int index = chunk.getInt();
+        byte[] next = new byte[ChunkStreamer.DIGEST_BYTES];
+        chunk.get(next);
+        if (total <= 0 || total > this.maxMessageBytes || chunkBytes <= 0) {
+            return null;
+        }
+
+        ByteBuffer key = ByteBuffer.wrap(head);
+        Assembly assembly = this.assemblies.get(key);
+        if (assembly == null) {
+            if (total > this.maxPendingBytes) {
+                return null;
+            }
+
+            this.evict(total, null);
+            assembly = new Assembly(head, total, chunkBytes);
+            this.assemblies.put(key, assembly);
+            this.pendingBytes += total;
+        }
+
+        long bytes = assembly.bytes();
+        boolean done = assembly.add(index, total, chunkBytes, next, chunk);
+        long added = assembly.bytes() - bytes;
+        this.pendingBytes += added;
+        if (added > 0) {
+            this.evict(0, assembly);
+        }
+
+        if (!done) {
+            return null;
+        }
+
+        this.assemblies.remove(key);
+        this.pendingBytes -= assembly.bytes();
+        return ByteBuffer.wrap(assembly.data);
+    }
+
+    private void evict(int required, @Nullable Assembly keep) {
+        Iterator<Assembly> it = this.assemblies.values().iterator();
+        while (this.pendingBytes + required > this.maxPendingBytes && it.hasNext()) {
+            Assembly assembly = it.next();
+            if (assembly != keep) {
+                this.pendingBytes -= assembly.bytes();
+                it.remove();
+            }
+        }
+    }
+
+    private static class Assembly {
+        private final byte[] data;
+        private final int chunkBytes;
+        private final int chunkCount;
+        private final MessageDigest hash = ChunkStreamer.newDigest();
+        // Chunks received ahead of the verified chunks, which
+        // may contain more than one candidate for the same
+        // index if a sender is faulty
+        private final Map<Integer, List<Candidate>> candidates = new HashMap<>();
+
+        private byte[] expected;
+        private int verifiedChunks;
+        private long candidateBytes;
+
+        Assembly(byte[] head, int total, int chunkBytes) {
+            this.data = new byte[total];
+            this.chunkBytes = chunkBytes;
+            this.chunkCount = (int) ((total + (long) chunkBytes - 1) / chunkBytes);
+            this.expected = head;
+        }
+
+        long bytes() {
+            return this.data.length + this.candidateBytes;
+        }
+
+        private int offset(int index) {
+            return index * this.chunkBytes;
+        }
+
+        private int length(int index) {
+            return Math.min(this.chunkBytes, this.data.length - this.offset(index));
+        }
+
+        /**
+         * Adds a chunk to this message.
+         *
+         * @return {@code true} if every chunk has been
+         * received and verified
+         */
+        boolean add(int index, int total, int chunkBytes, byte[] next, ByteBuffer chunk) {
+            if (total != this.data.length || chunkBytes != this.chunkBytes ||
+                    index < this.verifiedChunks || index >= this.chunkCount ||
+                    chunk.remaining() != this.length(index)) {
+                return false;
+            }
+
+            Candidate candidate = new Candidate(next, chunk);
+            if (index > this.verifiedChunks) {
+                List<Candidate> list = this.candidates.computeIfAbsent(index, k -> new ArrayList<>());
+                if (!list.contains(candidate)) {
+                    list.add(candidate);
+                    this.candidateBytes += candidate.data.length;
+                }
+
+                return false;
+            }
+
+            // A chunk which does not match the chain is discarded
+            // on its own, leaving room for the honest chunk
+            if (!this.isExpected(candidate)) {
+                return false;
+            }
+            this.append(candidate);
+
+            // Verify as far as the chunks received so far are
+            // contiguous, trying each candidate in turn
+            List<Candidate> list;
+            while ((list = this.candidates.remove(this.verifiedChunks)) != null) {
+                Candidate verified = null;
+                for (Candidate c : list) {
+                    this.candidateBytes -= c.data.length;
+                    if (verified == null && this.isExpected(c)) {
+                        verified = c;
+                    }
+                }
+
+                if (verified == null) {
+                    break;
+                }
+                this.append(verified);
+            }
+
+            return this.verifiedChunks == this.chunkCount;
+        }
+
+        private boolean isExpected(Candidate candidate) {
+            byte[] hash = ChunkStreamer.chainHash(this.hash, ByteBuffer.wrap(candidate.data), candidate.next);
+            return Arrays.equals(hash, this.expected);
+        }
+
+        private void append(Candidate candidate) {
+            System.arraycopy(candidate.data, 0, this.data, this.offset(this.verifiedChunks), candidate.data.length);
+            this.expected = candidate.next;
+            this.verifiedChunks++;
+        }
+    }
+
+    private static class Candidate {
+        private final byte[] next;
+        private final byte[] data;
+
+        Candidate(byte[] next, ByteBuffer chunk) {
+            this.next = next;
+            this.data = new byte[chunk.remaining()];
+            chunk.get(this.data);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Candidate)) {
+                return false;
+            }
+
+            Candidate other = (Candidate) o;
+            return Arrays.equals(this.next, other.next) && Arrays.equals(this.data, other.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(this.next) + Arrays.hashCode(this.data);
+        }
+    }
+}
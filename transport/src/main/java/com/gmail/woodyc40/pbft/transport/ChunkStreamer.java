@@ -0,0 +1,249 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Splits large messages into chunks which are sent by a
+ * dedicated thread, one chunk of each transfer at a time,
+ * so that several large messages share the link fairly and
+ * small messages sent in the meantime are not queued behind
+ * an entire large message.
+ *
+ * <p>Each chunk is laid out as follows:</p>
+ * <pre>
+ * [marker:1][key:32][total length:4][chunk bytes:4][index:4][next:32][data]
+ * </pre>
+ *
+ * <p>The chunks form a hash chain: the hash of a chunk is
+ * the SHA-256 hash of its data followed by the hash of the
+ * next chunk, which is carried as {@code next}, and the
+ * key is the hash of the first chunk. The key identifies
+ * the message being reassembled and each chunk can be
+ * verified as soon as the chunks before it have been, so a
+ * chunk forged by a faulty sender is discarded on its own.
+ * The marker is a byte which neither the binary codec nor
+ * text encodings begin a message with, so that messages
+ * which are not chunked are sent as they are.</p>
+ */
+class ChunkStreamer implements AutoCloseable {
+    static final byte CHUNK_MARKER = (byte) 0xFF;
+    static final int DIGEST_BYTES = 32;
+    static final int HEADER_BYTES = 1 + DIGEST_BYTES + 12 + DIGEST_BYTES;
+
+    private static final long RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final int chunkBytes;
+    private final long bytesPerSecond;
+    private final Queue<Transfer> transfers = new ConcurrentLinkedQueue<>();
+    private final Thread pump;
+    private final AtomicBoolean sleeping = new AtomicBoolean();
+
+    private volatile boolean running = true;
+    // The time at which the next paced chunk may be sent,
+    // only accessed by the pump thread
+    private long nextPacedNanos;
+
+    ChunkStreamer(String name, int chunkBytes, long bytesPerSecond) {
+        if (chunkBytes <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Send rate must be positive");
+        }
+
+        this.chunkBytes = chunkBytes;
+        this.bytesPerSecond = bytesPerSecond;
+        this.pump = new Thread(this::runPump, name);
+        this.pump.setDaemon(true);
+        this.pump.start();
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the hash of a chunk in the hash chain.
+     *
+     * @param digest the digest to use
+     * @param data the chunk data, which is not consumed
+     * @param next the hash of the next chunk
+     * @return the hash of the chunk
+     */
+    static byte[] chainHash(MessageDigest digest, ByteBuffer data, byte[] next) {
+        digest.update(data.duplicate());
+        digest.update(next);
+        return digest.digest();
+    }
+
+    boolean needsChunking(ByteBuffer data) {
+        return data.remaining() > this.chunkBytes;
+    }
+
+    /**
+     * Queues the given message to be sent in chunks.
+     *
+     * @param payload the message to send
+     * @param ready determines whether the destination is
+     *              ready to accept the next chunk, or
+     *              {@code null} to send the chunks at no
+     *              more than the send rate
+     * @param sink sends a single chunk
+     */
+    void stream(ByteBuffer payload, @Nullable BooleanSupplier ready, Consumer<ByteBuffer> sink) {
+        this.transfers.add(new Transfer(payload.duplicate(), ready, sink));
+        if (this.sleeping.get() && this.sleeping.compareAndSet(true, false)) {
+            LockSupport.unpark(this.pump);
+        }
+    }
+
+    private boolean isReady(Transfer transfer, long now) {
+        if (transfer.ready != null) {
+            return transfer.ready.getAsBoolean();
+        }
+
+        return now - this.nextPacedNanos >= 0;
+    }
+
+    private void pace(Transfer transfer, long now, int bytes) {
+        if (transfer.ready == null) {
+            long start = Math.max(now, this.nextPacedNanos);
+            this.nextPacedNanos = start + TimeUnit.SECONDS.toNanos(bytes) / this.bytesPerSecond;
+        }
+    }
+
+    private void runPump() {
+        while (this.running) {
+            boolean pending = false;
+            boolean sent = false;
+            long waitNanos = RETRY_NANOS;
+            long now = System.nanoTime();
+            for (Iterator<Transfer> it = this.transfers.iterator(); it.hasNext(); ) {
+                Transfer transfer = it.next();
+                pending = true;
+                if (!this.isReady(transfer, now)) {
+                    if (transfer.ready == null) {
+                        waitNanos = Math.min(waitNanos, this.nextPacedNanos - now);
+                    }
+                    continue;
+                }
+
+                this.pace(transfer, now, transfer.sendNext());
+                sent = true;
+                if (transfer.isDone()) {
+                    it.remove();
+                }
+            }
+
+            if (!pending) {
+                // Nothing queued, sleep until a message is streamed
+                this.sleeping.set(true);
+                if (this.transfers.isEmpty() && this.running) {
+                    LockSupport.park(this);
+                }
+                this.sleeping.set(false);
+            } else if (!sent) {
+                // Every destination is still busy with earlier
+                // chunks or the send rate has been reached
+                LockSupport.parkNanos(this, waitNanos);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(this.pump);
+
+        try {
+            this.pump.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class Transfer {
+        private final ByteBuffer payload;
+        private final @Nullable BooleanSupplier ready;
+        private final Consumer<ByteBuffer> sink;
+        private final int chunkCount;
+        // The hash of each chunk in the chain, followed by
+        // the zero hash terminating it
+        private final byte[][] hashes;
+
+        private int nextIndex;
+
+        Transfer(ByteBuffer payload, @Nullable BooleanSupplier ready, Consumer<ByteBuffer> sink) {
+            this.payload = payload;
+            this.ready = ready;
+            this.sink = sink;
+
+            int chunkBytes = ChunkStreamer.this.chunkBytes;
+            this.chunkCount = (payload.remaining() + chunkBytes - 1) / chunkBytes;
+
+            // The chain is computed backwards since each hash
+            // covers the hash of the chunk after it
+            MessageDigest digest = newDigest();
+            this.hashes = new byte[this.chunkCount + 1][];
+            this.hashes[this.chunkCount] = new byte[DIGEST_BYTES];
+            for (int i = this.chunkCount - 1; i >= 0; i--) {
+                this.hashes[i] = chainHash(digest, this.data(i), this.hashes[i + 1]);
+            }
+        }
+
+        boolean isDone() {
+            return this.nextIndex == this.chunkCount;
+        }
+
+        private ByteBuffer data(int index) {
+            int chunkBytes = ChunkStreamer.this.chunkBytes;
+            int offset = index * chunkBytes;
+            int length = Math.min(chunkBytes, this.payload.remaining() - offset);
+
+            ByteBuffer data = this.payload.duplicate();
+            int start = data.position() + offset;
+            data.limit(start + length);
+            data.position(start);
+            return data;
+        }
+
+        /**
+         * Sends the next chunk of this message.
+         *
+         * @return the number of bytes sent
+         */
+        int sendNext() {
+            int index = this.nextIndex++;
+            ByteBuffer data = this.data(index);
+
+            ByteBuffer chunk = ByteBuffer.allocate(HEADER_BYTES + data.remaining());
+            chunk.put(CHUNK_MARKER)
+                    .put(this.hashes[0])
+                    .putInt(this.payload.remaining())
+                    .putInt(ChunkStreamer.this.chunkBytes)
+                    .putInt(index)
+                    .put(this.hashes[index + 1])
+                    .put(data)
+                    .flip();
+            this.sink.accept(chunk);
+
+            return chunk.capacity();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import com.gmail.woodyc40.pbft.ClientTransport;
+
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link ClientTransport} decorator which streams
+ * requests larger than the chunk size as a sequence of
+ * chunks, in the same way as a {@link
+ * ChunkedReplicaTransport}. The chunks are paced to the
+ * given send rate, since client transports do not report
+ * how many messages are queued.
+ *
+ * <p>Replicas must pass every message to a {@link
+ * ChunkAssembler} in order to reassemble the chunks.</p>
+ */
+public class ChunkedClientTransport implements ClientTransport<ByteBuffer>, AutoCloseable {
+    private final ClientTransport<ByteBuffer> delegate;
+    private final ChunkStreamer streamer;
+
+    public ChunkedClientTransport(ClientTransport<ByteBuffer> delegate) {
+        this(delegate, ChunkedReplicaTransport.DEFAULT_CHUNK_BYTES);
+    }
+
+    public ChunkedClientTransport(ClientTransport<ByteBuffer> delegate, int chunkBytes) {
+        this(delegate, chunkBytes, ChunkedReplicaTransport.DEFAULT_BYTES_PER_SECOND);
+    }
+
+    public ChunkedClientTransport(ClientTransport<ByteBuffer> delegate, int chunkBytes, long bytesPerSecond) {
+        this.delegate = delegate;
+        this.streamer = new ChunkStreamer("pbft-client-chunks", chunkBytes, bytesPerSecond);
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return this.delegate.knownReplicaIds();
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.delegate.countKnownReplicas();
+    }
+
+    @Override
+    public void sendRequest(int replicaId, ByteBuffer request) {
+        if (!this.streamer.needsChunking(request)) {
+            this.delegate.sendRequest(replicaId, request);
+            return;
+        }
+
+        this.streamer.stream(request, null, chunk -> this.delegate.sendRequest(replicaId, chunk));
+    }
+
+    @Override
+    public void multicastRequest(ByteBuffer request) {
+        if (!this.streamer.needsChunking(request)) {
+            this.delegate.multicastRequest(request);
+            return;
+        }
+
+        this.streamer.stream(request, null, this.delegate::multicastRequest);
+    }
+
+    @Override
+    public void close() {
+        this.streamer.close();
+    }
+}
@@ -0,0 +1,119 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import com.gmail.woodyc40.pbft.AsyncReplicaTransport;
+import com.gmail.woodyc40.pbft.ReplicaTransport;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link ReplicaTransport} decorator which streams
+ * messages larger than the chunk size, such as requests
+ * and replies with large operations or results, as a
+ * sequence of chunks rather than a single frame.
+ *
+ * <p>Messages that fit into a single chunk are passed to
+ * the delegate as they are. The chunks of large messages
+ * are sent by a background thread, one chunk of each
+ * pending message at a time. If the delegate is an {@link
+ * AsyncReplicaTransport}, the next chunk for a replica is
+ * only sent once its earlier messages have been written,
+ * so consensus messages are only ever queued behind a
+ * single chunk. Other delegates do not report how much is
+ * queued, so chunks are paced to the given send rate
+ * instead, which should not exceed the bandwidth of the
+ * link for consensus messages to avoid queueing behind
+ * the chunks. Replies are always paced.</p>
+ *
+ * <p>Receivers must pass every message to a {@link
+ * ChunkAssembler} in order to reassemble the chunks.</p>
+ */
+public class ChunkedReplicaTransport implements ReplicaTransport<ByteBuffer>, AutoCloseable {
+    public static final int DEFAULT_CHUNK_BYTES = 64 * 1024;
+    // Roughly a gigabit link
+    public static final long DEFAULT_BYTES_PER_SECOND = 128L * 1024 * 1024;
+
+    private final ReplicaTransport<ByteBuffer> delegate;
+    private final ChunkStreamer streamer;
+
+    public ChunkedReplicaTransport(ReplicaTransport<ByteBuffer> delegate) {
+        this(delegate, DEFAULT_CHUNK_BYTES);
+    }
+
+    public ChunkedReplicaTransport(ReplicaTransport<ByteBuffer> delegate, int chunkBytes) {
+        this(delegate, chunkBytes, DEFAULT_BYTES_PER_SECOND);
+    }
+
+    public ChunkedReplicaTransport(ReplicaTransport<ByteBuffer> delegate, int chunkBytes, long bytesPerSecond) {
+        this.delegate = delegate;
+        this.streamer = new ChunkStreamer("pbft-replica-chunks", chunkBytes, bytesPerSecond);
+    }
+
+    private @Nullable BooleanSupplier ready(int replicaId) {
+        if (this.delegate instanceof AsyncReplicaTransport) {
+            AsyncReplicaTransport<ByteBuffer> async = (AsyncReplicaTransport<ByteBuffer>) this.delegate;
+            return () -> async.pendingMessages(replicaId) == 0;
+        }
+
+        return null;
+    }
+
+    private @Nullable BooleanSupplier ready(int[] ignoredReplicas) {
+        if (this.delegate instanceof AsyncReplicaTransport) {
+            AsyncReplicaTransport<ByteBuffer> async = (AsyncReplicaTransport<ByteBuffer>) this.delegate;
+            return () -> this.delegate.knownReplicaIds()
+                    .filter(id -> IntStream.of(ignoredReplicas).noneMatch(ignored -> ignored == id))
+                    .allMatch(id -> async.pendingMessages(id) == 0);
+        }
+
+        return null;
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.delegate.countKnownReplicas();
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return this.delegate.knownReplicaIds();
+    }
+
+    @Override
+    public void sendMessage(int replicaId, ByteBuffer data) {
+        if (!this.streamer.needsChunking(data)) {
+            this.delegate.sendMessage(replicaId, data);
+            return;
+        }
+
+        this.streamer.stream(data, this.ready(replicaId), chunk -> this.delegate.sendMessage(replicaId, chunk));
+    }
+
+    @Override
+    public void multicast(ByteBuffer data, int... ignoredReplicas) {
+        if (!this.streamer.needsChunking(data)) {
+            this.delegate.multicast(data, ignoredReplicas);
+            return;
+        }
+
+        int[] ignored = ignoredReplicas.clone();
+        this.streamer.stream(data, this.ready(ignored), chunk -> this.delegate.multicast(chunk, ignored));
+    }
+
+    @Override
+    public void sendReply(String clientId, ByteBuffer reply) {
+        if (!this.streamer.needsChunking(reply)) {
+            this.delegate.sendReply(clientId, reply);
+            return;
+        }
+
+        this.streamer.stream(reply, null, chunk -> this.delegate.sendReply(clientId, chunk));
+    }
+
+    @Override
+    public void close() {
+        this.streamer.close();
+    }
+}
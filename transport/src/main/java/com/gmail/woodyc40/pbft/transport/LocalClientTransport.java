@@ -0,0 +1,43 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import com.gmail.woodyc40.pbft.ClientTransport;
+
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link ClientTransport} which delivers requests to
+ * replicas in the same JVM through a {@link LocalHub}.
+ *
+ * @param <T> the encoded message type
+ */
+public class LocalClientTransport<T> implements ClientTransport<T> {
+    private final LocalHub<T> hub;
+
+    public LocalClientTransport(LocalHub<T> hub, String clientId, Consumer<T> handler) {
+        this.hub = hub;
+        hub.registerClient(clientId, handler);
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return this.hub.replicaIds();
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.hub.countReplicas();
+    }
+
+    @Override
+    public void sendRequest(int replicaId, T request) {
+        this.hub.sendToReplica(replicaId, request);
+    }
+
+    @Override
+    public void multicastRequest(T request) {
+        for (int i = 0; i < this.hub.countReplicas(); i++) {
+            this.hub.sendToReplica(i, request);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * The shared medium connecting the {@link
+ * LocalReplicaTransport}s and {@link LocalClientTransport}s
+ * that run in the same JVM.
+ *
+ * <p>Messages are handed over by reference without any
+ * copying or encoding, so senders must not modify a
+ * message once it has been sent. Each receiver has a
+ * bounded mailbox and its own delivery thread, so the
+ * cost measured by a benchmark is that of the replicas
+ * rather than that of the transport.</p>
+ *
+ * @param <T> the encoded message type
+ */
+public class LocalHub<T> implements AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 65536;
+
+    private final int replicas;
+    private final int capacity;
+    private final Map<Integer, LocalMailbox<T>> replicaMailboxes = new ConcurrentHashMap<>();
+    private final Map<String, LocalMailbox<T>> clientMailboxes = new ConcurrentHashMap<>();
+
+    public LocalHub(int replicas) {
+        this(replicas, DEFAULT_CAPACITY);
+    }
+
+    public LocalHub(int replicas, int capacity) {
+        this.replicas = replicas;
+        this.capacity = capacity;
+    }
+
+    public int countReplicas() {
+        return this.replicas;
+    }
+
+    public IntStream replicaIds() {
+        return IntStream.range(0, this.replicas);
+    }
+
+    void registerReplica(int replicaId, Consumer<T> handler) {
+        if (replicaId < 0 || replicaId >= this.replicas) {
+            throw new IllegalArgumentException("Unknown replica: " + replicaId);
+        }
+
+        LocalMailbox<T> mailbox = new LocalMailbox<>("pbft-local-replica-" + replicaId, this.capacity, handler);
+        if (this.replicaMailboxes.putIfAbsent(replicaId, mailbox) != null) {
+            mailbox.close();
+            throw new IllegalStateException("Replica " + replicaId + " is already registered");
+        }
+    }
+
+    void registerClient(String clientId, Consumer<T> handler) {
+        LocalMailbox<T> mailbox = new LocalMailbox<>("pbft-local-client-" + clientId, this.capacity, handler);
+        if (this.clientMailboxes.putIfAbsent(clientId, mailbox) != null) {
+            mailbox.close();
+            throw new IllegalStateException("Client " + clientId + " is already registered");
+        }
+    }
+
+    void sendToReplica(int replicaId, T message) {
+        LocalMailbox<T> mailbox = this.replicaMailboxes.get(replicaId);
+        if (mailbox != null) {
+            mailbox.offer(message);
+        }
+    }
+
+    void sendToClient(String clientId, T message) {
+        LocalMailbox<T> mailbox = this.clientMailboxes.get(clientId);
+        if (mailbox != null) {
+            mailbox.offer(message);
+        }
+    }
+
+    /**
+     * Obtains the total number of messages that have been
+     * dropped because the receiving mailbox was full.
+     *
+     * @return the number of dropped messages
+     */
+    public long droppedMessages() {
+        long dropped = 0;
+        for (LocalMailbox<T> mailbox : this.replicaMailboxes.values()) {
+            dropped += mailbox.droppedMessages();
+        }
+        for (LocalMailbox<T> mailbox : this.clientMailboxes.values()) {
+            dropped += mailbox.droppedMessages();
+        }
+
+        return dropped;
+    }
+
+    /**
+     * Obtains the total number of messages whose handler
+     * threw an exception upon delivery.
+     *
+     * @return the number of failed messages
+     */
+    public long failedMessages() {
+        long failed = 0;
+        for (LocalMailbox<T> mailbox : this.replicaMailboxes.values()) {
+            failed += mailbox.failedMessages();
+        }
+        for (LocalMailbox<T> mailbox : this.clientMailboxes.values()) {
+            failed += mailbox.failedMessages();
+        }
+
+        return failed;
+    }
+
+    @Override
+    public void close() {
+        this.replicaMailboxes.values().forEach(LocalMailbox::close);
+        this.clientMailboxes.values().forEach(LocalMailbox::close);
+    }
+}
@@ -0,0 +1,120 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded, lock-free message queue drained by its own
+ * delivery thread.
+ *
+ * <p>Senders never block: a message offered to a full
+ * mailbox is dropped, in the same way that a congested
+ * network would drop it, and recovered by the protocol
+ * timers. Blocking would otherwise allow two replicas
+ * whose delivery threads send to each other to
+ * deadlock.</p>
+ *
+ * <p>An exception thrown by the handler is logged and
+ * counted, and delivery continues with the next
+ * message.</p>
+ *
+ * @param <T> the message type
+ */
+class LocalMailbox<T> implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(LocalMailbox.class.getName());
+
+    private final int capacity;
+    private final Consumer<T> handler;
+
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicBoolean sleeping = new AtomicBoolean();
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    public LocalMailbox(String name, int capacity, Consumer<T> handler) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.handler = handler;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public boolean offer(T message) {
+        // Reserve a slot before enqueueing so that the size
+        // never exceeds the capacity
+        int size;
+        do {
+            size = this.size.get();
+            if (size >= this.capacity) {
+                this.dropped.incrementAndGet();
+                return false;
+            }
+        } while (!this.size.compareAndSet(size, size + 1));
+
+        this.queue.add(message);
+        if (this.sleeping.get() && this.sleeping.compareAndSet(true, false)) {
+            LockSupport.unpark(this.thread);
+        }
+
+        return true;
+    }
+
+    public long droppedMessages() {
+        return this.dropped.get();
+    }
+
+    public long failedMessages() {
+        return this.failed.get();
+    }
+
+    private void run() {
+        while (this.running) {
+            T message = this.queue.poll();
+            if (message != null) {
+                this.size.decrementAndGet();
+                try {
+                    this.handler.accept(message);
+                } catch (RuntimeException e) {
+                    this.failed.incrementAndGet();
+                    LOGGER.log(Level.WARNING, "Failed to handle message in " + this.thread.getName(), e);
+                }
+                continue;
+            }
+
+            // Announce the intent to sleep, then check again in
+            // case a message was added before the flag was set
+            this.sleeping.set(true);
+            if (this.queue.isEmpty() && this.running) {
+                LockSupport.park(this);
+            }
+            this.sleeping.set(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
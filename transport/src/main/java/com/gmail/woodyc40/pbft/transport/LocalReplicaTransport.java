@@ -0,0 +1,56 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import com.gmail.woodyc40.pbft.ReplicaTransport;
+
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link ReplicaTransport} which delivers messages to
+ * replicas and clients in the same JVM through a {@link
+ * LocalHub}.
+ *
+ * @param <T> the encoded message type
+ */
+public class LocalReplicaTransport<T> implements ReplicaTransport<T> {
+    private final LocalHub<T> hub;
+
+    public LocalReplicaTransport(LocalHub<T> hub, int replicaId, Consumer<T> handler) {
+        this.hub = hub;
+        hub.registerReplica(replicaId, handler);
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.hub.countReplicas();
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return this.hub.replicaIds();
+    }
+
+    @Override
+    public void sendMessage(int replicaId, T data) {
+        this.hub.sendToReplica(replicaId, data);
+    }
+
+    @Override
+    public void multicast(T data, int... ignoredReplicas) {
+        outer:
+        for (int i = 0; i < this.hub.countReplicas(); i++) {
+            for (int ignored : ignoredReplicas) {
+                if (i == ignored) {
+                    continue outer;
+                }
+            }
+
+            this.hub.sendToReplica(i, data);
+        }
+    }
+
+    @Override
+    public void sendReply(String clientId, T reply) {
+        this.hub.sendToClient(clientId, reply);
+    }
+}
@@ -0,0 +1,205 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single-producer, single-consumer ring buffer stored in
+ * a memory-mapped file so that it can be shared by two
+ * processes on the same host.
+ *
+ * <p>The file begins with a header containing the consumer
+ * position (head) and the producer position (tail), each on
+ * its own cache line, followed by the data region. The
+ * positions increase monotonically and are published with
+ * release stores and read with acquire loads, so the
+ * contents of a record are visible to the consumer before
+ * the tail which covers it.</p>
+ *
+ * <p>Each record is a 4-byte length followed by the
+ * payload, padded to a multiple of 4 bytes. A record that
+ * does not fit before the end of the data region is
+ * preceded by a padding marker and written at the start of
+ * the region instead.</p>
+ */
+class MappedRingBuffer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(MappedRingBuffer.class.getName());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int HEAD_OFFSET = 0;
+    private static final int TAIL_OFFSET = 64;
+    private static final int CAPACITY_OFFSET = 128;
+    private static final int DATA_OFFSET = 192;
+    private static final int LENGTH_BYTES = 4;
+    private static final int PADDING = -1;
+
+    private final FileChannel file;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer data;
+    private final int capacity;
+    private final int mask;
+
+    // Producer side, guarded by this
+    private long cachedHead;
+
+    public MappedRingBuffer(Path path, int capacity) {
+        if (capacity < 64 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two of at least 64: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+
+        try {
+            this.file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = this.file.map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET + capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.buffer.order(ByteOrder.nativeOrder());
+
+        // The first process to map the file records the capacity,
+        // the other must agree with it
+        long existing = (long) LONG.compareAndExchange(this.buffer, CAPACITY_OFFSET, 0L, (long) capacity);
+        if (existing != 0 && existing != capacity) {
+            throw new IllegalStateException("Ring " + path + " has capacity " + existing + ", expected " + capacity);
+        }
+
+        this.buffer.position(DATA_OFFSET);
+        this.data = this.buffer.slice().order(ByteOrder.nativeOrder());
+        this.buffer.position(0);
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+
+    /**
+     * Obtains the largest payload that may be written to
+     * this ring.
+     *
+     * @return the maximum payload size
+     */
+    public int maxPayload() {
+        return this.capacity / 2 - LENGTH_BYTES;
+    }
+
+    /**
+     * Writes the remaining bytes of the given payload as a
+     * single record.
+     *
+     * @param payload the payload to write
+     * @return {@code true} if written, {@code false} if
+     * there is not enough free space in the ring or the
+     * payload exceeds {@link #maxPayload()}
+     */
+    public synchronized boolean offer(ByteBuffer payload) {
+        int length = payload.remaining();
+        if (length > this.maxPayload()) {
+            return false;
+        }
+
+        int recordBytes = align(LENGTH_BYTES + length);
+        long tail = (long) LONG.getOpaque(this.buffer, TAIL_OFFSET);
+        int index = (int) (tail & this.mask);
+        int toEnd = this.capacity - index;
+        int required = toEnd < recordBytes ? toEnd + recordBytes : recordBytes;
+
+        if (tail + required - this.cachedHead > this.capacity) {
+            // Only re-read the consumer position when the cached
+            // one indicates that the ring is full
+            this.cachedHead = (long) LONG.getAcquire(this.buffer, HEAD_OFFSET);
+            if (tail + required - this.cachedHead > this.capacity) {
+                return false;
+            }
+        }
+
+        if (toEnd < recordBytes) {
+            this.data.putInt(index, PADDING);
+            index = 0;
+        }
+
+        this.data.putInt(index, length);
+        ByteBuffer view = this.data.duplicate();
+        view.position(index + LENGTH_BYTES);
+        view.put(payload.duplicate());
+
+        LONG.setRelease(this.buffer, TAIL_OFFSET, tail + required);
+        return true;
+    }
+
+    /**
+     * Reads the next record from this ring. Must only be
+     * called by a single consumer thread.
+     *
+     * <p>If the next record is corrupt, every record that
+     * has been written so far is discarded.</p>
+     *
+     * @return a copy of the next payload, or {@code null}
+     * if the ring is empty or was reset
+     */
+    public @Nullable ByteBuffer poll() {
+        long head = (long) LONG.getOpaque(this.buffer, HEAD_OFFSET);
+        long tail = (long) LONG.getAcquire(this.buffer, TAIL_OFFSET);
+        if (head == tail) {
+            return null;
+        }
+
+        if (tail - head < 0 || tail - head > this.capacity) {
+            return this.reset(tail, "Ring positions out of range, head=" + head + ", tail=" + tail);
+        }
+
+        int index = (int) (head & this.mask);
+        int length = this.data.getInt(index);
+        if (length == PADDING) {
+            head += this.capacity - index;
+            index = 0;
+            length = this.data.getInt(0);
+        }
+
+        /*
+         * The other process may have crashed while writing a record or
+         * mapped a file that was not written by a MappedRingBuffer. Rather
+         * than reading outside of the data region, discard every record
+         * published so far and continue from the tail.
+         */
+        if (length < 0 || length > this.maxPayload() || head + align(LENGTH_BYTES + length) > tail) {
+            return this.reset(tail, "Invalid ring record length " + length);
+        }
+
+        ByteBuffer view = this.data.duplicate();
+        view.position(index + LENGTH_BYTES).limit(index + LENGTH_BYTES + length);
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        payload.put(view).flip();
+
+        LONG.setRelease(this.buffer, HEAD_OFFSET, head + align(LENGTH_BYTES + length));
+        return payload;
+    }
+
+    private @Nullable ByteBuffer reset(long tail, String reason) {
+        LOGGER.log(Level.WARNING, "{0}, discarding pending records", reason);
+        LONG.setRelease(this.buffer, HEAD_OFFSET, tail);
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
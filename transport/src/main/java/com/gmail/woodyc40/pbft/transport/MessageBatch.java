@@ -0,0 +1,100 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Packs several encoded messages into a single buffer, for
+ * use as the packer of a coalescing transport, and unpacks
+ * them on the receiving end.
+ *
+ * <p>The packed form is a 4-byte message count followed by
+ * each message prefixed with its 4-byte length.</p>
+ *
+ * <p>A replica sending {@link ByteBuffer} messages passes
+ * {@code MessageBatch::pack} and {@code
+ * ByteBuffer::remaining} to the coalescing transport, and
+ * its receive handler calls {@code MessageBatch.unpack(frame,
+ * dispatcher::dispatch)} for every frame.</p>
+ */
+public final class MessageBatch {
+    private MessageBatch() {
+    }
+
+    public static ByteBuffer pack(List<ByteBuffer> messages) {
+        int size = 4;
+        for (ByteBuffer message : messages) {
+            size += 4 + message.remaining();
+        }
+
+        ByteBuffer batch = ByteBuffer.allocate(size);
+        batch.putInt(messages.size());
+        for (ByteBuffer message : messages) {
+            batch.putInt(message.remaining());
+            batch.put(message.duplicate());
+        }
+        batch.flip();
+
+        return batch;
+    }
+
+    /**
+     * Passes each message packed into the given batch to the
+     * handler, in the order that they were packed.
+     *
+     * <p>The batch is received from another replica, so the
+     * whole batch is checked against the bytes that are
+     * actually present before any message is passed to the
+     * handler.</p>
+     *
+     * @param batch the packed batch
+     * @param handler the handler for each message
+     * @throws IllegalArgumentException if the batch is
+     * malformed
+     */
+    public static void unpack(ByteBuffer batch, Consumer<ByteBuffer> handler) {
+        int count = validate(batch.duplicate());
+
+        ByteBuffer buffer = batch.duplicate();
+        buffer.position(buffer.position() + 4);
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt();
+            ByteBuffer message = buffer.slice();
+            message.limit(length);
+            buffer.position(buffer.position() + length);
+
+            handler.accept(message);
+        }
+    }
+
+    private static int validate(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            throw new IllegalArgumentException("Batch too short: " + buffer.remaining());
+        }
+
+        int count = buffer.getInt();
+        // Every message takes at least its 4-byte length
+        if (count < 0 || count > buffer.remaining() / 4) {
+            throw new IllegalArgumentException("Bad message count: " + count);
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < 4) {
+                throw new IllegalArgumentException("Batch truncated at message " + i);
+            }
+
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("Bad length for message " + i + ": " + length);
+            }
+            buffer.position(buffer.position() + length);
+        }
+
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Trailing bytes after batch: " + buffer.remaining());
+        }
+
+        return count;
+    }
+}
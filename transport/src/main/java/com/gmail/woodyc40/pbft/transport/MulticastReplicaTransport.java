@@ -0,0 +1,230 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import com.gmail.woodyc40.pbft.ReplicaTransport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link ReplicaTransport} which maps {@link
+ * #multicast(ByteBuffer, int...)} to a single IP multicast
+ * datagram sent to a group joined by every replica, so the
+ * cost of a broadcast on the sender does not depend on the
+ * number of replicas.
+ *
+ * <p>Point-to-point messages, replies and broadcasts that
+ * do not fit into a single datagram are sent using the
+ * given unicast transport. Datagrams that are lost are
+ * recovered by the protocol timers and retransmissions in
+ * the same way as messages lost by any other transport.</p>
+ *
+ * <p>Each datagram begins with the replicas which are
+ * excluded from the broadcast, since every member of the
+ * group, including the sender, receives the datagram:</p>
+ * <pre>
+ * [ignored count:1][ignored replica:4]...[payload]
+ * </pre>
+ *
+ * <p>A datagram which cannot be received or whose handler
+ * throws is logged, counted and treated as lost, so the
+ * receive thread only stops when the transport is
+ * closed.</p>
+ */
+public class MulticastReplicaTransport implements ReplicaTransport<ByteBuffer>, AutoCloseable {
+    /**
+     * The largest UDP payload which fits into a standard
+     * Ethernet frame without IP fragmentation.
+     */
+    public static final int DEFAULT_MAX_DATAGRAM_BYTES = 1472;
+    private static final int MAX_IGNORED = 255;
+    private static final Logger LOGGER = Logger.getLogger(MulticastReplicaTransport.class.getName());
+
+    private final int replicaId;
+    private final InetSocketAddress group;
+    private final ReplicaTransport<ByteBuffer> unicast;
+    private final Consumer<ByteBuffer> handler;
+    private final int maxDatagramBytes;
+
+    private final DatagramChannel channel;
+    private final MembershipKey membership;
+    private final Thread receiver;
+    private final ByteBuffer sendBuffer;
+    private final AtomicLong failedDatagrams = new AtomicLong();
+
+    public MulticastReplicaTransport(int replicaId,
+                                     InetSocketAddress group,
+                                     NetworkInterface networkInterface,
+                                     ReplicaTransport<ByteBuffer> unicast,
+                                     Consumer<ByteBuffer> handler) {
+        this(replicaId, group, networkInterface, unicast, handler, DEFAULT_MAX_DATAGRAM_BYTES);
+    }
+
+    public MulticastReplicaTransport(int replicaId,
+                                     InetSocketAddress group,
+                                     NetworkInterface networkInterface,
+                                     ReplicaTransport<ByteBuffer> unicast,
+                                     Consumer<ByteBuffer> handler,
+                                     int maxDatagramBytes) {
+        if (!group.getAddress().isMulticastAddress()) {
+            throw new IllegalArgumentException("Not a multicast address: " + group);
+        }
+
+        this.replicaId = replicaId;
+        this.group = group;
+        this.unicast = unicast;
+        this.handler = handler;
+        this.maxDatagramBytes = maxDatagramBytes;
+        this.sendBuffer = ByteBuffer.allocateDirect(maxDatagramBytes);
+
+        StandardProtocolFamily family = group.getAddress() instanceof Inet6Address ?
+                StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+        try {
+            this.channel = DatagramChannel.open(family)
+                    .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                    .setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface)
+                    .setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true)
+                    .bind(new InetSocketAddress(group.getPort()));
+            this.membership = this.channel.join(group.getAddress(), networkInterface);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.receiver = new Thread(this::receive, "pbft-multicast-" + replicaId);
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+        while (this.channel.isOpen()) {
+            buffer.clear();
+            try {
+                this.channel.receive(buffer);
+            } catch (AsynchronousCloseException e) {
+                return;
+            } catch (IOException e) {
+                if (!this.channel.isOpen()) {
+                    return;
+                }
+
+                this.failedDatagrams.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Failed to receive multicast datagram", e);
+                continue;
+            }
+            buffer.flip();
+
+            if (!buffer.hasRemaining()) {
+                continue;
+            }
+
+            int ignoredCount = buffer.get() & 0xFF;
+            if (buffer.remaining() < ignoredCount * 4) {
+                continue;
+            }
+
+            boolean ignored = false;
+            for (int i = 0; i < ignoredCount; i++) {
+                if (buffer.getInt() == this.replicaId) {
+                    ignored = true;
+                }
+            }
+            if (ignored) {
+                continue;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(buffer.remaining());
+            payload.put(buffer).flip();
+            try {
+                this.handler.accept(payload);
+            } catch (RuntimeException e) {
+                this.failedDatagrams.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Failed to handle multicast datagram", e);
+            }
+        }
+    }
+
+    /**
+     * Obtains the number of datagrams which could not be
+     * sent, received or whose handler threw an exception.
+     *
+     * @return the number of failed datagrams
+     */
+    public long failedDatagrams() {
+        return this.failedDatagrams.get();
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.unicast.countKnownReplicas();
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return this.unicast.knownReplicaIds();
+    }
+
+    @Override
+    public void sendMessage(int replicaId, ByteBuffer data) {
+        this.unicast.sendMessage(replicaId, data);
+    }
+
+    @Override
+    public void multicast(ByteBuffer data, int... ignoredReplicas) {
+        int headerBytes = 1 + 4 * ignoredReplicas.length;
+        if (ignoredReplicas.length > MAX_IGNORED || headerBytes + data.remaining() > this.maxDatagramBytes) {
+            this.unicast.multicast(data, ignoredReplicas);
+            return;
+        }
+
+        synchronized (this.sendBuffer) {
+            this.sendBuffer.clear();
+            this.sendBuffer.put((byte) ignoredReplicas.length);
+            for (int ignored : ignoredReplicas) {
+                this.sendBuffer.putInt(ignored);
+            }
+            this.sendBuffer.put(data.duplicate());
+            this.sendBuffer.flip();
+
+            try {
+                this.channel.send(this.sendBuffer, this.group);
+            } catch (IOException e) {
+                // Treat as a lost datagram, the protocol will
+                // retransmit if necessary
+                this.failedDatagrams.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Failed to send multicast datagram", e);
+            }
+        }
+    }
+
+    @Override
+    public void sendReply(String clientId, ByteBuffer reply) {
+        this.unicast.sendReply(clientId, reply);
+    }
+
+    @Override
+    public void close() {
+        this.membership.drop();
+        try {
+            this.channel.close();
+            this.receiver.join();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Opens the stream channels used by the NIO transports,
+ * allowing the same framing and connection handling to be
+ * used over different socket families.
+ */
+public interface NioChannelFactory {
+    /**
+     * Opens an unconnected, non-blocking channel which
+     * will be used to connect to the given address.
+     *
+     * @param remote the address that will be connected to
+     * @return the new channel
+     * @throws IOException if the channel could not be
+     * opened
+     */
+    SocketChannel openChannel(SocketAddress remote) throws IOException;
+
+    /**
+     * Opens a non-blocking server channel bound to the
+     * given address.
+     *
+     * @param local the address to listen on
+     * @return the bound server channel
+     * @throws IOException if the channel could not be
+     * opened or bound
+     */
+    ServerSocketChannel openServerChannel(SocketAddress local) throws IOException;
+}
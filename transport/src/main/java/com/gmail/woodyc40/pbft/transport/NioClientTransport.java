@@ -0,0 +1,80 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import com.gmail.woodyc40.pbft.ClientTransport;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link ClientTransport} which keeps a persistent stream
+ * connection to every replica.
+ *
+ * <p>Each connection begins with a hello frame carrying the
+ * client ID, which allows the replicas to send their
+ * replies back over the same connection. Replies are passed
+ * to the reply handler on the selector thread.</p>
+ */
+public class NioClientTransport implements ClientTransport<ByteBuffer>, AutoCloseable {
+    private final int[] replicaIds;
+    private final NioEventLoop loop;
+    private final Map<Integer, NioConnection> replicas = new TreeMap<>();
+
+    public NioClientTransport(String clientId,
+                              Map<Integer, SocketAddress> replicas,
+                              Consumer<ByteBuffer> handler) {
+        this(clientId, replicas, handler, new TcpChannelFactory());
+    }
+
+    public NioClientTransport(String clientId,
+                              Map<Integer, SocketAddress> replicas,
+                              Consumer<ByteBuffer> handler,
+                              NioChannelFactory factory) {
+        this.replicaIds = replicas.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        this.loop = new NioEventLoop("pbft-client-" + clientId);
+
+        ByteBuffer hello = NioConnection.clientHello(clientId);
+        for (Map.Entry<Integer, SocketAddress> entry : replicas.entrySet()) {
+            this.replicas.put(entry.getKey(), NioConnection.connect(this.loop, factory, entry.getValue(), hello,
+                    (connection, frame) -> handler.accept(frame)));
+        }
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return IntStream.of(this.replicaIds);
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.replicaIds.length;
+    }
+
+    @Override
+    public void sendRequest(int replicaId, ByteBuffer request) {
+        NioConnection connection = this.replicas.get(replicaId);
+        if (connection == null) {
+            throw new IllegalArgumentException("Unknown replica: " + replicaId);
+        }
+
+        connection.send(request.duplicate());
+    }
+
+    @Override
+    public void multicastRequest(ByteBuffer request) {
+        for (NioConnection connection : this.replicas.values()) {
+            connection.send(request.duplicate());
+        }
+    }
+
+    @Override
+    public void close() {
+        for (NioConnection connection : this.replicas.values()) {
+            connection.close();
+        }
+        this.loop.close();
+    }
+}
@@ -0,0 +1,516 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import com.gmail.woodyc40.pbft.buffer.BufferPool;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A stream connection carrying length-prefixed frames.
+ *
+ * <p>Each frame consists of a 4-byte big-endian length
+ * followed by the payload. Outbound frames are queued from
+ * any thread and written by the event loop using gathering
+ * writes so that many queued frames are flushed with a
+ * single system call.</p>
+ *
+ * <p>Outbound connections, i.e. those created with a
+ * remote address, reconnect with an exponential backoff
+ * when they fail and keep the frames that have not yet
+ * been written.</p>
+ *
+ * <p>The outbound queue is bounded by {@link
+ * #MAX_QUEUED_BYTES} so that a replica which is down does
+ * not cause frames to accumulate until the heap is
+ * exhausted. Frames sent while the queue is full, or while
+ * an outbound connection is waiting to reconnect, are
+ * dropped and recovered by the protocol in the same way as
+ * frames lost by the network.</p>
+ *
+ * <p>Payloads from a {@link BufferPool} are framed in
+ * place using the headroom of the buffer and are released
+ * back to the pool once they have been written or
+ * dropped.</p>
+ */
+class NioConnection implements NioHandler {
+    static final int HEADER_BYTES = 4;
+    static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+    static final long MAX_QUEUED_BYTES = 16 * 1024 * 1024;
+
+    static final byte HELLO_REPLICA = 0;
+    static final byte HELLO_CLIENT = 1;
+
+    private static final Logger LOGGER = Logger.getLogger(NioConnection.class.getName());
+
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_GATHER = 64;
+    private static final long MIN_RECONNECT_MS = 50;
+    private static final long MAX_RECONNECT_MS = 5000;
+
+    private final NioEventLoop loop;
+    private final NioChannelFactory factory;
+    private final @Nullable SocketAddress remote;
+    private final @Nullable ByteBuffer hello;
+    private final BiConsumer<NioConnection, ByteBuffer> frameHandler;
+
+    private final Queue<Frame> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+    private @Nullable SocketChannel channel;
+    private @Nullable SelectionKey key;
+    private @Nullable ByteBuffer[] pendingHello;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+    private long reconnectDelay = MIN_RECONNECT_MS;
+    private long gatheredBytes;
+    private volatile boolean down;
+    private volatile boolean closed;
+
+    private NioConnection(NioEventLoop loop,
+                          NioChannelFactory factory,
+                          @Nullable SocketAddress remote,
+                          @Nullable ByteBuffer hello,
+                          BiConsumer<NioConnection, ByteBuffer> frameHandler) {
+        this.loop = loop;
+        this.factory = factory;
+        this.remote = remote;
+        this.hello = hello;
+        this.frameHandler = frameHandler;
+    }
+
+    /**
+     * Creates an outbound connection which connects to the
+     * remote address and sends the hello frame each time a
+     * connection is established.
+     */
+    public static NioConnection connect(NioEventLoop loop,
+                                        NioChannelFactory factory,
+                                        SocketAddress remote,
+                                        ByteBuffer hello,
+                                        BiConsumer<NioConnection, ByteBuffer> frameHandler) {
+        NioConnection connection = new NioConnection(loop, factory, remote, hello, frameHandler);
+        loop.execute(connection::open);
+        return connection;
+    }
+
+    /**
+     * Wraps an inbound channel that has been accepted by a
+     * server channel. Must be called on the loop thread.
+     */
+    public static NioConnection accept(NioEventLoop loop,
+                                       NioChannelFactory factory,
+                                       SocketChannel channel,
+                                       BiConsumer<NioConnection, ByteBuffer> frameHandler) throws IOException {
+        NioConnection connection = new NioConnection(loop, factory, null, null, frameHandler);
+        channel.configureBlocking(false);
+        connection.channel = channel;
+        connection.key = loop.register(channel, SelectionKey.OP_READ, connection);
+        return connection;
+    }
+
+    static ByteBuffer header(int length) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(0, length);
+        return header;
+    }
+
+    /**
+     * Creates the first frame sent by a replica over each
+     * new connection in order to identify itself.
+     */
+    static ByteBuffer replicaHello(int replicaId) {
+        ByteBuffer hello = ByteBuffer.allocate(5);
+        hello.put(HELLO_REPLICA).putInt(replicaId).flip();
+        return hello;
+    }
+
+    /**
+     * Creates the first frame sent by a client over each
+     * new connection so that replicas are able to route
+     * replies back over the same connection.
+     */
+    static ByteBuffer clientHello(String clientId) {
+        byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer hello = ByteBuffer.allocate(1 + id.length);
+        hello.put(HELLO_CLIENT).put(id).flip();
+        return hello;
+    }
+
+    private void open() {
+        if (this.closed || this.remote == null) {
+            return;
+        }
+
+        try {
+            SocketChannel channel = this.factory.openChannel(this.remote);
+            this.channel = channel;
+            this.readBuffer.clear();
+
+            if (channel.connect(this.remote)) {
+                this.key = this.loop.register(channel, SelectionKey.OP_READ, this);
+                this.onConnected();
+            } else {
+                this.key = this.loop.register(channel, SelectionKey.OP_CONNECT, this);
+            }
+        } catch (IOException e) {
+            this.fail();
+        }
+    }
+
+    private void onConnected() {
+        this.reconnectDelay = MIN_RECONNECT_MS;
+        this.down = false;
+
+        // A frame that was partially written to the previous connection
+        // cannot be resumed, drop it and leave it to the protocol to recover
+        Frame head = this.outbound.peek();
+        if (head != null && head.isStarted()) {
+            this.poll();
+            head.release();
+        }
+
+        if (this.hello != null) {
+            ByteBuffer hello = this.hello.duplicate();
+            this.pendingHello = new ByteBuffer[] { header(hello.remaining()), hello };
+        }
+
+        this.flush();
+    }
+
+    private void fail() {
+        if (this.key != null) {
+            this.key.cancel();
+            this.key = null;
+        }
+
+        if (this.channel != null) {
+            try {
+                this.channel.close();
+            } catch (IOException ignored) {
+            }
+            this.channel = null;
+        }
+
+        if (this.remote == null) {
+            // Inbound connections are re-established by the remote side
+            this.closed = true;
+        }
+
+        if (this.closed) {
+            this.discard();
+            return;
+        }
+
+        this.down = true;
+        long delay = this.reconnectDelay;
+        this.reconnectDelay = Math.min(MAX_RECONNECT_MS, delay * 2);
+        this.loop.schedule(this::open, delay);
+    }
+
+    private void discard() {
+        Frame frame;
+        while ((frame = this.poll()) != null) {
+            frame.release();
+        }
+    }
+
+    private @Nullable Frame poll() {
+        Frame frame = this.outbound.poll();
+        if (frame != null) {
+            this.queuedBytes.addAndGet(-frame.bytes);
+        }
+
+        return frame;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Obtains the number of frames which were dropped
+     * because the outbound queue was full or the connection
+     * was waiting to reconnect.
+     *
+     * @return the number of dropped frames
+     */
+    public long droppedFrames() {
+        return this.droppedFrames.get();
+    }
+
+    /**
+     * Queues a frame containing the remaining bytes of the
+     * given payload. The payload must not be modified
+     * until it has been written.
+     *
+     * @param payload the frame payload
+     */
+    public void send(ByteBuffer payload) {
+        this.enqueue(new Frame(header(payload.remaining()), payload, null, null));
+    }
+
+    /**
+     * Queues a frame containing a pooled payload which has
+     * been framed in place by {@link #frame(ByteBuffer)}.
+     * The reference to the payload held by this send is
+     * released once the frame has been written or dropped.
+     *
+     * @param pool the pool which owns the payload
+     * @param payload the pooled payload
+     */
+    public void send(BufferPool pool, ByteBuffer payload) {
+        ByteBuffer framed = payload.duplicate();
+        framed.position(framed.position() - HEADER_BYTES);
+        this.enqueue(new Frame(null, framed, pool, payload));
+    }
+
+    /**
+     * Writes the frame length into the headroom in front
+     * of the given pooled payload.
+     *
+     * <p>A payload shared by several destinations may be
+     * framed by each of them while another is being written,
+     * so the header is only written the first time.</p>
+     *
+     * @param payload the payload to frame
+     */
+    static void frame(ByteBuffer payload) {
+        int header = payload.position() - HEADER_BYTES;
+        if (payload.getInt(header) != payload.remaining()) {
+            payload.putInt(header, payload.remaining());
+        }
+    }
+
+    private void enqueue(Frame frame) {
+        if (this.closed) {
+            frame.release();
+            return;
+        }
+
+        if (this.down) {
+            this.droppedFrames.incrementAndGet();
+            frame.release();
+            return;
+        }
+
+        // A frame larger than the limit is still accepted by an empty
+        // queue so that large messages are not always dropped
+        long queued = this.queuedBytes.getAndAdd(frame.bytes);
+        if (queued > 0 && queued + frame.bytes > MAX_QUEUED_BYTES) {
+            this.queuedBytes.addAndGet(-frame.bytes);
+            this.droppedFrames.incrementAndGet();
+            frame.release();
+            return;
+        }
+
+        this.outbound.add(frame);
+        if (this.flushScheduled.compareAndSet(false, true)) {
+            if (this.loop.inLoop()) {
+                this.flush();
+            } else {
+                this.loop.execute(this::flush);
+            }
+        }
+    }
+
+    private int gatherFrames() {
+        this.gatheredBytes = 0;
+
+        int count = 0;
+        if (this.pendingHello != null) {
+            for (ByteBuffer buffer : this.pendingHello) {
+                this.gather[count++] = buffer;
+            }
+        }
+
+        for (Frame frame : this.outbound) {
+            if (count + 2 > MAX_GATHER) {
+                break;
+            }
+
+            if (frame.header != null) {
+                this.gather[count++] = frame.header;
+            }
+            this.gather[count++] = frame.payload;
+        }
+
+        for (int i = 0; i < count; i++) {
+            this.gatheredBytes += this.gather[i].remaining();
+        }
+
+        return count;
+    }
+
+    private void flush() {
+        this.flushScheduled.set(false);
+
+        SocketChannel channel = this.channel;
+        SelectionKey key = this.key;
+        if (channel == null || key == null || !channel.isConnected()) {
+            // Flushed once connected
+            return;
+        }
+
+        try {
+            while (true) {
+                int count = this.gatherFrames();
+                if (count == 0) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+
+                long written = channel.write(this.gather, 0, count);
+                for (int i = 0; i < count; i++) {
+                    this.gather[i] = null;
+                }
+
+                if (this.pendingHello != null && !this.pendingHello[1].hasRemaining()) {
+                    this.pendingHello = null;
+                }
+
+                Frame frame;
+                while ((frame = this.outbound.peek()) != null && !frame.payload.hasRemaining()) {
+                    this.poll();
+                    frame.release();
+                }
+
+                // Only gather more frames if everything gathered was written,
+                // a short write, including one that wrote nothing at all, means
+                // that the socket buffer is full, so wait until it is writable
+                // again rather than spinning the loop thread
+                if (written < this.gatheredBytes) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            this.fail();
+        }
+    }
+
+    private void read() throws IOException {
+        SocketChannel channel = this.channel;
+        if (channel == null) {
+            return;
+        }
+
+        int read = channel.read(this.readBuffer);
+        if (read < 0) {
+            throw new IOException("Connection closed by peer");
+        }
+
+        this.readBuffer.flip();
+        while (this.readBuffer.remaining() >= HEADER_BYTES) {
+            int length = this.readBuffer.getInt(this.readBuffer.position());
+            if (length < 0 || length > MAX_FRAME_BYTES) {
+                throw new IOException("Invalid frame length: " + length);
+            }
+
+            if (this.readBuffer.remaining() < HEADER_BYTES + length) {
+                if (HEADER_BYTES + length > this.readBuffer.capacity()) {
+                    // Grow the buffer to fit frames larger than the default
+                    ByteBuffer larger = ByteBuffer.allocate(HEADER_BYTES + length);
+                    larger.put(this.readBuffer);
+                    larger.flip();
+                    this.readBuffer = larger;
+                }
+                break;
+            }
+
+            this.readBuffer.position(this.readBuffer.position() + HEADER_BYTES);
+            ByteBuffer frame = ByteBuffer.allocate(length);
+            ByteBuffer slice = this.readBuffer.duplicate();
+            slice.limit(slice.position() + length);
+            frame.put(slice);
+            frame.flip();
+            this.readBuffer.position(this.readBuffer.position() + length);
+
+            this.frameHandler.accept(this, frame);
+        }
+        this.readBuffer.compact();
+    }
+
+    @Override
+    public void handle(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                SocketChannel channel = (SocketChannel) key.channel();
+                if (channel.finishConnect()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    this.onConnected();
+                }
+                return;
+            }
+
+            if (key.isReadable()) {
+                this.read();
+            }
+
+            if (key.isValid() && key.isWritable()) {
+                this.flush();
+            }
+        } catch (IOException e) {
+            this.fail();
+        } catch (RuntimeException e) {
+            // Most likely a malformed frame, only close this connection
+            // rather than allowing the exception to kill the loop thread
+            LOGGER.log(Level.WARNING, "Closing connection after failing to handle it", e);
+            this.fail();
+        }
+    }
+
+    public void close() {
+        this.closed = true;
+        this.loop.execute(this::fail);
+    }
+
+    /**
+     * A queued outbound frame, consisting of the length
+     * header, unless the payload has been framed in place,
+     * and the payload.
+     */
+    private static final class Frame {
+        private final @Nullable ByteBuffer header;
+        private final ByteBuffer payload;
+        private final int start;
+        private final long bytes;
+        private final @Nullable BufferPool pool;
+        private final @Nullable ByteBuffer pooled;
+
+        Frame(@Nullable ByteBuffer header,
+              ByteBuffer payload,
+              @Nullable BufferPool pool,
+              @Nullable ByteBuffer pooled) {
+            this.header = header;
+            this.payload = payload;
+            this.start = payload.position();
+            this.bytes = (header != null ? header.remaining() : 0) + payload.remaining();
+            this.pool = pool;
+            this.pooled = pooled;
+        }
+
+        boolean isStarted() {
+            return this.header != null ? this.header.position() > 0 : this.payload.position() > this.start;
+        }
+
+        void release() {
+            if (this.pool != null && this.pooled != null) {
+                this.pool.release(this.pooled);
+            }
+        }
+    }
+}
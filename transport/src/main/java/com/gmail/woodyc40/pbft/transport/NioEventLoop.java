@@ -0,0 +1,162 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single-threaded selector loop that owns every channel
+ * of a transport. Other threads interact with the channels
+ * by submitting tasks through {@link #execute(Runnable)}.
+ */
+class NioEventLoop implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(NioEventLoop.class.getName());
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<ScheduledTask> scheduled = new PriorityQueue<>();
+
+    private volatile boolean running = true;
+
+    public NioEventLoop(String name) {
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public boolean inLoop() {
+        return Thread.currentThread() == this.thread;
+    }
+
+    public void execute(Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    public void schedule(Runnable task, long delayMs) {
+        // Only called from the loop thread
+        this.scheduled.add(new ScheduledTask(System.currentTimeMillis() + delayMs, task));
+    }
+
+    public SelectionKey register(SelectableChannel channel, int ops, NioHandler handler) throws ClosedChannelException {
+        return channel.register(this.selector, ops, handler);
+    }
+
+    private long runScheduledTasks() {
+        long now = System.currentTimeMillis();
+        while (!this.scheduled.isEmpty()) {
+            ScheduledTask next = this.scheduled.peek();
+            if (next.time > now) {
+                return next.time - now;
+            }
+
+            this.scheduled.poll();
+            runTask(next.task);
+        }
+
+        // Select indefinitely until woken up
+        return 0L;
+    }
+
+    private void run() {
+        while (this.running) {
+            try {
+                Runnable task;
+                while ((task = this.tasks.poll()) != null) {
+                    runTask(task);
+                }
+
+                long timeout = this.runScheduledTasks();
+                if (this.tasks.isEmpty()) {
+                    this.selector.select(timeout);
+                } else {
+                    this.selector.selectNow();
+                }
+
+                Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if (key.isValid()) {
+                        handleKey(key);
+                    }
+                }
+            } catch (IOException e) {
+                // Every channel is owned by this thread, so keep running
+                // rather than taking down every connection
+                LOGGER.log(Level.WARNING, "Failed to select ready channels", e);
+                if (!this.selector.isOpen()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to run event loop task", e);
+        }
+    }
+
+    private static void handleKey(SelectionKey key) {
+        try {
+            ((NioHandler) key.attachment()).handle(key);
+        } catch (RuntimeException e) {
+            // Handlers close their own channel on failure, this only
+            // keeps the loop running for the other channels
+            LOGGER.log(Level.WARNING, "Failed to handle ready channel", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        this.selector.wakeup();
+
+        try {
+            this.thread.join();
+            for (SelectionKey key : this.selector.keys()) {
+                key.channel().close();
+            }
+            this.selector.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class ScheduledTask implements Comparable<ScheduledTask> {
+        private final long time;
+        private final Runnable task;
+
+        public ScheduledTask(long time, Runnable task) {
+            this.time = time;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask o) {
+            return Long.compare(this.time, o.time);
+        }
+    }
+}
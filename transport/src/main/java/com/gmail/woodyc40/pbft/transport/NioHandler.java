@@ -0,0 +1,18 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * Attached to a {@link SelectionKey} registered with a
+ * {@link NioEventLoop} in order to handle its ready
+ * operations.
+ */
+interface NioHandler {
+    /**
+     * Handles the ready operations of the given key on the
+     * event loop thread.
+     *
+     * @param key the selected key
+     */
+    void handle(SelectionKey key);
+}
@@ -0,0 +1,288 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import com.gmail.woodyc40.pbft.ReplicaTransport;
+import com.gmail.woodyc40.pbft.buffer.BufferPool;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link ReplicaTransport} which sends length-prefixed
+ * frames over persistent stream connections managed by a
+ * single selector thread.
+ *
+ * <p>Each replica listens on its own address and keeps one
+ * outbound connection to every other replica, so a message
+ * only takes a single network hop. Clients connect to the
+ * replicas with a hello frame carrying their client ID and
+ * replies are sent back over that same connection.</p>
+ *
+ * <p>Received frames are passed to the message handler on
+ * the selector thread.</p>
+ *
+ * <p>If a {@link BufferPool} is given, pooled messages are
+ * framed in place and shared by the writes to every
+ * destination, and are released back to the pool once the
+ * last of those writes completes. The pool must reserve at
+ * least {@link #FRAME_HEADROOM} bytes of headroom.</p>
+ *
+ * <p>Each call to a send method takes ownership of exactly
+ * one reference to a pooled message and releases it, even
+ * if the call throws. A caller which passes the same
+ * buffer to several sends, such as a queue for each
+ * destination, must retain a reference for each of
+ * them.</p>
+ */
+public class NioReplicaTransport implements ReplicaTransport<ByteBuffer>, AutoCloseable {
+    /**
+     * The headroom required in front of pooled payloads in
+     * order to frame them in place.
+     */
+    public static final int FRAME_HEADROOM = NioConnection.HEADER_BYTES;
+
+    private final int replicaId;
+    private final int[] replicaIds;
+    private final Consumer<ByteBuffer> handler;
+    private final NioChannelFactory factory;
+    private final @Nullable BufferPool pool;
+
+    private final NioEventLoop loop;
+    private final ServerSocketChannel server;
+    private final Map<Integer, NioConnection> peers = new TreeMap<>();
+    private final Map<String, NioConnection> clients = new ConcurrentHashMap<>();
+
+    public NioReplicaTransport(int replicaId,
+                               Map<Integer, SocketAddress> replicas,
+                               Consumer<ByteBuffer> handler) {
+        this(replicaId, replicas, handler, new TcpChannelFactory());
+    }
+
+    public NioReplicaTransport(int replicaId,
+                               Map<Integer, SocketAddress> replicas,
+                               Consumer<ByteBuffer> handler,
+                               NioChannelFactory factory) {
+        this(replicaId, replicas, handler, factory, null);
+    }
+
+    public NioReplicaTransport(int replicaId,
+                               Map<Integer, SocketAddress> replicas,
+                               Consumer<ByteBuffer> handler,
+                               NioChannelFactory factory,
+                               @Nullable BufferPool pool) {
+        SocketAddress local = replicas.get(replicaId);
+        if (local == null) {
+            throw new IllegalArgumentException("No address for replica " + replicaId);
+        }
+        if (pool != null && pool.headroom() < FRAME_HEADROOM) {
+            throw new IllegalArgumentException("Pool headroom must be at least " + FRAME_HEADROOM);
+        }
+
+        this.replicaId = replicaId;
+        this.replicaIds = replicas.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        this.handler = handler;
+        this.factory = factory;
+        this.pool = pool;
+        this.loop = new NioEventLoop("pbft-replica-" + replicaId);
+
+        try {
+            this.server = factory.openServerChannel(local);
+        } catch (IOException e) {
+            this.loop.close();
+            throw new UncheckedIOException(e);
+        }
+        this.loop.execute(() -> {
+            try {
+                this.loop.register(this.server, SelectionKey.OP_ACCEPT, this::accept);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        ByteBuffer hello = NioConnection.replicaHello(replicaId);
+        for (Map.Entry<Integer, SocketAddress> entry : replicas.entrySet()) {
+            int peerId = entry.getKey();
+            if (peerId == replicaId) {
+                continue;
+            }
+
+            this.peers.put(peerId, NioConnection.connect(this.loop, factory, entry.getValue(), hello,
+                    (connection, frame) -> this.handler.accept(frame)));
+        }
+    }
+
+    private void accept(SelectionKey key) {
+        try {
+            SocketChannel channel;
+            while ((channel = this.server.accept()) != null) {
+                NioConnection.accept(this.loop, this.factory, channel, new InboundHandler());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.replicaIds.length;
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return IntStream.of(this.replicaIds);
+    }
+
+    private boolean frame(ByteBuffer data) {
+        if (this.pool == null || !this.pool.isPooled(data)) {
+            return false;
+        }
+
+        NioConnection.frame(data);
+        return true;
+    }
+
+    private void release(ByteBuffer data, boolean pooled) {
+        if (pooled && this.pool != null) {
+            this.pool.release(data);
+        }
+    }
+
+    private void send(NioConnection connection, ByteBuffer data, boolean pooled) {
+        if (pooled && this.pool != null) {
+            this.pool.retain(data);
+            connection.send(this.pool, data);
+        } else {
+            connection.send(data.duplicate());
+        }
+    }
+
+    private void sendFramed(int replicaId, ByteBuffer data, boolean pooled) {
+        if (replicaId == this.replicaId) {
+            // Deliver asynchronously in the same way as a remote message,
+            // copying pooled data since the handler may keep it
+            ByteBuffer copy = pooled ? ByteBuffer.allocate(data.remaining()).put(data.duplicate()).flip() :
+                    data.duplicate();
+            this.loop.execute(() -> this.handler.accept(copy));
+            return;
+        }
+
+        NioConnection connection = this.peers.get(replicaId);
+        if (connection == null) {
+            throw new IllegalArgumentException("Unknown replica: " + replicaId);
+        }
+
+        this.send(connection, data, pooled);
+    }
+
+    @Override
+    public void sendMessage(int replicaId, ByteBuffer data) {
+        boolean pooled = this.frame(data);
+        try {
+            this.sendFramed(replicaId, data, pooled);
+        } finally {
+            this.release(data, pooled);
+        }
+    }
+
+    @Override
+    public void multicast(ByteBuffer data, int... ignoredReplicas) {
+        // The data is framed once and each write holds its own reference,
+        // with the reference of the caller released after all are queued
+        boolean pooled = this.frame(data);
+        try {
+            outer:
+            for (int id : this.replicaIds) {
+                // Ignored sets are at most a couple of replicas, so a
+                // linear scan is cheaper than building a set
+                for (int ignored : ignoredReplicas) {
+                    if (id == ignored) {
+                        continue outer;
+                    }
+                }
+
+                this.sendFramed(id, data, pooled);
+            }
+        } finally {
+            this.release(data, pooled);
+        }
+    }
+
+    @Override
+    public void sendReply(String clientId, ByteBuffer reply) {
+        boolean pooled = this.frame(reply);
+        try {
+            NioConnection connection = this.clients.get(clientId);
+            if (connection == null || connection.isClosed()) {
+                // The client will retransmit its request upon
+                // reconnecting, so the reply can be dropped
+                this.clients.remove(clientId, connection);
+                return;
+            }
+
+            this.send(connection, reply, pooled);
+        } finally {
+            this.release(reply, pooled);
+        }
+    }
+
+    /**
+     * Obtains the total number of frames to other replicas
+     * which were dropped because their outbound queue was
+     * full or the replica was unreachable.
+     *
+     * @return the number of dropped frames
+     */
+    public long droppedFrames() {
+        long dropped = 0;
+        for (NioConnection connection : this.peers.values()) {
+            dropped += connection.droppedFrames();
+        }
+
+        return dropped;
+    }
+
+    @Override
+    public void close() {
+        for (NioConnection connection : this.peers.values()) {
+            connection.close();
+        }
+        this.loop.close();
+    }
+
+    /**
+     * Handles the frames of a connection accepted by this
+     * replica, the first of which identifies the remote
+     * end.
+     */
+    private class InboundHandler implements BiConsumer<NioConnection, ByteBuffer> {
+        private boolean identified;
+
+        @Override
+        public void accept(NioConnection connection, ByteBuffer frame) {
+            if (this.identified) {
+                NioReplicaTransport.this.handler.accept(frame);
+                return;
+            }
+
+            this.identified = true;
+            byte kind = frame.get();
+            if (kind == NioConnection.HELLO_CLIENT) {
+                String clientId = StandardCharsets.UTF_8.decode(frame).toString();
+                NioReplicaTransport.this.clients.put(clientId, connection);
+            }
+        }
+    }
+}
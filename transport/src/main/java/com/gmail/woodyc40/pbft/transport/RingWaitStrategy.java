@@ -0,0 +1,49 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The ways in which a thread consuming a shared-memory
+ * ring buffer waits for new messages.
+ *
+ * <p>Producers live in another process and cannot wake the
+ * consumer, so both strategies poll the ring.</p>
+ */
+public enum RingWaitStrategy {
+    /**
+     * Spins on the ring, giving the lowest latency at the
+     * cost of dedicating a core to the consumer.
+     */
+    BUSY_SPIN {
+        @Override
+        void idle(int idleCount) {
+            Thread.onSpinWait();
+        }
+    },
+    /**
+     * Spins briefly after the last message, then parks for
+     * short intervals so that an idle consumer does not
+     * occupy a core.
+     */
+    PARK {
+        private static final int SPIN_TRIES = 1000;
+        private static final long PARK_NANOS = 50_000L;
+
+        @Override
+        void idle(int idleCount) {
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    };
+
+    /**
+     * Called each time the consumer finds every ring empty.
+     *
+     * @param idleCount the number of consecutive times the
+     *                  rings have been found empty
+     */
+    abstract void idle(int idleCount);
+}
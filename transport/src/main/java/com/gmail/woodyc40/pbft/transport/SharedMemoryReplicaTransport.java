@@ -0,0 +1,178 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import com.gmail.woodyc40.pbft.ReplicaTransport;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link ReplicaTransport} for replicas running as
+ * separate processes on the same host, which exchange
+ * messages through {@link MappedRingBuffer}s rather than
+ * the network stack.
+ *
+ * <p>Every ordered pair of replicas, including each replica
+ * and itself, shares one single-producer, single-consumer
+ * ring stored in the given directory as
+ * {@code <sender>-<receiver>.ring}. The directory should be
+ * on a memory-backed file system such as {@code /dev/shm}
+ * and should be emptied before the replicas are started.
+ * A single thread per replica polls its inbound rings using
+ * the given {@link RingWaitStrategy} and passes each
+ * message to the handler.</p>
+ *
+ * <p>Messages to a ring that is full are dropped and
+ * recovered by the protocol timers. Replies to clients,
+ * which are not part of the shared memory segment, are sent
+ * through the given fallback transport, as are replica
+ * messages which are too large to ever fit into a ring.</p>
+ *
+ * <p>An exception thrown by the handler is logged and the
+ * consumer thread moves on to the next message.</p>
+ */
+public class SharedMemoryReplicaTransport implements ReplicaTransport<ByteBuffer>, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(SharedMemoryReplicaTransport.class.getName());
+    public static final int DEFAULT_RING_BYTES = 1 << 20;
+
+    private final int replicas;
+    private final MappedRingBuffer[] outbound;
+    private final MappedRingBuffer[] inbound;
+    private final ReplicaTransport<ByteBuffer> fallbackTransport;
+    private final Consumer<ByteBuffer> handler;
+    private final RingWaitStrategy waitStrategy;
+    private final Thread consumer;
+
+    private volatile boolean running = true;
+
+    public SharedMemoryReplicaTransport(int replicaId,
+                                        int replicas,
+                                        Path directory,
+                                        ReplicaTransport<ByteBuffer> fallbackTransport,
+                                        Consumer<ByteBuffer> handler) {
+        this(replicaId, replicas, directory, DEFAULT_RING_BYTES, RingWaitStrategy.PARK, fallbackTransport, handler);
+    }
+
+    public SharedMemoryReplicaTransport(int replicaId,
+                                        int replicas,
+                                        Path directory,
+                                        int ringBytes,
+                                        RingWaitStrategy waitStrategy,
+                                        ReplicaTransport<ByteBuffer> fallbackTransport,
+                                        Consumer<ByteBuffer> handler) {
+        this.replicas = replicas;
+        this.outbound = new MappedRingBuffer[replicas];
+        this.inbound = new MappedRingBuffer[replicas];
+        this.fallbackTransport = fallbackTransport;
+        this.handler = handler;
+        this.waitStrategy = waitStrategy;
+
+        for (int i = 0; i < replicas; i++) {
+            this.outbound[i] = new MappedRingBuffer(directory.resolve(replicaId + "-" + i + ".ring"), ringBytes);
+            this.inbound[i] = i == replicaId ? this.outbound[i] :
+                    new MappedRingBuffer(directory.resolve(i + "-" + replicaId + ".ring"), ringBytes);
+        }
+
+        this.consumer = new Thread(this::consume, "pbft-shm-replica-" + replicaId);
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    private void consume() {
+        int idleCount = 0;
+        while (this.running) {
+            boolean received = false;
+            for (MappedRingBuffer ring : this.inbound) {
+                ByteBuffer message = ring.poll();
+                if (message != null) {
+                    received = true;
+                    this.handle(message);
+                }
+            }
+
+            if (received) {
+                idleCount = 0;
+            } else {
+                this.waitStrategy.idle(idleCount);
+
+                // Saturate rather than overflow on a replica that stays
+                // idle for long enough to start spinning again
+                if (idleCount < Integer.MAX_VALUE) {
+                    idleCount++;
+                }
+            }
+        }
+    }
+
+    private void handle(ByteBuffer message) {
+        try {
+            this.handler.accept(message);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to handle message", e);
+        }
+    }
+
+    private void send(int replicaId, ByteBuffer data) {
+        MappedRingBuffer ring = this.outbound[replicaId];
+        if (data.remaining() > ring.maxPayload()) {
+            this.fallbackTransport.sendMessage(replicaId, data);
+            return;
+        }
+
+        ring.offer(data);
+    }
+
+    @Override
+    public int countKnownReplicas() {
+        return this.replicas;
+    }
+
+    @Override
+    public IntStream knownReplicaIds() {
+        return IntStream.range(0, this.replicas);
+    }
+
+    @Override
+    public void sendMessage(int replicaId, ByteBuffer data) {
+        this.send(replicaId, data);
+    }
+
+    @Override
+    public void multicast(ByteBuffer data, int... ignoredReplicas) {
+        outer:
+        for (int i = 0; i < this.replicas; i++) {
+            for (int ignored : ignoredReplicas) {
+                if (i == ignored) {
+                    continue outer;
+                }
+            }
+
+            this.send(i, data);
+        }
+    }
+
+    @Override
+    public void sendReply(String clientId, ByteBuffer reply) {
+        this.fallbackTransport.sendReply(clientId, reply);
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        try {
+            this.consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (int i = 0; i < this.replicas; i++) {
+            this.outbound[i].close();
+            if (this.inbound[i] != this.outbound[i]) {
+                this.inbound[i].close();
+            }
+        }
+    }
+}
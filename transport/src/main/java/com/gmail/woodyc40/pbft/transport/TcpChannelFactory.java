@@ -0,0 +1,30 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class TcpChannelFactory implements NioChannelFactory {
+    @Override
+    public SocketChannel openChannel(SocketAddress remote) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+
+        // Protocol messages are small and latency sensitive, frames are
+        // already gathered into as few writes as possible
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        return channel;
+    }
+
+    @Override
+    public ServerSocketChannel openServerChannel(SocketAddress local) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.bind(local);
+        return channel;
+    }
+}
@@ -0,0 +1,64 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedRingBufferTest {
+    private static final int CAPACITY = 256;
+    // Offset of the data region in the ring file
+    private static final int DATA_OFFSET = 192;
+
+    private static ByteBuffer payload(int value) {
+        ByteBuffer payload = ByteBuffer.allocate(8);
+        payload.putLong(value).flip();
+        return payload;
+    }
+
+    private static void corruptLength(Path path, int index, int length) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+            bytes.putInt(length).flip();
+            file.write(bytes, DATA_OFFSET + index);
+        }
+    }
+
+    @Test
+    void wrapsAroundDataRegion(@TempDir Path directory) {
+        try (MappedRingBuffer ring = new MappedRingBuffer(directory.resolve("ring"), CAPACITY)) {
+            for (int i = 0; i < 10 * CAPACITY; i++) {
+                assertTrue(ring.offer(payload(i)));
+                assertEquals(payload(i), ring.poll());
+            }
+            assertNull(ring.poll());
+        }
+    }
+
+    @Test
+    void resetsOnCorruptLength(@TempDir Path directory) throws IOException {
+        for (int length : new int[] { -2, CAPACITY, Integer.MAX_VALUE, 64 }) {
+            Path path = directory.resolve("ring" + length);
+            try (MappedRingBuffer ring = new MappedRingBuffer(path, CAPACITY)) {
+                assertTrue(ring.offer(payload(1)));
+                assertTrue(ring.offer(payload(2)));
+                corruptLength(path, 0, length);
+
+                // Both records are discarded rather than read outside of
+                // the ring or of what has been written
+                assertNull(ring.poll(), "Length " + length);
+                assertNull(ring.poll());
+
+                assertTrue(ring.offer(payload(3)));
+                assertEquals(payload(3), ring.poll());
+            }
+        }
+    }
+}
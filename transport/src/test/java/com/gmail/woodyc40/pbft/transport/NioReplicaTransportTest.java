@@ -0,0 +1,86 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import com.gmail.woodyc40.pbft.buffer.BufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioReplicaTransportTest {
+    private static final int BUFFERS = 8;
+
+    private static SocketAddress freeAddress() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void dropsFramesWhileReconnecting() throws Exception {
+        // Nothing listens on the address of replica 1
+        Map<Integer, SocketAddress> addresses = new HashMap<>();
+        addresses.put(0, freeAddress());
+        addresses.put(1, freeAddress());
+        BufferPool pool = new BufferPool(BUFFERS, 256, NioReplicaTransport.FRAME_HEADROOM);
+
+        try (NioReplicaTransport transport = new NioReplicaTransport(0, addresses, frame -> {
+        }, new TcpChannelFactory(), pool)) {
+            // Wait for the first connection attempt to fail
+            await(() -> {
+                transport.sendMessage(1, ByteBuffer.allocate(16));
+                return transport.droppedFrames() > 0;
+            });
+            assertTrue(transport.droppedFrames() > 0);
+
+            for (int i = 0; i < 10 * BUFFERS; i++) {
+                ByteBuffer buffer = pool.acquire(128);
+                assertNotNull(buffer, "Dropped frames were not released");
+                transport.sendMessage(1, buffer);
+            }
+            assertEquals(BUFFERS, pool.available());
+        }
+    }
+
+    @Test
+    void boundsQueueToPeerThatDoesNotRead() throws Exception {
+        try (ServerSocket stalled = new ServerSocket(0)) {
+            Map<Integer, SocketAddress> addresses = new HashMap<>();
+            addresses.put(0, freeAddress());
+            addresses.put(1, new InetSocketAddress("127.0.0.1", stalled.getLocalPort()));
+
+            try (NioReplicaTransport transport = new NioReplicaTransport(0, addresses, frame -> {
+            }); Socket ignored = stalled.accept()) {
+                // Several times the limit, which cannot fit into the socket
+                // buffers of a peer that never reads
+                int frameBytes = 64 * 1024;
+                long frames = 4 * NioConnection.MAX_QUEUED_BYTES / frameBytes;
+                for (long i = 0; i < frames; i++) {
+                    transport.sendMessage(1, ByteBuffer.allocate(frameBytes));
+                }
+
+                await(() -> transport.droppedFrames() > 0);
+                assertTrue(transport.droppedFrames() > 0);
+            }
+        }
+    }
+}
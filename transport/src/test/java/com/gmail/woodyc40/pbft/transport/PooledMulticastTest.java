@@ -0,0 +1,117 @@
+package com.gmail.woodyc40.pbft.transport;
+
+import com.gmail.woodyc40.pbft.QueuedReplicaTransport;
+import com.gmail.woodyc40.pbft.ReplicaOverflowPolicy;
+import com.gmail.woodyc40.pbft.buffer.BufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledMulticastTest {
+    private static final int REPLICAS = 4;
+    private static final int MESSAGES = 500;
+    private static final int BUFFERS = 8;
+
+    private static Map<Integer, SocketAddress> addresses() {
+        Map<Integer, SocketAddress> addresses = new HashMap<>();
+        for (int i = 0; i < REPLICAS; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                addresses.put(i, new InetSocketAddress("127.0.0.1", socket.getLocalPort()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return addresses;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static ByteBuffer acquire(BufferPool pool, byte[] payload) throws InterruptedException {
+        // Every buffer may still be held by earlier writes, so wait for
+        // one to be released rather than falling back to the heap
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        ByteBuffer buffer;
+        while ((buffer = pool.acquire(payload.length)) == null) {
+            assertTrue(System.nanoTime() < deadline, "No pooled buffer was released");
+            Thread.sleep(1);
+        }
+
+        int start = buffer.position();
+        buffer.put(payload);
+        buffer.position(start);
+        return buffer;
+    }
+
+    private static byte[] payload(int message) {
+        byte[] payload = new byte[64 + message % 64];
+        Arrays.fill(payload, (byte) message);
+        payload[0] = (byte) (message >> 8);
+        return payload;
+    }
+
+    @Test
+    void multicastsPooledBuffersThroughQueues() throws Exception {
+        Map<Integer, SocketAddress> addresses = addresses();
+        BufferPool pool = new BufferPool(BUFFERS, 256, NioReplicaTransport.FRAME_HEADROOM);
+
+        // Replica 0 is started last so that the others are listening when
+        // it connects, otherwise frames are dropped until it reconnects
+        Map<Integer, Set<String>> received = new ConcurrentHashMap<>();
+        Map<Integer, NioReplicaTransport> transports = new HashMap<>();
+        for (int i = REPLICAS - 1; i >= 0; i--) {
+            Set<String> messages = ConcurrentHashMap.newKeySet();
+            received.put(i, messages);
+            transports.put(i, new NioReplicaTransport(i, addresses, frame -> {
+                byte[] bytes = new byte[frame.remaining()];
+                frame.get(bytes);
+                messages.add(Base64.getEncoder().encodeToString(bytes));
+            }, new TcpChannelFactory(), i == 0 ? pool : null));
+        }
+
+        try (QueuedReplicaTransport<ByteBuffer> queued = new QueuedReplicaTransport<>(transports.get(0),
+                MESSAGES, ReplicaOverflowPolicy.DROP_NEWEST, TimeUnit.SECONDS.toMillis(10),
+                pool::retain, pool::release)) {
+            Set<String> expected = new HashSet<>();
+            for (int i = 0; i < MESSAGES; i++) {
+                byte[] payload = payload(i);
+                expected.add(Base64.getEncoder().encodeToString(payload));
+                queued.multicast(acquire(pool, payload), 0);
+            }
+
+            for (int i = 1; i < REPLICAS; i++) {
+                Set<String> messages = received.get(i);
+                await(() -> messages.size() >= MESSAGES);
+                assertEquals(expected, messages, "Replica " + i);
+            }
+            assertTrue(received.get(0).isEmpty());
+
+            await(() -> pool.available() == BUFFERS);
+            assertEquals(BUFFERS, pool.available());
+            for (int i = 1; i < REPLICAS; i++) {
+                assertEquals(0, queued.failedSends(i));
+            }
+            assertEquals(0, transports.get(0).droppedFrames());
+        } finally {
+            for (NioReplicaTransport transport : transports.values()) {
+                transport.close();
+            }
+        }
+    }
+}